@@ -19,12 +19,43 @@ import java.util.List;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.ByteToMessageCodec;
 
 import com.lei.java.gateway.common.protocol.GatewayMessage;
 
 public class GatewayMessageCodec extends ByteToMessageCodec<GatewayMessage> {
 
+    /**
+     * 带有 content 的消息只编码消息头，消息体的 ByteBuf 原样跟在后面写出，不复制到新的缓冲区。
+     * 写出的是 content 的副本，消息不做修改，仍然持有自己的引用
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        if (!(msg instanceof GatewayMessage message) || message.getContent() == null) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        ByteBuf header = ctx.alloc()
+                .ioBuffer();
+        try {
+            message.encodeHeader(header);
+        } catch (Throwable t) {
+            header.release();
+            promise.setFailure(t);
+            return;
+        }
+        // 副本的引用交给写出的 ByteBuf，写出完成后由 Netty 释放
+        ctx.write(ctx.alloc()
+                .compositeBuffer(2)
+                .addComponents(true,
+                        header,
+                        message.getContent()
+                                .retainedDuplicate()),
+                promise);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, GatewayMessage msg, ByteBuf out)
             throws Exception {
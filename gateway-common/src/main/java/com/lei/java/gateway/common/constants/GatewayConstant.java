@@ -38,6 +38,12 @@ public interface GatewayConstant {
 
     String LAST_ACTIVE_TIME = "lastActiveTime";
 
+    // 请求截止时间，毫秒时间戳。网关只信任自己算出的截止时间，客户端传入的会被移除
+    String EXTENSION_DEADLINE = "x-deadline";
+
+    // 请求超时时间，毫秒，客户端指定或者网关转发给上游时填入剩余时间
+    String EXTENSION_TIMEOUT = "x-timeout-ms";
+
     int GATEWAY_HEARTBEAT_INTERVAL_SECONDS = 30;
     int GATEWAY_HEARTBEAT_TIMEOUT_SECOND = 45;
     int GATEWAY_READ_IDLE_TIMEOUT_SECONDS = 60;
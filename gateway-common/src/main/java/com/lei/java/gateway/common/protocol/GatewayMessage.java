@@ -15,11 +15,13 @@
  */
 package com.lei.java.gateway.common.protocol;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.CRC32;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.CharsetUtil;
 
 /**
@@ -89,6 +91,8 @@ public class GatewayMessage {
     public static final byte MESSAGE_TYPE_PUSH_SUCCESS = (byte) 0x07; // 推送成功
     public static final byte MESSAGE_TYPE_PUSH_FAIL = (byte) 0x08; // 推送失败
     public static final byte MESSAGE_TYPE_PUSH_HEARTBEAT = (byte) 0x09; // 推送心跳消息
+    public static final byte MESSAGE_TYPE_BIZ_CHUNK = (byte) 0x0A; // 流式业务响应的数据块
+    public static final byte MESSAGE_TYPE_BIZ_CHUNK_END = (byte) 0x0B; // 流式业务响应结束
     public static final byte MESSAGE_TYPE_ERROR = (byte) 0xFF; // 错误消息
 
     // 消息头
@@ -103,6 +107,13 @@ public class GatewayMessage {
     // 消息体
     private Map<String, String> extensions = new HashMap<>();
     private byte[] body;
+    // 上游响应的原始消息体，设置后编码时代替 body 直接写出，见 GatewayMessageCodec
+    private ByteBuf content;
+    // 请求截止时间，毫秒时间戳，只在网关内部使用，不参与编码；Long.MAX_VALUE 表示没有截止时间
+    private long deadline = Long.MAX_VALUE;
+    // 上游响应可以缓存的时间，毫秒，由 Cache-Control 换算得到，只在网关内部使用，不参与编码；
+    // -1 表示上游没有指定，0 表示不允许缓存
+    private long cacheTtlMillis = -1;
 
     public static GatewayMessage decode(ByteBuf in) {
         // 1. 确保有足够的字节可读
@@ -120,9 +131,7 @@ public class GatewayMessage {
         int checksum = in.readInt();
         int readerIndex = in.readerIndex();
         // 减去校验和的长度
-        byte[] bytes = new byte[totalLength - 4];
-        in.getBytes(readerIndex, bytes);
-        if (checksum != calculateChecksum(bytes)) {
+        if (checksum != calculateChecksum(in, readerIndex, totalLength - 4)) {
             throw new IllegalArgumentException("Invalid checksum");
         }
 
@@ -183,16 +192,60 @@ public class GatewayMessage {
     }
 
     public void encode(ByteBuf out) {
+        int startIndex = out.writerIndex();
+        writeHeader(out);
+
+        // 写入消息体
+        if (content != null) {
+            out.writeInt(content.readableBytes());
+            out.writeBytes(content, content.readerIndex(), content.readableBytes());
+        } else if (body != null) {
+            out.writeInt(body.length);
+            out.writeBytes(body);
+        } else {
+            out.writeInt(0);
+        }
+
+        // 计算总长度和校验和
+        int contentStartIndex = startIndex + HEADER_LENGTH;
+        int totalLength = out.writerIndex() - contentStartIndex;
+        out.setInt(startIndex, totalLength + 4);
+        out.setInt(startIndex + 4, calculateChecksum(out, contentStartIndex, totalLength));
+    }
+
+    /**
+     * 只编码消息体之前的部分，包括消息体的长度。{@link #getContent()} 需要紧跟着写出，两者合起来是一条完整的消息，
+     * 消息体不经过复制
+     */
+    public void encodeHeader(ByteBuf out) {
+        if (content == null) {
+            throw new IllegalStateException("content is required");
+        }
+        int startIndex = out.writerIndex();
+        writeHeader(out);
+        int bodyLength = content.readableBytes();
+        out.writeInt(bodyLength);
+
+        // 校验和覆盖消息头和消息体
+        int contentStartIndex = startIndex + HEADER_LENGTH;
+        int headerLength = out.writerIndex() - contentStartIndex;
+        CRC32 crc32 = new CRC32();
+        updateChecksum(crc32, out, contentStartIndex, headerLength);
+        updateChecksum(crc32, content, content.readerIndex(), bodyLength);
+        out.setInt(startIndex, headerLength + bodyLength + 4);
+        out.setInt(startIndex + 4, (int) crc32.getValue());
+    }
+
+    /**
+     * 写入从长度到扩展字段的部分，长度和校验和先写入占位符
+     */
+    private void writeHeader(ByteBuf out) {
         // 1. 写入长度占位符
-        int lengthIndex = out.writerIndex();
         out.writeInt(0);
-
         // 2. 写入校验和占位符
-        int checksumIndex = out.writerIndex();
         out.writeInt(0);
 
         // 3. 写入消息内容
-        int contentStartIndex = out.writerIndex();
         out.writeShort(magic);
         out.writeByte(version);
         out.writeByte(msgType);
@@ -232,22 +285,6 @@ public class GatewayMessage {
                 out.writeBytes(valueBytes);
             }
         }
-
-        // 写入消息体
-        if (body != null) {
-            out.writeInt(body.length);
-            out.writeBytes(body);
-        } else {
-            out.writeInt(0);
-        }
-
-        // 4. 计算总长度和校验和
-        int totalLength = out.writerIndex() - contentStartIndex;
-        byte[] messageBytes = new byte[totalLength];
-        out.getBytes(contentStartIndex, messageBytes);
-
-        out.setInt(lengthIndex, totalLength + 4);
-        out.setInt(checksumIndex, calculateChecksum(messageBytes));
     }
 
     public static int calculateChecksum(byte[] bytes) {
@@ -256,6 +293,21 @@ public class GatewayMessage {
         return (int) crc32.getValue();
     }
 
+    /**
+     * 直接在 ByteBuf 上计算校验和，堆外内存不需要先复制到堆上
+     */
+    public static int calculateChecksum(ByteBuf buf, int index, int length) {
+        CRC32 crc32 = new CRC32();
+        updateChecksum(crc32, buf, index, length);
+        return (int) crc32.getValue();
+    }
+
+    private static void updateChecksum(CRC32 crc32, ByteBuf buf, int index, int length) {
+        for (ByteBuffer buffer : buf.nioBuffers(index, length)) {
+            crc32.update(buffer);
+        }
+    }
+
     private int calculateExtensionsLength() {
         if (extensions.isEmpty()) {
             return 0;
@@ -312,6 +364,10 @@ public class GatewayMessage {
     }
 
     public byte[] getBody() {
+        // 需要按字节数组读取时才从 content 复制一份
+        if (body == null && content != null) {
+            body = ByteBufUtil.getBytes(content);
+        }
         return body;
     }
 
@@ -319,6 +375,44 @@ public class GatewayMessage {
         this.body = body;
     }
 
+    public ByteBuf getContent() {
+        return content;
+    }
+
+    /**
+     * 设置消息体的 ByteBuf，消息持有它的一个引用。编码器写出的是它的副本，不会改动消息，
+     * 写出完成或者不再写出时需要调用 {@link #releaseContent()}
+     */
+    public void setContent(ByteBuf content) {
+        this.content = content;
+    }
+
+    /**
+     * 释放 content，用于写出完成或者丢弃的消息。已经读取过 {@link #getBody()} 时 body 仍然可用
+     */
+    public void releaseContent() {
+        if (content != null) {
+            content.release();
+            content = null;
+        }
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
     @Override
     public String toString() {
         return "GatewayMessage{"
@@ -339,9 +433,11 @@ public class GatewayMessage {
                 + ", extensions="
                 + extensions
                 + ", body="
-                + (body == null
-                        ? ""
-                        : new String(body))
+                + (body != null
+                        ? new String(body)
+                        : content != null
+                                ? content.readableBytes() + " bytes"
+                                : "")
                 + '}';
     }
 }
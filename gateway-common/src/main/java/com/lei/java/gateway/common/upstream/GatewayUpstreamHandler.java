@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.common.upstream;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.codec.GatewayMessageCodec;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 上游服务接收网关原生协议请求的处理器
+ * </p>
+ * 网关与上游之间直接使用 {@link GatewayMessage} 的帧格式，不再转换为 HTTP。一个连接上可以同时有多个请求，
+ * 响应带回请求的 requestId，处理完一个返回一个，不需要按顺序。
+ *
+ * <pre>
+ * new ServerBootstrap()
+ *         .childHandler(GatewayUpstreamHandler.initializer(request -&gt; ...))
+ * </pre>
+ *
+ * @author 伍磊
+ */
+public class GatewayUpstreamHandler extends SimpleChannelInboundHandler<GatewayMessage> {
+    private static final Logger logger = LoggerFactory.getLogger(GatewayUpstreamHandler.class);
+
+    private final UpstreamService service;
+
+    public GatewayUpstreamHandler(UpstreamService service) {
+        this.service = service;
+    }
+
+    /**
+     * 初始化接收网关连接的 pipeline
+     */
+    public static ChannelInitializer<Channel> initializer(UpstreamService service) {
+        return new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline()
+                        .addLast(new GatewayMessageCodec())
+                        .addLast(new GatewayUpstreamHandler(service));
+            }
+        };
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, GatewayMessage request) {
+        if (request.getMsgType() != GatewayMessage.MESSAGE_TYPE_BIZ) {
+            logger.debug("Ignore message type {} from gateway", request.getMsgType());
+            return;
+        }
+        try {
+            service.handle(request)
+                    .whenComplete((response, throwable) -> ctx.writeAndFlush(throwable == null
+                            ? toResponse(request, response)
+                            : toError(request, throwable)));
+        } catch (RuntimeException e) {
+            ctx.writeAndFlush(toError(request, e));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.error("Gateway connection error, closing {}", ctx.channel(), cause);
+        ctx.close();
+    }
+
+    private static GatewayMessage toResponse(GatewayMessage request, GatewayMessage response) {
+        if (response == null) {
+            response = new GatewayMessage();
+        }
+        if (response.getMsgType() == 0) {
+            response.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        }
+        response.setRequestId(request.getRequestId());
+        response.setClientId(request.getClientId());
+        response.setBizType(request.getBizType());
+        return response;
+    }
+
+    private static GatewayMessage toError(GatewayMessage request, Throwable throwable) {
+        logger.warn("Failed to handle request {}, bizType: {}",
+                request.getRequestId(),
+                request.getBizType(),
+                throwable);
+        GatewayMessage error = new GatewayMessage();
+        error.setMsgType(GatewayMessage.MESSAGE_TYPE_ERROR);
+        String message = throwable.getMessage();
+        error.setBody((message != null
+                ? message
+                : throwable.getClass()
+                        .getName()).getBytes(StandardCharsets.UTF_8));
+        return toResponse(request, error);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.common.upstream;
+
+import java.util.concurrent.CompletionStage;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 上游服务的业务处理
+ * </p>
+ * 通过 {@link GatewayUpstreamHandler} 接收网关以原生协议转发的请求。
+ *
+ * @author 伍磊
+ */
+@FunctionalInterface
+public interface UpstreamService {
+
+    /**
+     * 处理一个请求
+     *
+     * @param request 网关转发的请求，bizType、clientId、扩展字段和消息体与客户端发出的一致
+     * @return 响应，只需要设置消息体和扩展字段，requestId 等字段由 {@link GatewayUpstreamHandler} 补齐。
+     *         异常完成时返回错误消息
+     */
+    CompletionStage<GatewayMessage> handle(GatewayMessage request);
+}
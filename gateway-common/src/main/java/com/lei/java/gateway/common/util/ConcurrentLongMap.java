@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.common.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * 以 long 为键的并发哈希表
+ * </p>
+ * 用于按 requestId 匹配请求和响应。与 {@code ConcurrentHashMap<Long, V>} 相比，键不装箱、每个条目不分配节点：
+ * 表分成若干段，每段是一个开放寻址（线性探测）的数组，由各自的锁保护，删除时回移后续条目，不留墓碑。
+ * <p>
+ * 每个条目可以带一个截止时间（毫秒时间戳），{@link #expire(long, LongObjConsumer)} 移除所有到期的条目，
+ * 调用方定期执行即可代替为每个请求单独注册定时任务。
+ * <p>
+ * 值不能为 null。回调在锁外执行，回调中可以再操作这个表。
+ *
+ * @param <V> 值类型
+ * @author 伍磊
+ */
+public final class ConcurrentLongMap<V> {
+
+    /**
+     * 没有截止时间
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    // 装载因子 3/4 时至少留一个空槽，探测才能结束
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+
+    /**
+     * 段数为 CPU 核数的 4 倍，适合多个线程共享的表。每个连接各自持有的表应当用
+     * {@link #ConcurrentLongMap(int, int)} 指定较小的段数
+     */
+    public ConcurrentLongMap() {
+        this(Runtime.getRuntime()
+                .availableProcessors() * 4, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param concurrencyLevel         段数，向上取整为 2 的幂
+     * @param initialCapacityPerStripe 每段的初始容量，向上取整为 2 的幂
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongMap(int concurrencyLevel, int initialCapacityPerStripe) {
+        if (concurrencyLevel <= 0 || initialCapacityPerStripe <= 0) {
+            throw new IllegalArgumentException(
+                    "concurrencyLevel and initialCapacityPerStripe must be positive");
+        }
+        int stripeCount = ceilingPowerOfTwo(Math.min(concurrencyLevel, MAX_STRIPES));
+        this.stripes = new Stripe[stripeCount];
+        int capacity = ceilingPowerOfTwo(Math.max(MIN_CAPACITY, initialCapacityPerStripe));
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(capacity);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public V get(long key) {
+        long hash = hash(key);
+        return stripeOf(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return 原来的值，没有时返回 null
+     */
+    public V put(long key, V value) {
+        return put(key, value, NO_DEADLINE);
+    }
+
+    /**
+     * @param deadline 截止时间，毫秒时间戳，{@link #NO_DEADLINE} 表示不过期
+     * @return 原来的值，没有时返回 null
+     */
+    public V put(long key, V value, long deadline) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long hash = hash(key);
+        return stripeOf(hash).put(key, hash, value, deadline);
+    }
+
+    /**
+     * @return 移除的值，没有时返回 null
+     */
+    public V remove(long key) {
+        long hash = hash(key);
+        return stripeOf(hash).remove(key, hash, null);
+    }
+
+    /**
+     * 只有当前值是 {@code value}（同一个对象）时才移除
+     */
+    public boolean remove(long key, V value) {
+        long hash = hash(key);
+        return stripeOf(hash).remove(key, hash, value) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Stripe<V> stripe : stripes) {
+            if (stripe.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 遍历所有条目。每段先在锁内复制一份，遍历期间的修改可能看不到
+     */
+    public void forEach(LongObjConsumer<? super V> action) {
+        for (Stripe<V> stripe : stripes) {
+            Snapshot<V> snapshot = stripe.snapshot(Long.MIN_VALUE, false);
+            snapshot.forEach(action);
+        }
+    }
+
+    /**
+     * 移除所有截止时间不晚于 {@code now} 的条目
+     *
+     * @param now       当前时间，毫秒时间戳
+     * @param onExpired 对每个移除的条目回调
+     * @return 移除的条目数
+     */
+    public int expire(long now, LongObjConsumer<? super V> onExpired) {
+        int expired = 0;
+        for (Stripe<V> stripe : stripes) {
+            if (stripe.size == 0) {
+                continue;
+            }
+            Snapshot<V> snapshot = stripe.snapshot(now, true);
+            snapshot.forEach(onExpired);
+            expired += snapshot.size;
+        }
+        return expired;
+    }
+
+    /**
+     * 移除所有条目
+     */
+    public void clear() {
+        for (Stripe<V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private Stripe<V> stripeOf(long hash) {
+        return stripes[(int) hash & stripeMask];
+    }
+
+    /**
+     * 低位选段，高位选槽，两者互不相关
+     */
+    private static long hash(long key) {
+        // murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1
+                ? 1
+                : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * 以 long 和对象为参数的回调
+     */
+    @FunctionalInterface
+    public interface LongObjConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private record Snapshot<V>(long[] keys, Object[] values, int size) {
+
+        @SuppressWarnings("unchecked")
+        void forEach(LongObjConsumer<? super V> action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private static final class Stripe<V> {
+        private long[] keys;
+        private Object[] values;
+        private long[] deadlines;
+        private int mask;
+        private int threshold;
+        // 写入都在锁内，读取不加锁，用于统计
+        private volatile int size;
+
+        Stripe(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            deadlines = new long[capacity];
+            mask = capacity - 1;
+            // 装载因子 3/4
+            threshold = capacity - (capacity >>> 2);
+        }
+
+        private int slot(long hash) {
+            return (int) (hash >>> 32) & mask;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, long hash) {
+            int index = indexOf(key, hash);
+            return index < 0
+                    ? null
+                    : (V) values[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, long hash, V value, long deadline) {
+            int index = slot(hash);
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    V previous = (V) values[index];
+                    values[index] = value;
+                    deadlines[index] = deadline;
+                    return previous;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            deadlines[index] = deadline;
+            int newSize = size + 1;
+            size = newSize;
+            if (newSize > threshold) {
+                resize();
+            }
+            return null;
+        }
+
+        /**
+         * @param expected 不为 null 时只有当前值是它才移除
+         */
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, long hash, V expected) {
+            int index = indexOf(key, hash);
+            if (index < 0) {
+                return null;
+            }
+            V value = (V) values[index];
+            if (expected != null && value != expected) {
+                return null;
+            }
+            removeAt(index);
+            return value;
+        }
+
+        /**
+         * 复制条目，{@code expire} 为 true 时只复制并移除截止时间不晚于 {@code now} 的条目
+         */
+        synchronized Snapshot<V> snapshot(long now, boolean expire) {
+            int capacity = expire
+                    ? 4
+                    : size;
+            long[] snapshotKeys = new long[capacity];
+            Object[] snapshotValues = new Object[capacity];
+            int count = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null || expire && deadlines[i] > now) {
+                    continue;
+                }
+                if (count == snapshotKeys.length) {
+                    snapshotKeys = Arrays.copyOf(snapshotKeys, count * 2);
+                    snapshotValues = Arrays.copyOf(snapshotValues, count * 2);
+                }
+                snapshotKeys[count] = keys[i];
+                snapshotValues[count] = values[i];
+                count++;
+            }
+            if (expire) {
+                // 回移会改变条目的位置，扫描完成之后再按键移除
+                for (int i = 0; i < count; i++) {
+                    long hash = hash(snapshotKeys[i]);
+                    removeAt(indexOf(snapshotKeys[i], hash));
+                }
+            }
+            return new Snapshot<>(snapshotKeys, snapshotValues, count);
+        }
+
+        synchronized void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        private int indexOf(long key, long hash) {
+            int index = slot(hash);
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * 删除后把同一探测序列上的后续条目回移，保证查找不会在空槽处提前结束
+         */
+        private void removeAt(int index) {
+            int hole = index;
+            int next = (hole + 1) & mask;
+            while (values[next] != null) {
+                int ideal = slot(hash(keys[next]));
+                // ideal 不在 (hole, next] 之间时，这个条目可以移到空位
+                boolean between = hole <= next
+                        ? hole < ideal && ideal <= next
+                        : hole < ideal || ideal <= next;
+                if (!between) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    deadlines[hole] = deadlines[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[hole] = null;
+            size = size - 1;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldDeadlines = deadlines;
+            allocate(oldValues.length << 1);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == null) {
+                    continue;
+                }
+                int index = slot(hash(oldKeys[i]));
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                deadlines[index] = oldDeadlines[i];
+            }
+        }
+    }
+}
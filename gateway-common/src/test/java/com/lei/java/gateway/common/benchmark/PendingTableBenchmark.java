@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.common.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.lei.java.gateway.common.util.ConcurrentLongMap;
+
+/**
+ * <p>
+ * 待响应请求表的吞吐和分配
+ * </p>
+ * 模拟连接上的请求表：表中始终保持 {@code inFlight} 个进行中的请求，每次操作登记一个新请求、
+ * 移除最早的请求（相当于收到它的响应），比较 {@code ConcurrentHashMap<Long, V>} 和 {@link ConcurrentLongMap}。
+ *
+ * <pre>
+ * java ... PendingTableBenchmark [jmh 参数，例如 -prof gc]
+ * </pre>
+ *
+ * @author 伍磊
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PendingTableBenchmark {
+
+    private static final CompletableFuture<Object> VALUE = new CompletableFuture<>();
+
+    @Benchmark
+    public CompletableFuture<Object> putAndRemove(Table table, Cursor cursor) {
+        table.put(cursor.next++);
+        return table.remove(cursor.oldest++);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PendingTableBenchmark.class.getSimpleName())
+                .parent(new CommandLineOptions(args))
+                .build()).run();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Table {
+
+        @Param({"10000", "1000000"})
+        int inFlight;
+
+        @Param({"ConcurrentHashMap", "ConcurrentLongMap"})
+        String impl;
+
+        Map<Long, CompletableFuture<Object>> boxed;
+        ConcurrentLongMap<CompletableFuture<Object>> primitive;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if ("ConcurrentHashMap".equals(impl)) {
+                boxed = new ConcurrentHashMap<>();
+            } else {
+                primitive = new ConcurrentLongMap<>();
+            }
+        }
+
+        void put(long key) {
+            if (boxed != null) {
+                boxed.put(key, VALUE);
+            } else {
+                primitive.put(key, VALUE);
+            }
+        }
+
+        CompletableFuture<Object> remove(long key) {
+            return boxed != null
+                    ? boxed.remove(key)
+                    : primitive.remove(key);
+        }
+    }
+
+    /**
+     * 每个线程使用自己的键区间，各自保持 inFlight / threads 个进行中的请求
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        long oldest;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setUp(Table table, ThreadParams threadParams) {
+            oldest = (long) threadParams.getThreadIndex() << 40;
+            next = oldest;
+            int window = table.inFlight / threadParams.getThreadCount();
+            for (int i = 0; i < window; i++) {
+                table.put(next++);
+            }
+        }
+    }
+}
@@ -15,9 +15,12 @@
  */
 package com.lei.java.gateway.common.codec;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.jupiter.api.Test;
 
@@ -78,4 +81,41 @@ public class GatewayMessageCodecTests {
         assertThat((Object) channel.readOutbound()).isNull();
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void testEncodeRelayedContentWithoutCopy() {
+        EmbeddedChannel channel = new EmbeddedChannel(new GatewayMessageCodec());
+
+        ByteBuf content = Unpooled.directBuffer()
+                .writeBytes("relayed body".getBytes(StandardCharsets.UTF_8));
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setRequestId(1L);
+        message.getExtensions()
+                .put("http_status", "200");
+        message.setContent(content);
+
+        assertThat(channel.writeOutbound(message)).isTrue();
+        // 消息体原样作为写出的一部分，没有复制
+        CompositeByteBuf encoded = channel.readOutbound();
+        assertThat(encoded.numComponents()).isEqualTo(2);
+        assertThat(encoded.internalComponent(1)
+                .unwrap()).isSameAs(content);
+        // 消息不做修改，写出之后消息体仍然可以读取
+        assertThat(message.getContent()).isSameAs(content);
+        assertThat(new String(message.getBody(), StandardCharsets.UTF_8))
+                .isEqualTo("relayed body");
+
+        assertThat(channel.writeInbound(encoded)).isTrue();
+        GatewayMessage decodedMessage = channel.readInbound();
+        assertThat(decodedMessage.getRequestId()).isEqualTo(1L);
+        assertThat(decodedMessage.getExtensions()).containsEntry("http_status", "200");
+        assertThat(new String(decodedMessage.getBody(), StandardCharsets.UTF_8))
+                .isEqualTo("relayed body");
+        // 解码完成后写出的 ByteBuf 连同副本一起释放，消息持有的引用由调用方释放
+        assertThat(content.refCnt()).isEqualTo(1);
+        message.releaseContent();
+        assertThat(content.refCnt()).isZero();
+        assertThat(channel.finish()).isFalse();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.common.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p>
+ * ConcurrentLongMap 测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class ConcurrentLongMapTests {
+
+    @Test
+    public void testBasicOperations() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>(2, 2);
+
+        assertThat(map.put(1L, "a")).isNull();
+        assertThat(map.put(1L, "b")).isEqualTo("a");
+        assertThat(map.put(-1L, "c")).isNull();
+        assertThat(map.put(0L, "d")).isNull();
+        assertThat(map.get(1L)).isEqualTo("b");
+        assertThat(map.containsKey(0L)).isTrue();
+        assertThat(map.size()).isEqualTo(3);
+
+        // 值不是同一个对象时不移除
+        assertThat(map.remove(1L, "a")).isFalse();
+        assertThat(map.remove(1L, "b")).isTrue();
+        assertThat(map.remove(-1L)).isEqualTo("c");
+        assertThat(map.remove(-1L)).isNull();
+        assertThat(map.get(1L)).isNull();
+        assertThat(map.size()).isEqualTo(1);
+
+        map.clear();
+        assertThat(map.isEmpty()).isTrue();
+        assertThatThrownBy(() -> map.put(2L, null)).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        // 键的范围较小，频繁冲突、扩容和回移
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(4, 2);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(2048) - 1024L;
+            switch (random.nextInt(3)) {
+                case 0 -> assertThat(map.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+                case 1 -> assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+                default -> assertThat(map.get(key)).isEqualTo(expected.get(key));
+            }
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testExpire() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>(2, 2);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, "v" + key, key < 50
+                    ? 1000 + key
+                    : ConcurrentLongMap.NO_DEADLINE);
+        }
+
+        Map<Long, String> expired = new HashMap<>();
+        assertThat(map.expire(1019, expired::put)).isEqualTo(20);
+        assertThat(expired).hasSize(20)
+                .containsEntry(0L, "v0")
+                .containsEntry(19L, "v19");
+        assertThat(map.size()).isEqualTo(80);
+        // 回移之后剩下的条目仍然都能找到
+        for (long key = 20; key < 100; key++) {
+            assertThat(map.get(key)).isEqualTo("v" + key);
+        }
+
+        // 重新登记会覆盖截止时间
+        map.put(20L, "v20", ConcurrentLongMap.NO_DEADLINE);
+        assertThat(map.expire(Long.MAX_VALUE - 1, (_, _) -> {
+        })).isEqualTo(29);
+        assertThat(map.size()).isEqualTo(51);
+    }
+
+    @Test
+    public void testCallbackMayModifyMap() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>(1, 2);
+        map.put(1L, "a", 10);
+        map.put(2L, "b", 10);
+
+        map.expire(10, (key, _) -> map.put(key + 100, "retry"));
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get(101L)).isEqualTo("retry");
+    }
+
+    @Test
+    public void testConcurrentPutAndRemove() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(8, 2);
+        int threads = 8;
+        int perThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long key = base; key < base + perThread; key++) {
+                    map.put(key, key);
+                }
+                // 删除一半，剩下的一半必须完整
+                for (long key = base; key < base + perThread; key += 2) {
+                    assertThat(map.remove(key)).isEqualTo(key);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(map.size()).isEqualTo(threads * perThread / 2);
+        for (long key = 0; key < (long) threads * perThread; key++) {
+            assertThat(map.get(key)).isEqualTo(key % 2 == 0
+                    ? null
+                    : key);
+        }
+    }
+}
@@ -15,10 +15,8 @@
  */
 package com.lei.java.gateway.sdk.core.client;
 
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -32,6 +30,7 @@ import com.lei.java.gateway.common.client.AbstractClient;
 import com.lei.java.gateway.common.codec.GatewayMessageCodec;
 import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.common.util.ConcurrentLongMap;
 import com.lei.java.gateway.sdk.core.domain.PushResult;
 import com.lei.java.gateway.sdk.core.exception.MessagingException;
 import com.lei.java.gateway.sdk.core.handler.GatewayPushMsgHandler;
@@ -48,7 +47,8 @@ import static com.lei.java.gateway.common.config.security.SecurityConfig.TOKEN_N
  */
 public class GatewayPushClient extends AbstractClient<GatewayPushClient> {
     private static final Logger logger = LoggerFactory.getLogger(GatewayPushClient.class);
-    private final Map<Long, CompletableFuture<PushResult>> requests = new ConcurrentHashMap<>();
+    private final ConcurrentLongMap<CompletableFuture<PushResult>> requests =
+            new ConcurrentLongMap<>();
 
     public GatewayPushClient(ServiceInstance instance, EventLoopGroup group, Timer timer) {
         super(instance, group, timer);
@@ -64,14 +64,16 @@ public class GatewayPushClient extends AbstractClient<GatewayPushClient> {
         gatewayMessage.setRequestId(requestId);
         gatewayMessage.setMsgType(GatewayMessage.MESSAGE_TYPE_PUSH);
         gatewayMessage.setBody(body);
+        // 写出之前登记，网关的回执可能早于写出回调到达
+        requests.put(requestId, completableFuture);
         channel.writeAndFlush(gatewayMessage)
                 .addListener(new ChannelFutureListener() {
                     @Override
                     public void operationComplete(ChannelFuture future) throws Exception {
                         if (future.isSuccess()) {
-                            requests.put(gatewayMessage.getRequestId(), completableFuture);
                             logger.info("push msg success: {}", gatewayMessage.getRequestId());
                         } else {
+                            requests.remove(requestId, completableFuture);
                             completableFuture.completeExceptionally(
                                     new MessagingException("message push failed", future.cause()));
                         }
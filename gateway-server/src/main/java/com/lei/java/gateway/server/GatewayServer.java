@@ -33,7 +33,6 @@ import io.netty.channel.MultiThreadIoEventLoopGroup;
 import io.netty.channel.nio.NioIoHandler;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.redisson.api.RBucket;
 import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
@@ -51,6 +50,7 @@ import com.lei.java.gateway.server.config.GatewayConfiguration;
 import com.lei.java.gateway.server.config.GlobalNodeId;
 import com.lei.java.gateway.server.handler.AuthHandler;
 import com.lei.java.gateway.server.handler.GatewayServerHandler;
+import com.lei.java.gateway.server.handler.IdleDetector;
 import com.lei.java.gateway.server.handler.TraceInboundHandler;
 import com.lei.java.gateway.server.handler.TraceOutboundHandler;
 import com.lei.java.gateway.server.route.DefaultRouteService;
@@ -68,10 +68,11 @@ import com.lei.java.gateway.server.session.SessionManager;
 
 import static com.lei.java.gateway.common.constants.GatewayConstant.GATEWAY_HEARTBEAT_INTERVAL_SECONDS;
 import static com.lei.java.gateway.common.constants.GatewayConstant.GATEWAY_HEARTBEAT_TIMEOUT_SECOND;
-import static com.lei.java.gateway.common.constants.GatewayConstant.GATEWAY_READ_IDLE_TIMEOUT_SECONDS;
 
 public class GatewayServer implements DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(GatewayServer.class);
+    private static final TraceInboundHandler TRACE_INBOUND_HANDLER = new TraceInboundHandler();
+    private static final TraceOutboundHandler TRACE_OUTBOUND_HANDLER = new TraceOutboundHandler();
 
     private final int port;
     private EventLoopGroup bossGroup;
@@ -81,6 +82,7 @@ public class GatewayServer implements DisposableBean {
     private final AuthHandler authHandler;
     private final ServiceRegistry registry;
     private RedissonClient redissonClient;
+    private final IdleDetector idleDetector = IdleDetector.fromSystemProperties();
 
     public GatewayServer(int port) {
         this.port = port;
@@ -140,6 +142,10 @@ public class GatewayServer implements DisposableBean {
 
         this.bossGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
         this.workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        logger.info("Idle detection mode: {}", idleDetector.getMode());
+        // 除编解码器和空闲检测外，其余 handler 都是无状态的，所有连接共享
+        final GatewayServerHandler serverHandler =
+                new GatewayServerHandler(sessionManager, routeService);
 
         try {
             ServerBootstrap b = new ServerBootstrap();
@@ -155,22 +161,18 @@ public class GatewayServer implements DisposableBean {
                             logger.debug("New connection from: {}", ch.remoteAddress());
                             ChannelPipeline p = ch.pipeline();
                             // 添加空闲检测，60秒没有读取到数据则判定为空闲
-                            p.addLast(new IdleStateHandler(
-                                    GATEWAY_READ_IDLE_TIMEOUT_SECONDS,
-                                    0,
-                                    0,
-                                    TimeUnit.SECONDS));
+                            p.addLast(idleDetector.newHandler());
                             // 添加消息编解码器
                             p.addLast(new GatewayMessageCodec());
 
                             // trace
-                            p.addLast(new TraceInboundHandler());
-                            p.addLast(new TraceOutboundHandler());
+                            p.addLast(TRACE_INBOUND_HANDLER);
+                            p.addLast(TRACE_OUTBOUND_HANDLER);
 
                             // auth handler
                             p.addLast(authHandler);
                             // 添加网关处理器
-                            p.addLast(new GatewayServerHandler(sessionManager, routeService));
+                            p.addLast(serverHandler);
                         }
                     });
 
@@ -30,6 +30,7 @@ import com.lei.java.gateway.common.config.redis.RedisConfig;
 public class GatewayConfig {
     private ServerConfig server;
     private RedisConfig redis;
+    private RouteConfig route = new RouteConfig();
 
     /**
      * 服务端配置
@@ -35,10 +35,11 @@ import com.lei.java.gateway.server.metrics.MetricsUtil;
 import com.lei.java.gateway.server.route.DefaultRouteService;
 import com.lei.java.gateway.server.route.RouteService;
 import com.lei.java.gateway.server.route.ServiceRegistry;
+import com.lei.java.gateway.server.route.cache.CachingRouteService;
 import com.lei.java.gateway.server.route.connection.ConnectionManager;
 import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+import com.lei.java.gateway.server.route.loadbalancer.LeastRequestLoadBalancer;
 import com.lei.java.gateway.server.route.loadbalancer.LoadBalancer;
-import com.lei.java.gateway.server.route.loadbalancer.RandomLoadBalancer;
 import com.lei.java.gateway.server.route.nacos.NacosServiceRegistry;
 import com.lei.java.gateway.server.session.DistributedSessionManager;
 import com.lei.java.gateway.server.session.SessionManager;
@@ -58,12 +59,17 @@ public class GatewayConfiguration {
 
     @Bean
     public ConnectionManager connectionManager() {
-        return new DefaultConnectionManager();
+        DefaultConnectionManager connectionManager = new DefaultConnectionManager();
+        // metrics
+        MetricsUtil.registerConnectionPoolMetrics(connectionManager);
+        return connectionManager;
     }
 
     @Bean
-    public ServiceRegistry serviceRegistry(NacosConfig nacosConfig) throws NacosException {
-        return new NacosServiceRegistry(nacosConfig);
+    public ServiceRegistry serviceRegistry(
+            NacosConfig nacosConfig,
+            ConnectionManager connectionManager) throws NacosException {
+        return new NacosServiceRegistry(nacosConfig, connectionManager);
     }
 
     @Bean
@@ -76,15 +82,27 @@ public class GatewayConfiguration {
 
     @Bean
     public LoadBalancer loadBalancer() {
-        return new RandomLoadBalancer();
+        // 按在途请求数选择实例，避开已经积压的实例
+        return new LeastRequestLoadBalancer();
     }
 
     @Bean
     public RouteService routeService(
+            GatewayConfig gatewayConfig,
             ServiceRegistry serviceRegistry,
             LoadBalancer loadBalancer,
             ConnectionManager connectionManager) {
-        return new DefaultRouteService(serviceRegistry, loadBalancer, connectionManager);
+        RouteConfig routeConfig = gatewayConfig.getRoute();
+        DefaultRouteService defaultRouteService = new DefaultRouteService(serviceRegistry,
+                loadBalancer,
+                connectionManager,
+                routeConfig);
+        CachingRouteService routeService =
+                new CachingRouteService(defaultRouteService, routeConfig);
+        // metrics
+        MetricsUtil.registerResponseCacheMetrics(routeService.getResponseCache());
+        MetricsUtil.registerConcurrencyLimitMetrics(defaultRouteService.getConcurrencyLimiter());
+        return routeService;
     }
 
     @Bean
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * 路由配置
+ * </p>
+ *
+ * <pre>
+ * route:
+ *   timeoutMillis: 30000
+ *   maxRetries: 2
+ *   responseCacheMaxBytes: 67108864
+ *   coalesceMaxWaiters: 1024
+ *   outlier:
+ *     consecutiveFailures: 5
+ *     failureRatePercent: 50
+ *     baseEjectionMillis: 1000
+ *   concurrency:
+ *     enabled: true
+ *     initialLimit: 100
+ *     maxLimit: 1000
+ *   biz:
+ *     order.create:
+ *       timeoutMillis: 2000
+ *     order.query:
+ *       hedgeDelayMillis: 50
+ *       idempotent: true
+ *     config.get:
+ *       cacheTtlMillis: 10000
+ *       coalesce: true
+ *     report.export:
+ *       stream: true
+ * </pre>
+ *
+ * @author 伍磊
+ */
+@Data
+public class RouteConfig {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+    private static final double DEFAULT_HEDGE_BUDGET_PERCENT = 10;
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final double DEFAULT_RETRY_BUDGET_PERCENT = 10;
+    private static final long DEFAULT_RESPONSE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_COALESCE_MAX_WAITERS = 1024;
+
+    /**
+     * 默认的请求超时时间，客户端未指定且 bizType 未单独配置时使用，小于等于 0 表示不限制
+     */
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * 对冲请求占正常流量的最大百分比
+     */
+    private double hedgeBudgetPercent = DEFAULT_HEDGE_BUDGET_PERCENT;
+
+    /**
+     * 单个请求的最大重试次数，每次重试换一个实例
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * 重试请求占正常流量的最大百分比
+     */
+    private double retryBudgetPercent = DEFAULT_RETRY_BUDGET_PERCENT;
+
+    /**
+     * 响应缓存占用内存的上限，单位字节
+     */
+    private long responseCacheMaxBytes = DEFAULT_RESPONSE_CACHE_MAX_BYTES;
+
+    /**
+     * 合并请求时，一个上游请求最多附带的等待者数量，超过后新的请求单独发出
+     */
+    private int coalesceMaxWaiters = DEFAULT_COALESCE_MAX_WAITERS;
+
+    /**
+     * 异常实例检测
+     */
+    private OutlierConfig outlier = new OutlierConfig();
+
+    /**
+     * 实例的自适应并发上限
+     */
+    private ConcurrencyConfig concurrency = new ConcurrencyConfig();
+
+    /**
+     * bizType -> 单独的路由配置
+     */
+    private Map<String, BizRouteConfig> biz = new HashMap<>();
+
+    /**
+     * 某个 bizType 的请求超时时间
+     */
+    public long timeoutMillis(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        if (bizConfig != null && bizConfig.getTimeoutMillis() != null) {
+            return bizConfig.getTimeoutMillis();
+        }
+        return timeoutMillis;
+    }
+
+    /**
+     * 某个 bizType 的对冲延迟，未开启时返回 0
+     */
+    public long hedgeDelayMillis(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        if (bizConfig != null && bizConfig.getHedgeDelayMillis() != null) {
+            return bizConfig.getHedgeDelayMillis();
+        }
+        return 0;
+    }
+
+    /**
+     * 某个 bizType 是否幂等，未配置时按非幂等处理
+     */
+    public boolean idempotent(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        return bizConfig != null && Boolean.TRUE.equals(bizConfig.getIdempotent());
+    }
+
+    /**
+     * 某个 bizType 的默认缓存时间，未开启缓存时返回 0
+     */
+    public long cacheTtlMillis(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        if (bizConfig != null && bizConfig.getCacheTtlMillis() != null) {
+            return bizConfig.getCacheTtlMillis();
+        }
+        return 0;
+    }
+
+    /**
+     * 某个 bizType 是否合并相同的并发请求，未配置时不合并
+     */
+    public boolean coalesce(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        return bizConfig != null && Boolean.TRUE.equals(bizConfig.getCoalesce());
+    }
+
+    /**
+     * 某个 bizType 是否流式转发上游的响应，未配置时收到完整响应后再转发
+     */
+    public boolean stream(String bizType) {
+        BizRouteConfig bizConfig = biz.get(bizType);
+        return bizConfig != null && Boolean.TRUE.equals(bizConfig.getStream());
+    }
+
+    /**
+     * 单个 bizType 的路由配置，未配置的字段使用全局配置
+     */
+    @Data
+    public static class BizRouteConfig {
+        private Long timeoutMillis;
+
+        /**
+         * 超过这个时间仍未响应时向另一个实例发送相同的请求，一般取该 bizType 的 p95 延迟。
+         * 只能为只读、幂等的 bizType 开启
+         */
+        private Long hedgeDelayMillis;
+
+        /**
+         * 幂等的请求在已经发出、但是连接断开等情况下失败时也可以重试；
+         * 非幂等的请求只在确定没有发出时重试
+         */
+        private Boolean idempotent;
+
+        /**
+         * 大于 0 时开启响应缓存，相同 bizType 和相同请求体的请求直接返回缓存的响应。
+         * 上游通过 Cache-Control 指定了缓存时间时以上游为准，这里的值作为默认缓存时间
+         */
+        private Long cacheTtlMillis;
+
+        /**
+         * 相同请求体的请求已经在请求上游时，后来的请求不再单独发出，而是等待同一个响应。
+         * 只能为只读的 bizType 开启
+         */
+        private Boolean coalesce;
+
+        /**
+         * 上游响应边收边转发给客户端，不受响应大小上限的限制，适合大响应和分块输出的接口。
+         * 只对 HTTP/1.1 上游生效，响应以多个 {@code BIZ_CHUNK} 消息返回给客户端
+         */
+        private Boolean stream;
+    }
+
+    /**
+     * 异常实例检测配置，见 {@link com.lei.java.gateway.server.route.OutlierDetector}
+     */
+    @Data
+    public static class OutlierConfig {
+        private static final int DEFAULT_CONSECUTIVE_FAILURES = 5;
+        private static final double DEFAULT_FAILURE_RATE_PERCENT = 50;
+        private static final int DEFAULT_MIN_REQUESTS = 20;
+        private static final long DEFAULT_WINDOW_MILLIS = 10_000;
+        private static final long DEFAULT_BASE_EJECTION_MILLIS = 1_000;
+        private static final long DEFAULT_MAX_EJECTION_MILLIS = 60_000;
+        private static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1_000;
+
+        /**
+         * 连续失败多少次后摘除，小于等于 0 表示不按连续失败摘除
+         */
+        private int consecutiveFailures = DEFAULT_CONSECUTIVE_FAILURES;
+
+        /**
+         * 滑动窗口内的失败率达到这个百分比时摘除，小于等于 0 表示不按失败率摘除
+         */
+        private double failureRatePercent = DEFAULT_FAILURE_RATE_PERCENT;
+
+        /**
+         * 滑动窗口内的请求数达到这个值才按失败率判断
+         */
+        private int minRequests = DEFAULT_MIN_REQUESTS;
+
+        /**
+         * 统计失败率的滑动窗口长度
+         */
+        private long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+        /**
+         * 第一次摘除的时长，之后每次连续摘除翻倍
+         */
+        private long baseEjectionMillis = DEFAULT_BASE_EJECTION_MILLIS;
+
+        /**
+         * 摘除时长的上限
+         */
+        private long maxEjectionMillis = DEFAULT_MAX_EJECTION_MILLIS;
+
+        /**
+         * 摘除到期后，放行探测请求的间隔
+         */
+        private long probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
+
+        public boolean isEnabled() {
+            return consecutiveFailures > 0 || failureRatePercent > 0;
+        }
+    }
+
+    /**
+     * 实例并发上限配置，见 {@link com.lei.java.gateway.server.route.ConcurrencyLimiter}
+     */
+    @Data
+    public static class ConcurrencyConfig {
+        private static final int DEFAULT_INITIAL_LIMIT = 100;
+        private static final int DEFAULT_MIN_LIMIT = 10;
+        private static final int DEFAULT_MAX_LIMIT = 1000;
+        private static final double DEFAULT_RTT_TOLERANCE = 2;
+        private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+        private static final long DEFAULT_MIN_RTT_WINDOW_MILLIS = 30_000;
+
+        /**
+         * 是否限制实例的并发，默认关闭
+         */
+        private boolean enabled;
+
+        /**
+         * 实例的初始上限
+         */
+        private int initialLimit = DEFAULT_INITIAL_LIMIT;
+
+        /**
+         * 上限下调时不低于这个值
+         */
+        private int minLimit = DEFAULT_MIN_LIMIT;
+
+        /**
+         * 上限上调时不超过这个值，小于等于 0 表示不限制实例的并发
+         */
+        private int maxLimit = DEFAULT_MAX_LIMIT;
+
+        /**
+         * RTT 超过基准 RTT 的多少倍时认为实例开始排队
+         */
+        private double rttTolerance = DEFAULT_RTT_TOLERANCE;
+
+        /**
+         * 拥塞时上限乘以这个系数
+         */
+        private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+        /**
+         * 基准 RTT 的测量窗口，到期后重新测量
+         */
+        private long minRttWindowMillis = DEFAULT_MIN_RTT_WINDOW_MILLIS;
+
+        public boolean isEnabled() {
+            return enabled && maxLimit > 0;
+        }
+    }
+}
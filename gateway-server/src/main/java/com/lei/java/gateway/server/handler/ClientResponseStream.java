@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.route.ResponseStream;
+
+/**
+ * <p>
+ * 把路由的响应写回客户端
+ * </p>
+ * 完整的响应原样写回；流式响应的响应头和每块数据各写一条 {@code BIZ_CHUNK} 消息，最后写一条
+ * {@code BIZ_CHUNK_END}。写完一块后客户端连接仍然可写就立即请求下一块，否则等这一块写进 socket 再请求，
+ * 上游的读取速度因此跟随客户端。客户端连接写失败时取消上游请求。消息体的引用在写出完成后释放，
+ * 写失败时也不会泄漏。
+ *
+ * @author 伍磊
+ */
+final class ClientResponseStream implements ResponseStream {
+
+    private final ChannelHandlerContext ctx;
+    private final GatewayMessage request;
+    private final Consumer<Throwable> errorHandler;
+    private volatile Subscription subscription;
+
+    /**
+     * @param ctx          客户端连接
+     * @param request      客户端的请求
+     * @param errorHandler 请求失败时向客户端写回错误
+     */
+    ClientResponseStream(
+            ChannelHandlerContext ctx,
+            GatewayMessage request,
+            Consumer<Throwable> errorHandler) {
+        this.ctx = ctx;
+        this.request = request;
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public void onResponse(GatewayMessage response) {
+        ctx.writeAndFlush(response)
+                .addListener(_ -> response.releaseContent());
+    }
+
+    @Override
+    public void onHead(GatewayMessage head, Subscription subscription) {
+        this.subscription = subscription;
+        head.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ_CHUNK);
+        writeAndRequest(head);
+    }
+
+    @Override
+    public void onChunk(ByteBuf chunk) {
+        GatewayMessage frame = frame(GatewayMessage.MESSAGE_TYPE_BIZ_CHUNK);
+        frame.setContent(chunk);
+        writeAndRequest(frame);
+    }
+
+    @Override
+    public void onComplete() {
+        ctx.writeAndFlush(frame(GatewayMessage.MESSAGE_TYPE_BIZ_CHUNK_END));
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+        errorHandler.accept(cause);
+    }
+
+    private void writeAndRequest(GatewayMessage frame) {
+        ChannelFuture future = ctx.writeAndFlush(frame);
+        boolean writable = ctx.channel()
+                .isWritable();
+        future.addListener(f -> {
+            frame.releaseContent();
+            if (!f.isSuccess()) {
+                subscription.cancel();
+            } else if (!writable) {
+                subscription.request();
+            }
+        });
+        if (writable) {
+            subscription.request();
+        }
+    }
+
+    private GatewayMessage frame(byte msgType) {
+        GatewayMessage frame = new GatewayMessage();
+        frame.setMsgType(msgType);
+        frame.setRequestId(request.getRequestId());
+        frame.setClientId(request.getClientId());
+        frame.setBizType(request.getBizType());
+        return frame;
+    }
+}
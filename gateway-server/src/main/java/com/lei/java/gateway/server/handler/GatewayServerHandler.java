@@ -20,6 +20,7 @@ import java.util.concurrent.ThreadFactory;
 
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleState;
@@ -43,34 +44,29 @@ import com.lei.java.gateway.server.session.SessionManager;
 
 /**
  * 网关服务器消息处理器
+ * <p>
+ * 不保存任何连接相关的状态，所有 Channel 共享同一个实例。
  */
+@ChannelHandler.Sharable
 public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(GatewayServerHandler.class);
     private static final Tracer TRACER = GlobalOpenTelemetry.getTracer("gateway-server-handler");
 
+    private static final ThreadFactory BUSINESS_FACTORY = Thread.ofVirtual()
+            .name("business-handler-", 0)
+            .uncaughtExceptionHandler((t, e) -> logger.error("Uncaught exception", e))
+            .factory();
+    private static final ThreadFactory PUSH_FACTORY = Thread.ofVirtual()
+            .name("push-handler-", 0)
+            .uncaughtExceptionHandler((t, e) -> logger.error("Uncaught exception", e))
+            .factory();
+
     private final SessionManager sessionManager;
     private final RouteService routeService;
-    private final ThreadFactory businessFactory;
-    private final ThreadFactory pushFactory;
-    private ChannelHandlerContext ctx;
 
     public GatewayServerHandler(SessionManager sessionManager, RouteService routeService) {
         this.sessionManager = sessionManager;
         this.routeService = routeService;
-        this.businessFactory = Thread.ofVirtual()
-                .name("business-handler-", 0)
-                .uncaughtExceptionHandler((t, e) -> logger.error("Uncaught exception", e))
-                .factory();
-        this.pushFactory = Thread.ofVirtual()
-                .name("push-handler-", 0)
-                .uncaughtExceptionHandler((t, e) -> logger.error("Uncaught exception", e))
-                .factory();
-    }
-
-    @Override
-    public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        this.ctx = ctx;
-        super.channelActive(ctx);
     }
 
     @Override
@@ -81,7 +77,7 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
             return;
         }
 
-        Session session = getSession(message);
+        Session session = getSession(ctx, message);
         Span span = TRACER.spanBuilder("server-handler")
                 .setSpanKind(SpanKind.INTERNAL)
                 .setAttribute("message.type", String.valueOf(message.getMsgType()))
@@ -94,19 +90,19 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
             switch (message.getMsgType()) {
                 case GatewayMessage.MESSAGE_TYPE_HEARTBEAT:
                     // 心跳消息直接在 EventLoop 中处理，因为处理逻辑简单
-                    handleHeartbeat(message, session);
+                    handleHeartbeat(ctx, message, session);
                     break;
                 case GatewayMessage.MESSAGE_TYPE_BIZ:
                     // 业务消息提交到业务线程池处理
                     final GatewayMessage requestMessage = message;
                     final Session currentSession = session;
-                    businessFactory.newThread(Context.current()
+                    BUSINESS_FACTORY.newThread(Context.current()
                             .wrap(() -> {
                                 try {
-                                    handleBizMessage(requestMessage, currentSession);
+                                    handleBizMessage(ctx, requestMessage, currentSession);
                                 } catch (Exception e) {
                                     logger.error("Handle business message error", e);
-                                    handleError(requestMessage, e);
+                                    handleError(ctx, requestMessage, e);
                                 }
                             }))
                             .start();
@@ -114,8 +110,8 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
                 case GatewayMessage.MESSAGE_TYPE_PUSH:
                     logger.info("push msg to: {}", message.getClientId());
                     // 推送消息
-                    pushFactory.newThread(Context.current()
-                            .wrap(() -> handlerPushMsg(message)))
+                    PUSH_FACTORY.newThread(Context.current()
+                            .wrap(() -> handlerPushMsg(ctx, message)))
                             .start();
                     break;
                 case GatewayMessage.MESSAGE_TYPE_PUSH_HEARTBEAT:
@@ -123,11 +119,13 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
                     break;
                 default:
                     logger.warn("Unknown message type: {}", message.getMsgType());
-                    handleError(message, new IllegalArgumentException("Unknown message type"));
+                    handleError(ctx,
+                            message,
+                            new IllegalArgumentException("Unknown message type"));
             }
         } catch (Exception e) {
             logger.error("Handle message error", e);
-            handleError(message, e);
+            handleError(ctx, message, e);
             ReferenceCountUtil.release(msg);
             span.recordException(e);
             span.setStatus(StatusCode.ERROR, "Gateway Server Handler Error");
@@ -174,7 +172,7 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
         ctx.close();
     }
 
-    private Session getSession(GatewayMessage message) {
+    private Session getSession(ChannelHandlerContext ctx, GatewayMessage message) {
         // 推送消息不需要建立 session
         if (message.getMsgType() == GatewayMessage.MESSAGE_TYPE_PUSH) {
             return null;
@@ -186,7 +184,10 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
         return session;
     }
 
-    private void handleHeartbeat(GatewayMessage message, Session session) {
+    private void handleHeartbeat(
+            ChannelHandlerContext ctx,
+            GatewayMessage message,
+            Session session) {
         if (session == null) {
             logger.warn("Unknown heartbeat message received");
             ctx.close();
@@ -209,7 +210,10 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
         ctx.writeAndFlush(response);
     }
 
-    private void handleBizMessage(GatewayMessage message, Session session) {
+    private void handleBizMessage(
+            ChannelHandlerContext ctx,
+            GatewayMessage message,
+            Session session) {
         if (session == null) {
             logger.warn("UnKnown business message received");
             ctx.close();
@@ -226,18 +230,13 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
 
         // 实现业务消息路由转发逻辑
         // todo-wl trace 尚未实现
-        routeService.route(message)
-                .whenComplete((response, ex) -> {
-                    if (ex != null) {
-                        logger.error("Failed to route message={}, e: ", message, ex);
-                        handleError(message, ex);
-                    } else {
-                        ctx.writeAndFlush(response);
-                    }
-                });
+        routeService.stream(message, new ClientResponseStream(ctx, message, ex -> {
+            logger.error("Failed to route message={}, e: ", message, ex);
+            handleError(ctx, message, ex);
+        }));
     }
 
-    private void handlerPushMsg(GatewayMessage message) {
+    private void handlerPushMsg(ChannelHandlerContext ctx, GatewayMessage message) {
 
         Span span = TRACER.spanBuilder("push-handler")
                 .setSpanKind(SpanKind.SERVER)
@@ -288,7 +287,10 @@ public class GatewayServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void handleError(GatewayMessage message, Throwable cause) {
+    private void handleError(
+            ChannelHandlerContext ctx,
+            GatewayMessage message,
+            Throwable cause) {
         GatewayMessage response = new GatewayMessage();
         response.setMsgType(GatewayMessage.MESSAGE_TYPE_ERROR);
         response.setRequestId(message.getRequestId());
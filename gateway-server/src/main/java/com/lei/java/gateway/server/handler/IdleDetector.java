@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.EventExecutor;
+
+import static com.lei.java.gateway.common.constants.GatewayConstant.GATEWAY_READ_IDLE_TIMEOUT_SECONDS;
+
+/**
+ * <p>
+ * 读空闲检测
+ * </p>
+ * 支持两种模式：
+ * <ul>
+ * <li>{@link Mode#HANDLER}：每个 Channel 一个 {@link IdleStateHandler}，各自在 EventLoop 上调度定时任务</li>
+ * <li>{@link Mode#WHEEL}：每个 EventLoop 一个 {@link IdleTimingWheel}，Channel 只记录最后一次读取的 tick</li>
+ * </ul>
+ * 两种模式都向后续 handler 触发 {@code READER_IDLE} 事件，WHEEL 模式的精度为一个 tick。
+ *
+ * @author 伍磊
+ */
+public final class IdleDetector {
+
+    private static final String GATEWAY_IDLE_DETECTION_MODE = "GATEWAY_IDLE_DETECTION_MODE";
+    private static final String GATEWAY_IDLE_WHEEL_TICK_MILLIS = "GATEWAY_IDLE_WHEEL_TICK_MILLIS";
+    private static final long DEFAULT_TICK_MILLIS = 1000;
+
+    public enum Mode {
+        HANDLER,
+        WHEEL
+    }
+
+    private final Mode mode;
+    private final long timeoutMillis;
+    private final long tickMillis;
+    private final Map<EventExecutor, IdleTimingWheel> wheels = new ConcurrentHashMap<>();
+
+    public IdleDetector(Mode mode, long timeoutMillis, long tickMillis) {
+        if (timeoutMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis and tickMillis must be positive");
+        }
+        this.mode = mode;
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * 根据系统属性创建，默认使用 {@link Mode#WHEEL}
+     */
+    public static IdleDetector fromSystemProperties() {
+        Mode mode = Mode.valueOf(System
+                .getProperty(GATEWAY_IDLE_DETECTION_MODE, Mode.WHEEL.name())
+                .toUpperCase());
+        long tickMillis = Long.getLong(GATEWAY_IDLE_WHEEL_TICK_MILLIS, DEFAULT_TICK_MILLIS);
+        return new IdleDetector(mode,
+                TimeUnit.SECONDS.toMillis(GATEWAY_READ_IDLE_TIMEOUT_SECONDS),
+                tickMillis);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 为新 Channel 创建空闲检测 handler
+     */
+    public ChannelHandler newHandler() {
+        if (mode == Mode.WHEEL) {
+            return new WheelIdleStateHandler(this);
+        }
+        return new IdleStateHandler(timeoutMillis, 0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    IdleTimingWheel wheel(EventExecutor executor) {
+        IdleTimingWheel wheel = wheels.get(executor);
+        if (wheel == null) {
+            wheel = wheels.computeIfAbsent(executor,
+                    e -> new IdleTimingWheel(e, timeoutMillis, tickMillis));
+        }
+        return wheel;
+    }
+}
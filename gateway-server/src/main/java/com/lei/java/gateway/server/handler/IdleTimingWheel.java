@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * <p>
+ * 单个 EventLoop 上的空闲检测时间轮
+ * </p>
+ * 时间轮上的所有操作都在所属 EventLoop 中执行，因此不需要任何同步。每个 EventLoop 只有一个定时任务按 tick 推进，
+ * 每次只检查到期槽位中的 Channel：仍然空闲则触发事件，否则按最后一次读取的 tick 重新放入对应槽位。
+ *
+ * @author 伍磊
+ */
+final class IdleTimingWheel {
+
+    private final EventExecutor executor;
+    private final long tickMillis;
+    private final long timeoutTicks;
+    private final ArrayDeque<WheelIdleStateHandler>[] buckets;
+    private long currentTick;
+    private boolean started;
+
+    @SuppressWarnings("unchecked")
+    IdleTimingWheel(EventExecutor executor, long timeoutMillis, long tickMillis) {
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+        this.timeoutTicks = Math.max(1, (timeoutMillis + tickMillis - 1) / tickMillis);
+        // 槽位数比超时 tick 数多一个，保证重新放入的 Channel 不会落在当前槽位
+        this.buckets = new ArrayDeque[(int) timeoutTicks + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    void register(WheelIdleStateHandler handler) {
+        if (!started) {
+            started = true;
+            executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+        schedule(handler, currentTick + timeoutTicks);
+    }
+
+    private void schedule(WheelIdleStateHandler handler, long deadlineTick) {
+        buckets[(int) (deadlineTick % buckets.length)].add(handler);
+    }
+
+    void tick() {
+        currentTick++;
+        ArrayDeque<WheelIdleStateHandler> bucket = buckets[(int) (currentTick % buckets.length)];
+        int size = bucket.size();
+        for (int i = 0; i < size; i++) {
+            WheelIdleStateHandler handler = bucket.poll();
+            if (handler == null || !handler.isRegistered()) {
+                continue;
+            }
+            long deadlineTick = handler.idleSinceTick() + timeoutTicks;
+            if (deadlineTick > currentTick) {
+                schedule(handler, deadlineTick);
+            } else {
+                handler.fireReaderIdle(currentTick);
+                if (handler.isRegistered()) {
+                    schedule(handler, currentTick + timeoutTicks);
+                }
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (ArrayDeque<WheelIdleStateHandler> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
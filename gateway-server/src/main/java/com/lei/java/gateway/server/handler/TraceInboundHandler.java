@@ -15,8 +15,11 @@
  */
 package com.lei.java.gateway.server.handler;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
@@ -27,21 +30,46 @@ import io.opentelemetry.context.Scope;
 
 import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.server.metrics.GatewayMetrics;
+import com.lei.java.gateway.server.trace.RequestTrace;
+import com.lei.java.gateway.server.trace.TraceSampler;
 
 import static com.lei.java.gateway.server.metrics.MetricsUtil.MESSAGES_RECEIVED_COUNTER;
-import static com.lei.java.gateway.server.trace.TracingAttributes.METRICS_ATTRIBUTES;
-import static com.lei.java.gateway.server.trace.TracingAttributes.SERVER_SPAN_KEY;
-import static com.lei.java.gateway.server.trace.TracingAttributes.START_TIME_KEY;
+import static com.lei.java.gateway.server.trace.TracingAttributes.INFLIGHT_REQUESTS_KEY;
 
 /**
  * <p>
  * TraceInboundHandler
  * </p>
+ * 每个请求按 requestId 登记到 Channel 的在途表中，由 {@link TraceOutboundHandler} 在写出同一 requestId 的响应时结束，
+ * 因此客户端流水线发送请求或者推送与业务请求交错时，span 与耗时不会错配。在途表保存在 Channel 上，handler 本身无状态，
+ * 所有 Channel 共享同一个实例。
  *
  * @author 伍磊
  */
+@ChannelHandler.Sharable
 public class TraceInboundHandler extends ChannelInboundHandlerAdapter {
     private static final Tracer TRACER = GlobalOpenTelemetry.getTracer("TraceInboundHandler");
+    private static final int INFLIGHT_INITIAL_CAPACITY = 4;
+
+    // 指标属性只和消息类型有关，预先构建避免每个请求都分配
+    private static final Attributes[] METRICS_ATTRIBUTES = new Attributes[256];
+
+    static {
+        for (int i = 0; i < METRICS_ATTRIBUTES.length; i++) {
+            METRICS_ATTRIBUTES[i] =
+                    Attributes.of(GatewayMetrics.MESSAGE_TYPE, String.valueOf((byte) i));
+        }
+    }
+
+    private final TraceSampler sampler;
+
+    public TraceInboundHandler() {
+        this(TraceSampler.getInstance());
+    }
+
+    public TraceInboundHandler(TraceSampler sampler) {
+        this.sampler = sampler;
+    }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
@@ -49,47 +77,99 @@ public class TraceInboundHandler extends ChannelInboundHandlerAdapter {
             return;
         }
 
-        Attributes attributes =
-                Attributes.of(GatewayMetrics.MESSAGE_TYPE, String.valueOf(message.getMsgType()));
-        ctx.channel()
-                .attr(START_TIME_KEY)
-                .set(System.nanoTime());
-        ctx.channel()
-                .attr(METRICS_ATTRIBUTES)
-                .set(attributes);
-
+        byte msgType = message.getMsgType();
+        long startNanos = System.nanoTime();
+        Attributes attributes = METRICS_ATTRIBUTES[msgType & 0xFF];
         MESSAGES_RECEIVED_COUNTER.add(1, attributes);
 
-        Span parentSpan = TRACER.spanBuilder("Process Gateway Request")
-                .setSpanKind(SpanKind.SERVER)
-                .setAttribute("net.peer.address",
-                        ctx.channel()
-                                .remoteAddress()
-                                .toString())
-                .startSpan();
-        parentSpan.setAttribute("message.type", String.valueOf(message.getMsgType()));
-        parentSpan.setAttribute("client.id", message.getClientId());
-        parentSpan.setAttribute("request.id", String.valueOf(message.getRequestId()));
-
-        ctx.channel()
-                .attr(SERVER_SPAN_KEY)
-                .set(parentSpan);
-
-        try (Scope scope = parentSpan.makeCurrent()) {
+        Span parentSpan = null;
+        if (sampler.shouldSample(msgType)) {
+            parentSpan = TRACER.spanBuilder("Process Gateway Request")
+                    .setSpanKind(SpanKind.SERVER)
+                    .setAttribute("net.peer.address",
+                            String.valueOf(ctx.channel()
+                                    .remoteAddress()))
+                    .startSpan();
+            parentSpan.setAttribute("message.type", String.valueOf(msgType));
+            parentSpan.setAttribute("client.id", message.getClientId());
+            parentSpan.setAttribute("request.id", String.valueOf(message.getRequestId()));
+        }
+
+        // 推送心跳没有响应，不需要登记，处理完直接结束
+        boolean expectResponse = msgType != GatewayMessage.MESSAGE_TYPE_PUSH_HEARTBEAT;
+        if (expectResponse) {
+            RequestTrace previous = inflightRequests(ctx).put(message.getRequestId(),
+                    new RequestTrace(parentSpan, startNanos, attributes));
+            // 同一个 requestId 重复发送，旧的请求不会再被匹配到
+            if (previous != null && previous.span() != null) {
+                previous.span()
+                        .setStatus(StatusCode.ERROR, "Superseded by a request with same id");
+                previous.span()
+                        .end();
+            }
+        }
+
+        Span current = parentSpan != null
+                ? parentSpan
+                : TraceSampler.unsampledParent();
+        try (Scope scope = current.makeCurrent()) {
             ctx.fireChannelRead(msg);
+        } finally {
+            if (!expectResponse && parentSpan != null) {
+                parentSpan.end();
+            }
         }
     }
 
     @Override
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        Span parentSpan = ctx.channel()
-                .attr(SERVER_SPAN_KEY)
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        LongObjectMap<RequestTrace> inflight = ctx.channel()
+                .attr(INFLIGHT_REQUESTS_KEY)
                 .getAndSet(null);
-        if (parentSpan != null) {
-            parentSpan.recordException(cause);
-            parentSpan.setStatus(StatusCode.ERROR, "An exception occurred in the pipeline");
-            parentSpan.end();
+        if (inflight != null) {
+            for (RequestTrace trace : inflight.values()) {
+                if (trace.span() != null) {
+                    trace.span()
+                            .setStatus(StatusCode.ERROR, "Channel closed before response");
+                    trace.span()
+                            .end();
+                }
+            }
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LongObjectMap<RequestTrace> inflight = ctx.channel()
+                .attr(INFLIGHT_REQUESTS_KEY)
+                .get();
+        if (inflight != null) {
+            for (RequestTrace trace : inflight.values()) {
+                if (trace.span() != null) {
+                    trace.span()
+                            .recordException(cause);
+                    trace.span()
+                            .setStatus(StatusCode.ERROR, "An exception occurred in the pipeline");
+                    trace.span()
+                            .end();
+                }
+            }
+            inflight.clear();
         }
         ctx.fireExceptionCaught(cause);
     }
+
+    private static LongObjectMap<RequestTrace> inflightRequests(ChannelHandlerContext ctx) {
+        LongObjectMap<RequestTrace> inflight = ctx.channel()
+                .attr(INFLIGHT_REQUESTS_KEY)
+                .get();
+        if (inflight == null) {
+            inflight = new LongObjectHashMap<>(INFLIGHT_INITIAL_CAPACITY);
+            ctx.channel()
+                    .attr(INFLIGHT_REQUESTS_KEY)
+                    .set(inflight);
+        }
+        return inflight;
+    }
 }
@@ -15,58 +15,70 @@
  */
 package com.lei.java.gateway.server.handler;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
-import io.opentelemetry.api.GlobalOpenTelemetry;
-import io.opentelemetry.api.common.Attributes;
+import io.netty.util.collection.LongObjectMap;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
-import io.opentelemetry.api.trace.Tracer;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.trace.RequestTrace;
 
 import static com.lei.java.gateway.server.metrics.MetricsUtil.PROCESSING_DURATION_HISTOGRAM;
-import static com.lei.java.gateway.server.trace.TracingAttributes.METRICS_ATTRIBUTES;
-import static com.lei.java.gateway.server.trace.TracingAttributes.SERVER_SPAN_KEY;
-import static com.lei.java.gateway.server.trace.TracingAttributes.START_TIME_KEY;
+import static com.lei.java.gateway.server.trace.TracingAttributes.INFLIGHT_REQUESTS_KEY;
 
 /**
  * <p>
  * TraceOutboundHandler
  * </p>
+ * 写出响应时按 requestId 找到对应的在途请求，记录耗时并结束 span。
  *
  * @author 伍磊
  */
+@ChannelHandler.Sharable
 public class TraceOutboundHandler extends ChannelOutboundHandlerAdapter {
-    private static final Tracer TRACER = GlobalOpenTelemetry.getTracer("TraceOutboundHandler");
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
             throws Exception {
-        final Span parentSpan = ctx.channel()
-                .attr(SERVER_SPAN_KEY)
-                .getAndSet(null);
-        final Long startTimeNanos = ctx.channel()
-                .attr(START_TIME_KEY)
-                .getAndSet(null);
-        Attributes attributes = ctx.channel()
-                .attr(METRICS_ATTRIBUTES)
-                .getAndSet(null);
+        RequestTrace trace = removeInflight(ctx, msg);
+        if (trace == null) {
+            ctx.write(msg, promise);
+            return;
+        }
 
-        if (parentSpan != null) {
-            promise.addListener(future -> {
-                if (startTimeNanos != null) {
-                    long durationNanos = System.nanoTime() - startTimeNanos;
-                    PROCESSING_DURATION_HISTOGRAM.record(durationNanos / 1_000_000.0, attributes);
-                }
+        final Span parentSpan = trace.span();
+        final long startTimeNanos = trace.startNanos();
+        promise.addListener(future -> {
+            long durationNanos = System.nanoTime() - startTimeNanos;
+            PROCESSING_DURATION_HISTOGRAM.record(durationNanos / 1_000_000.0, trace.attributes());
 
+            if (parentSpan != null) {
                 if (!future.isSuccess()) {
                     parentSpan.recordException(future.cause());
                     parentSpan.setStatus(StatusCode.ERROR, "Response write failed");
                 }
                 parentSpan.end();
-            });
-        }
+            }
+        });
 
         ctx.write(msg, promise);
     }
+
+    private static RequestTrace removeInflight(ChannelHandlerContext ctx, Object msg) {
+        // 转发给客户端的推送消息不是响应，不能结束该 Channel 上同 requestId 的请求
+        if (!(msg instanceof GatewayMessage message)
+                || message.getMsgType() == GatewayMessage.MESSAGE_TYPE_PUSH) {
+            return null;
+        }
+        LongObjectMap<RequestTrace> inflight = ctx.channel()
+                .attr(INFLIGHT_REQUESTS_KEY)
+                .get();
+        if (inflight == null) {
+            return null;
+        }
+        return inflight.remove(message.getRequestId());
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+
+/**
+ * <p>
+ * 基于共享时间轮的读空闲检测
+ * </p>
+ * 与 {@link io.netty.handler.timeout.IdleStateHandler} 触发相同的 {@code READER_IDLE} 事件，
+ * 但自身不创建定时任务，只记录最后一次读取时所在的 tick，由 {@link IdleTimingWheel} 统一扫描。
+ *
+ * @author 伍磊
+ */
+public class WheelIdleStateHandler extends ChannelInboundHandlerAdapter {
+
+    private final IdleDetector idleDetector;
+    private ChannelHandlerContext ctx;
+    private IdleTimingWheel wheel;
+    private long lastReadTick;
+    private boolean firstReaderIdleEvent = true;
+    private boolean registered;
+
+    WheelIdleStateHandler(IdleDetector idleDetector) {
+        this.idleDetector = idleDetector;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (ctx.channel()
+                .isActive()) {
+            register(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        register(ctx);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (wheel != null) {
+            lastReadTick = wheel.currentTick();
+            firstReaderIdleEvent = true;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        registered = false;
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        registered = false;
+    }
+
+    private void register(ChannelHandlerContext ctx) {
+        if (registered || wheel != null) {
+            return;
+        }
+        this.ctx = ctx;
+        this.wheel = idleDetector.wheel(ctx.executor());
+        this.lastReadTick = wheel.currentTick();
+        this.registered = true;
+        wheel.register(this);
+    }
+
+    IdleTimingWheel wheel() {
+        return wheel;
+    }
+
+    boolean isRegistered() {
+        return registered;
+    }
+
+    long idleSinceTick() {
+        return lastReadTick;
+    }
+
+    void fireReaderIdle(long currentTick) {
+        IdleStateEvent event = firstReaderIdleEvent
+                ? IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT
+                : IdleStateEvent.READER_IDLE_STATE_EVENT;
+        firstReaderIdleEvent = false;
+        // 下一次事件从本次触发开始重新计时，与 IdleStateHandler 的语义一致
+        lastReadTick = currentTick;
+        ctx.fireUserEventTriggered(event);
+    }
+}
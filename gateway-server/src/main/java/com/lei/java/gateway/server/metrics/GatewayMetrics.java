@@ -26,4 +26,8 @@ import io.opentelemetry.api.common.AttributeKey;
  */
 public interface GatewayMetrics {
     AttributeKey<String> MESSAGE_TYPE = AttributeKey.stringKey("message_type");
+    AttributeKey<String> BIZ_TYPE = AttributeKey.stringKey("biz_type");
+    AttributeKey<String> RETRY_REASON = AttributeKey.stringKey("reason");
+    AttributeKey<String> UPSTREAM = AttributeKey.stringKey("upstream");
+    AttributeKey<String> CONNECTION = AttributeKey.stringKey("connection");
 }
@@ -21,6 +21,12 @@ import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.LongCounter;
 import io.opentelemetry.api.metrics.Meter;
 
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.ConcurrencyLimiter;
+import com.lei.java.gateway.server.route.cache.ResponseCache;
+import com.lei.java.gateway.server.route.connection.Connection;
+import com.lei.java.gateway.server.route.connection.ConnectionPool;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
 import com.lei.java.gateway.server.session.SessionManager;
 
 /**
@@ -51,6 +57,79 @@ public final class MetricsUtil {
                     .setDescription("End-to-end processing duration of a message")
                     .build();
 
+    /**
+     * 计数器：发出的对冲请求数，按 bizType 区分
+     */
+    public static final LongCounter HEDGED_REQUESTS_COUNTER =
+            METER.counterBuilder("gateway.route.hedged.total")
+                    .setUnit("1")
+                    .setDescription("Total number of hedged upstream requests")
+                    .build();
+
+    /**
+     * 计数器：被合并到已有上游请求上的请求数，按 bizType 区分
+     */
+    public static final LongCounter COALESCED_REQUESTS_COUNTER =
+            METER.counterBuilder("gateway.route.coalesced.total")
+                    .setUnit("1")
+                    .setDescription("Total number of requests coalesced into an in-flight call")
+                    .build();
+
+    /**
+     * 计数器：发出的重试请求数，按 bizType 和重试原因区分
+     */
+    public static final LongCounter RETRIED_REQUESTS_COUNTER =
+            METER.counterBuilder("gateway.route.retried.total")
+                    .setUnit("1")
+                    .setDescription("Total number of retried upstream requests")
+                    .build();
+
+    /**
+     * 计数器：因为重试预算不足而放弃的重试数，按 bizType 区分
+     */
+    public static final LongCounter RETRY_BUDGET_EXHAUSTED_COUNTER =
+            METER.counterBuilder("gateway.route.retry.budget.exhausted.total")
+                    .setUnit("1")
+                    .setDescription("Total number of retries skipped because of the retry budget")
+                    .build();
+
+    /**
+     * 计数器：上游连接池已经达到最大连接数、且所有连接都有请求在处理的次数，按上游实例区分
+     */
+    public static final LongCounter UPSTREAM_POOL_SATURATED_COUNTER =
+            METER.counterBuilder("gateway.upstream.pool.saturated.total")
+                    .setUnit("1")
+                    .setDescription("Times an upstream pool was at max size with every "
+                            + "connection busy")
+                    .build();
+
+    /**
+     * 计数器：上游实例因为失败过多被摘除的次数，按上游实例区分
+     */
+    public static final LongCounter OUTLIER_EJECTIONS_COUNTER =
+            METER.counterBuilder("gateway.upstream.outlier.ejections.total")
+                    .setUnit("1")
+                    .setDescription("Times an upstream instance was ejected as an outlier")
+                    .build();
+
+    /**
+     * 直方图：上游连接池中没有可用连接时，等待新连接建立的时间
+     */
+    public static final DoubleHistogram UPSTREAM_POOL_WAIT_HISTOGRAM =
+            METER.histogramBuilder("gateway.upstream.pool.wait.duration")
+                    .setUnit("ms")
+                    .setDescription("Time spent waiting for an upstream connection")
+                    .build();
+
+    /**
+     * 直方图：流式响应从开始连接上游到收到响应头的时间，按上游实例区分
+     */
+    public static final DoubleHistogram UPSTREAM_TTFB_HISTOGRAM =
+            METER.histogramBuilder("gateway.upstream.ttfb")
+                    .setUnit("ms")
+                    .setDescription("Time to first byte of streamed upstream responses")
+                    .build();
+
     /**
      * 仪表盘 (Gauge)：实时观测当前活跃的会话数 这个比较特殊，它通过一个回调函数来异步地获取值
      *
@@ -62,4 +141,105 @@ public final class MetricsUtil {
                 .buildWithCallback(measurement -> measurement
                         .record(sessionManager.getActiveSessionCount(), Attributes.empty()));
     }
+
+    /**
+     * 响应缓存的命中、未命中、淘汰次数以及占用的内存，均从缓存的统计信息中异步获取
+     *
+     * @param responseCache 响应缓存
+     */
+    public static void registerResponseCacheMetrics(ResponseCache responseCache) {
+        METER.counterBuilder("gateway.route.cache.hits.total")
+                .setUnit("1")
+                .setDescription("Total number of response cache hits")
+                .buildWithCallback(measurement -> measurement.record(responseCache.stats()
+                        .hitCount()));
+        METER.counterBuilder("gateway.route.cache.misses.total")
+                .setUnit("1")
+                .setDescription("Total number of response cache misses")
+                .buildWithCallback(measurement -> measurement.record(responseCache.stats()
+                        .missCount()));
+        METER.counterBuilder("gateway.route.cache.evictions.total")
+                .setUnit("1")
+                .setDescription("Total number of response cache evictions")
+                .buildWithCallback(measurement -> measurement.record(responseCache.stats()
+                        .evictionCount()));
+        METER.gaugeBuilder("gateway.route.cache.memory")
+                .ofLongs()
+                .setUnit("By")
+                .setDescription("Estimated memory used by the response cache")
+                .buildWithCallback(
+                        measurement -> measurement.record(responseCache.weightedSize()));
+        METER.gaugeBuilder("gateway.route.cache.entries")
+                .ofLongs()
+                .setDescription("Current number of response cache entries")
+                .buildWithCallback(
+                        measurement -> measurement.record(responseCache.estimatedSize()));
+    }
+
+    /**
+     * 每个上游实例的并发上限，以及在途请求数占上限的比例
+     *
+     * @param concurrencyLimiter 实例并发上限
+     */
+    public static void registerConcurrencyLimitMetrics(ConcurrencyLimiter concurrencyLimiter) {
+        METER.gaugeBuilder("gateway.upstream.concurrency.limit")
+                .ofLongs()
+                .setDescription("Current adaptive concurrency limit per upstream instance")
+                .buildWithCallback(measurement -> {
+                    for (ServiceInstance instance : concurrencyLimiter.instances()) {
+                        measurement.record(concurrencyLimiter.limit(instance),
+                                Attributes.of(GatewayMetrics.UPSTREAM,
+                                        instance.getServerAddress()));
+                    }
+                });
+        METER.gaugeBuilder("gateway.upstream.concurrency.utilization")
+                .setUnit("1")
+                .setDescription("In-flight requests divided by the concurrency limit")
+                .buildWithCallback(measurement -> {
+                    for (ServiceInstance instance : concurrencyLimiter.instances()) {
+                        measurement.record((double) concurrencyLimiter.inFlight(instance)
+                                / Math.max(1, concurrencyLimiter.limit(instance)),
+                                Attributes.of(GatewayMetrics.UPSTREAM,
+                                        instance.getServerAddress()));
+                    }
+                });
+    }
+
+    /**
+     * 上游连接池的连接数以及每个连接上待响应的请求数
+     *
+     * @param connectionManager 连接管理器
+     */
+    public static void registerConnectionPoolMetrics(DefaultConnectionManager connectionManager) {
+        METER.gaugeBuilder("gateway.upstream.pool.connections")
+                .ofLongs()
+                .setDescription("Current number of connections per upstream instance")
+                .buildWithCallback(measurement -> {
+                    for (ConnectionPool pool : connectionManager.getPools()) {
+                        measurement.record(pool.getConnections()
+                                .size(),
+                                Attributes.of(GatewayMetrics.UPSTREAM,
+                                        pool.getServiceInstance()
+                                                .getServerAddress()));
+                    }
+                });
+        METER.gaugeBuilder("gateway.upstream.connection.pending")
+                .ofLongs()
+                .setDescription("Current number of in-flight requests per upstream connection")
+                .buildWithCallback(measurement -> {
+                    for (ConnectionPool pool : connectionManager.getPools()) {
+                        String upstream = pool.getServiceInstance()
+                                .getServerAddress();
+                        for (Connection connection : pool.getConnections()) {
+                            measurement.record(connection.getPendingCount(),
+                                    Attributes.of(GatewayMetrics.UPSTREAM,
+                                            upstream,
+                                            GatewayMetrics.CONNECTION,
+                                            connection.getChannel()
+                                                    .id()
+                                                    .asShortText()));
+                        }
+                    }
+                });
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+
+/**
+ * <p>
+ * 自适应的实例并发上限
+ * </p>
+ * 每个实例同时在途的请求数不超过它的上限，上限按 AIMD 调整：RTT 不超过基准 RTT 的 {@code rttTolerance} 倍、
+ * 并且上限用到一半以上时，每个响应把上限提高 {@code 1 / limit}，相当于每轮 RTT 加 1；请求超时或者 RTT 超出容忍范围时
+ * 上限乘以 {@code backoffRatio}，一轮 RTT 内最多下调一次。基准 RTT 取窗口内的最小值，窗口到期后重新测量，
+ * 跟随实例的正常延迟变化。同一个实例上不同 bizType 的正常延迟差别很大，基准 RTT 按 bizType 分别测量，
+ * 慢接口的响应不会被当作拥塞而拉低整个实例的上限。
+ * <p>
+ * 到达上限的实例在负载均衡之前被跳过，请求溢出到其他实例。
+ *
+ * @author 伍磊
+ */
+public final class ConcurrencyLimiter {
+
+    private final RouteConfig.ConcurrencyConfig config;
+    private final LongSupplier nanoClock;
+    private final Map<ServiceInstance, InstanceLimit> limits = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiter(RouteConfig.ConcurrencyConfig config) {
+        this(config, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(RouteConfig.ConcurrencyConfig config, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 占用实例的一个并发名额
+     *
+     * @return 实例已经到达上限时返回 false
+     */
+    public boolean tryAcquire(ServiceInstance instance) {
+        if (!config.isEnabled()) {
+            return true;
+        }
+        return limitOf(instance).tryAcquire();
+    }
+
+    /**
+     * 实例在途的请求数是否已经到达上限
+     */
+    public boolean isSaturated(ServiceInstance instance) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        InstanceLimit limit = limits.get(instance);
+        return limit != null && limit.inFlight.get() >= limit.limit();
+    }
+
+    /**
+     * 归还名额，不调整上限。用于没有发出、被取消等不能反映实例负载的请求
+     */
+    public void release(ServiceInstance instance) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        // 实例已经下线并清理，不再记录
+        InstanceLimit limit = limits.get(instance);
+        if (limit != null) {
+            limit.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还名额，并按这次请求的结果调整上限
+     *
+     * @param bizType  请求的业务类型，RTT 和这个业务类型的基准 RTT 比较
+     * @param rttNanos 请求的往返时间
+     * @param dropped  请求超时等说明实例过载的情况
+     */
+    public void release(
+            ServiceInstance instance,
+            String bizType,
+            long rttNanos,
+            boolean dropped) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        InstanceLimit limit = limits.get(instance);
+        if (limit == null) {
+            return;
+        }
+        limit.sample(bizType, rttNanos, dropped, nanoClock.getAsLong());
+        limit.inFlight.decrementAndGet();
+    }
+
+    /**
+     * 实例离开注册中心后清理它的上限，之后重新加入时从初始上限开始
+     */
+    public void remove(ServiceInstance instance) {
+        limits.remove(instance);
+    }
+
+    /**
+     * 实例当前的并发上限
+     */
+    public int limit(ServiceInstance instance) {
+        InstanceLimit limit = limits.get(instance);
+        return limit == null
+                ? config.getInitialLimit()
+                : limit.limit();
+    }
+
+    /**
+     * 实例当前在途的请求数
+     */
+    public int inFlight(ServiceInstance instance) {
+        InstanceLimit limit = limits.get(instance);
+        return limit == null
+                ? 0
+                : limit.inFlight.get();
+    }
+
+    /**
+     * 有过请求的实例
+     */
+    public Set<ServiceInstance> instances() {
+        return limits.keySet();
+    }
+
+    private InstanceLimit limitOf(ServiceInstance instance) {
+        return limits.computeIfAbsent(instance, _ -> new InstanceLimit());
+    }
+
+    /**
+     * 单个实例的上限，调整由 this 保护
+     */
+    private final class InstanceLimit {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double limit = config.getInitialLimit();
+        // bizType -> 基准 RTT
+        private final Map<String, MinRtt> minRtts = new HashMap<>();
+        private long lastDecreaseAt;
+        private boolean decreased;
+
+        int limit() {
+            return (int) limit;
+        }
+
+        boolean tryAcquire() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= (int) limit) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        synchronized void sample(String bizType, long rttNanos, boolean dropped, long now) {
+            MinRtt minRtt = minRtts.computeIfAbsent(bizType, _ -> new MinRtt());
+            if (!dropped && (minRtt.nanos == 0 || now - minRtt.resetAt >= 0)) {
+                // 基准 RTT 到期，以这次请求为起点重新测量
+                minRtt.nanos = rttNanos;
+                minRtt.resetAt = now
+                        + TimeUnit.MILLISECONDS.toNanos(config.getMinRttWindowMillis());
+            } else if (!dropped) {
+                minRtt.nanos = Math.min(minRtt.nanos, rttNanos);
+            }
+            long minRttNanos = minRtt.nanos;
+
+            boolean congested = dropped
+                    || minRttNanos > 0 && rttNanos > minRttNanos * config.getRttTolerance();
+            if (congested) {
+                // 一轮 RTT 内的多个慢响应是同一次拥塞，只下调一次
+                if (!decreased || now - lastDecreaseAt >= minRttNanos) {
+                    decreased = true;
+                    lastDecreaseAt = now;
+                    limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+                }
+            } else if (inFlight.get() * 2 >= limit) {
+                // 上限没有用到一半时，提高上限没有依据
+                limit = Math.min(config.getMaxLimit(), limit + 1 / limit);
+            }
+        }
+    }
+
+    /**
+     * 单个 bizType 的基准 RTT，由所属的 {@link InstanceLimit} 保护
+     */
+    private static final class MinRtt {
+        private long nanos;
+        private long resetAt;
+    }
+}
@@ -15,19 +15,40 @@
  */
 package com.lei.java.gateway.server.route;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.util.internal.StringUtil;
+import io.opentelemetry.api.common.Attributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+import com.lei.java.gateway.server.metrics.GatewayMetrics;
 import com.lei.java.gateway.server.route.connection.Connection;
 import com.lei.java.gateway.server.route.connection.ConnectionManager;
+import com.lei.java.gateway.server.route.connection.RequestNotSentException;
+import com.lei.java.gateway.server.route.loadbalancer.InstanceSnapshot;
 import com.lei.java.gateway.server.route.loadbalancer.LoadBalancer;
 
+import static com.lei.java.gateway.server.metrics.MetricsUtil.COALESCED_REQUESTS_COUNTER;
+import static com.lei.java.gateway.server.metrics.MetricsUtil.HEDGED_REQUESTS_COUNTER;
+import static com.lei.java.gateway.server.metrics.MetricsUtil.RETRIED_REQUESTS_COUNTER;
+import static com.lei.java.gateway.server.metrics.MetricsUtil.RETRY_BUDGET_EXHAUSTED_COUNTER;
+
 /**
  * <p>
  * 默认的路由服务
@@ -41,17 +62,79 @@ public class DefaultRouteService implements RouteService {
     private final ServiceRegistry registry;
     private final LoadBalancer loadBalancer;
     private final ConnectionManager connectionManager;
+    private final RouteConfig routeConfig;
+    private final RequestBudget hedgeBudget;
+    private final RequestBudget retryBudget;
+    private final OutlierDetector outlierDetector;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    // 正在请求上游、可以被合并的请求
+    private final Map<RequestKey, InFlightCall> inFlightCalls = new ConcurrentHashMap<>();
+    // bizType -> 实例快照，注册中心的实例列表变化时重建
+    private final Map<String, InstanceSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Predicate<ServiceInstance> unavailable = this::isUnavailable;
 
     public static final String ERROR_BIZ_TYPE_REQUIRED = "bizType is required";
     public static final String ERROR_SERVICE_NOT_FOUND = "service %s not found";
+    public static final String ERROR_CONCURRENCY_LIMIT = "concurrency limit reached for %s";
+
+    private static final int HEDGE_BUDGET_MAX_TOKENS = 10;
+    private static final int RETRY_BUDGET_MAX_TOKENS = 10;
+    private static final String RETRY_REASON_NOT_SENT = "not_sent";
+    private static final String RETRY_REASON_FAILED = "failed";
+    // 实例下线时到它的连接已经关闭，在途请求很快以失败结束。稍后再清理按实例保存的状态，
+    // 避免这些请求的结果重新创建出来
+    private static final long REMOVED_INSTANCE_CLEANUP_DELAY_MILLIS = 10_000;
 
     public DefaultRouteService(
             ServiceRegistry registry,
             LoadBalancer loadBalancer,
             ConnectionManager connectionManager) {
+        this(registry, loadBalancer, connectionManager, new RouteConfig());
+    }
+
+    public DefaultRouteService(
+            ServiceRegistry registry,
+            LoadBalancer loadBalancer,
+            ConnectionManager connectionManager,
+            RouteConfig routeConfig) {
         this.registry = registry;
         this.loadBalancer = loadBalancer;
         this.connectionManager = connectionManager;
+        this.routeConfig = routeConfig;
+        this.hedgeBudget = new RequestBudget(routeConfig.getHedgeBudgetPercent() / 100,
+                HEDGE_BUDGET_MAX_TOKENS);
+        this.retryBudget = new RequestBudget(routeConfig.getRetryBudgetPercent() / 100,
+                RETRY_BUDGET_MAX_TOKENS);
+        this.outlierDetector = new OutlierDetector(routeConfig.getOutlier());
+        this.concurrencyLimiter = new ConcurrencyLimiter(routeConfig.getConcurrency());
+        registry.addInstanceRemovedListener(instance -> RouteTimer.get()
+                .newTimeout(_ -> onInstanceRemoved(instance),
+                        REMOVED_INSTANCE_CLEANUP_DELAY_MILLIS,
+                        TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 实例离开注册中心后清理负载均衡、异常检测和并发上限中它的状态。延迟期间实例重新注册时不清理，
+     * 新的快照已经引用了这些状态，清理之后快照和负载均衡看到的计数会不一致
+     */
+    void onInstanceRemoved(ServiceInstance instance) {
+        if (isRegistered(instance)) {
+            logger.debug("Instance {} registered again, keep its state", instance);
+            return;
+        }
+        loadBalancer.onInstanceRemoved(instance);
+        outlierDetector.remove(instance);
+        concurrencyLimiter.remove(instance);
+    }
+
+    private boolean isRegistered(ServiceInstance instance) {
+        for (List<ServiceInstance> instances : registry.getAllServices()
+                .values()) {
+            if (instances.contains(instance)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -65,16 +148,149 @@ public class DefaultRouteService implements RouteService {
             return future;
         }
 
+        if (routeConfig.coalesce(bizType)) {
+            return coalesce(message, bizType);
+        }
+        return routeToUpstream(message, bizType);
+    }
+
+    /**
+     * 开启了流式响应的 bizType 选出实例后交给连接管理器转发。响应头到达时已经开始向客户端转发，
+     * 所以不做对冲和重试；其他 bizType 同 {@link #route}
+     */
+    @Override
+    public void stream(GatewayMessage message, ResponseStream stream) {
+        String bizType = message.getBizType();
+        if (StringUtil.isNullOrEmpty(bizType) || !routeConfig.stream(bizType)) {
+            RouteService.super.stream(message, stream);
+            return;
+        }
+
+        long deadline = RequestDeadline.resolve(message, routeConfig.timeoutMillis(bizType));
+        if (deadline != RequestDeadline.NONE && RequestDeadline.remainingMillis(deadline) <= 0) {
+            logger.warn("Request {} dropped, deadline exceeded before routing",
+                    message.getRequestId());
+            stream.onError(new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED));
+            return;
+        }
+
+        List<ServiceInstance> registered = registry.getServices(bizType);
+        ServiceInstance instance = null == registered || registered.isEmpty()
+                ? null
+                : loadBalancer.select(available(snapshot(bizType, registered)), message);
+        if (instance == null) {
+            logger.error("No service found for bizType: {}", bizType);
+            stream.onError(
+                    new IllegalArgumentException(String.format(ERROR_SERVICE_NOT_FOUND, bizType)));
+            return;
+        }
+
+        if (!concurrencyLimiter.tryAcquire(instance)) {
+            stream.onError(new RequestNotSentException(
+                    String.format(ERROR_CONCURRENCY_LIMIT, instance)));
+            return;
+        }
+        loadBalancer.onRequestStart(instance);
+        long probe = outlierDetector.tryProbe(instance);
+        logger.debug("Streaming from service instance: {} for bizType: {}", instance, bizType);
+        connectionManager.stream(instance,
+                message,
+                new OutcomeRecordingStream(instance,
+                        bizType,
+                        probe,
+                        System.nanoTime(),
+                        stream));
+    }
+
+    /**
+     * 合并相同的并发请求：相同的请求已经在请求上游时等待它的响应，否则由当前请求发出并登记。
+     * 每个调用方拿到的都是响应的副本，requestId 和 clientId 改写为自己的
+     */
+    private CompletableFuture<GatewayMessage> coalesce(GatewayMessage message, String bizType) {
+        RequestKey key = RequestKey.of(message);
+        InFlightCall call = inFlightCalls.get(key);
+        if (call == null) {
+            InFlightCall created = new InFlightCall();
+            call = inFlightCalls.putIfAbsent(key, created);
+            if (call == null) {
+                // 先移除再完成，完成之后到达的请求会重新发出，不会拿到旧的响应
+                routeToUpstream(message, bizType).whenComplete((resp, err) -> {
+                    inFlightCalls.remove(key, created);
+                    if (err != null) {
+                        created.response.completeExceptionally(err);
+                    } else {
+                        // 每个等待者各拿一份副本，消息体先复制到堆上，不再持有上游的 ByteBuf
+                        resp.getBody();
+                        resp.releaseContent();
+                        created.response.complete(resp);
+                    }
+                });
+                return attach(created, message);
+            }
+        }
+        // 等待者太多时单独发出，避免一个慢请求拖住大量请求
+        if (!call.tryJoin(routeConfig.getCoalesceMaxWaiters())) {
+            return routeToUpstream(message, bizType);
+        }
+        COALESCED_REQUESTS_COUNTER.add(1, bizTypeAttributes(bizType));
+        return attach(call, message);
+    }
+
+    private static CompletableFuture<GatewayMessage> attach(
+            InFlightCall call,
+            GatewayMessage request) {
+        CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+        call.response.whenComplete((resp, err) -> {
+            if (err != null) {
+                future.completeExceptionally(err);
+            } else {
+                future.complete(copyFor(resp, request));
+            }
+        });
+        return future;
+    }
+
+    private static GatewayMessage copyFor(GatewayMessage response, GatewayMessage request) {
+        GatewayMessage copy = new GatewayMessage();
+        copy.setMsgType(response.getMsgType());
+        copy.setRequestId(request.getRequestId());
+        copy.setClientId(request.getClientId());
+        copy.setBizType(response.getBizType());
+        Map<String, String> extensions = response.getExtensions();
+        copy.setExtensions(extensions == null
+                ? null
+                : new HashMap<>(extensions));
+        copy.setBody(response.getBody());
+        copy.setCacheTtlMillis(response.getCacheTtlMillis());
+        return copy;
+    }
+
+    private CompletableFuture<GatewayMessage> routeToUpstream(
+            GatewayMessage message,
+            String bizType) {
+        CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+
+        // 截止时间已过的请求，客户端已经不再等待，直接丢弃
+        long deadline = RequestDeadline.resolve(message, routeConfig.timeoutMillis(bizType));
+        if (deadline != RequestDeadline.NONE && RequestDeadline.remainingMillis(deadline) <= 0) {
+            logger.warn("Request {} dropped, deadline exceeded before routing",
+                    message.getRequestId());
+            future.completeExceptionally(
+                    new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED));
+            return future;
+        }
+
         // 1. 找到对应的服务
-        List<ServiceInstance> services = registry.getServices(bizType);
-        if (null == services || services.isEmpty()) {
+        List<ServiceInstance> registered = registry.getServices(bizType);
+        if (null == registered || registered.isEmpty()) {
             logger.error("No service found for bizType: {}", bizType);
             future.completeExceptionally(
                     new IllegalArgumentException(String.format(ERROR_SERVICE_NOT_FOUND, bizType)));
             return future;
         }
+        InstanceSnapshot services = available(snapshot(bizType, registered));
 
-        ServiceInstance instance = loadBalancer.select(services);
+        ServiceInstance instance = loadBalancer.select(services, message);
         if (instance == null) {
             logger.error("Load balancer returned null instance for bizType: {}", bizType);
             future.completeExceptionally(
@@ -85,34 +301,251 @@ public class DefaultRouteService implements RouteService {
         logger.debug("Selected service instance: {} for bizType: {}", instance, bizType);
 
         // 2. 发送请求
+        retryBudget.deposit();
+        long hedgeDelayMillis = routeConfig.hedgeDelayMillis(bizType);
+        CompletableFuture<GatewayMessage> response;
+        if (hedgeDelayMillis > 0 && services.size() > 1) {
+            hedgeBudget.deposit();
+            response = new HedgedCall(target -> sendWithRetry(services, target, message, deadline),
+                    () -> selectHedgeInstance(services, instance, message),
+                    () -> HEDGED_REQUESTS_COUNTER.add(1, bizTypeAttributes(bizType)))
+                    .start(instance, hedgeDelayMillis);
+        } else {
+            response = sendWithRetry(services, instance, message, deadline);
+        }
+        response.whenComplete((resp, err) -> {
+            if (err != null) {
+                future.completeExceptionally(err);
+            } else if (!future.complete(resp)) {
+                resp.releaseContent();
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * 向指定实例发送请求，失败时按重试策略换一个实例重发
+     */
+    private CompletableFuture<GatewayMessage> sendWithRetry(
+            InstanceSnapshot services,
+            ServiceInstance instance,
+            GatewayMessage message,
+            long deadline) {
+        int maxRetries = routeConfig.getMaxRetries();
+        if (maxRetries <= 0 || services.size() <= 1) {
+            return send(instance, message);
+        }
+        String bizType = message.getBizType();
+        boolean idempotent = routeConfig.idempotent(bizType);
+        return new RetryingCall(target -> send(target, message),
+                cause -> isRetryable(cause, idempotent, deadline),
+                (tried, cause) -> selectRetryInstance(services, tried, message, cause),
+                maxRetries).start(instance);
+    }
+
+    /**
+     * 没有发出的请求总是可以重试；已经发出的请求只有幂等时才重试。超时和取消的请求不重试
+     */
+    private static boolean isRetryable(Throwable cause, boolean idempotent, long deadline) {
+        if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+            return false;
+        }
+        if (deadline != RequestDeadline.NONE && RequestDeadline.remainingMillis(deadline) <= 0) {
+            return false;
+        }
+        return idempotent || cause instanceof RequestNotSentException;
+    }
+
+    /**
+     * 从尝试过的实例之外选一个重试，预算不足时不重试
+     */
+    private ServiceInstance selectRetryInstance(
+            InstanceSnapshot services,
+            Set<ServiceInstance> tried,
+            GatewayMessage message,
+            Throwable cause) {
+        String bizType = message.getBizType();
+        ServiceInstance instance = loadBalancer.select(excluding(services, tried), message);
+        if (instance == null) {
+            return null;
+        }
+        if (!retryBudget.tryWithdraw()) {
+            logger.warn("Retry budget exhausted, bizType: {}", bizType);
+            RETRY_BUDGET_EXHAUSTED_COUNTER.add(1, bizTypeAttributes(bizType));
+            return null;
+        }
+        String reason = cause instanceof RequestNotSentException
+                ? RETRY_REASON_NOT_SENT
+                : RETRY_REASON_FAILED;
+        logger.info("Retrying bizType: {} on {}, reason: {}", bizType, instance, reason);
+        RETRIED_REQUESTS_COUNTER.add(1,
+                Attributes.of(GatewayMetrics.BIZ_TYPE,
+                        bizType,
+                        GatewayMetrics.RETRY_REASON,
+                        reason));
+        return instance;
+    }
+
+    /**
+     * 向指定实例发送请求。返回的 future 被取消时，连接上的待响应条目一起移除
+     */
+    private CompletableFuture<GatewayMessage> send(
+            ServiceInstance instance,
+            GatewayMessage message) {
+        CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+        // 实例到达并发上限，按没有发出处理，重试时换一个实例
+        if (!concurrencyLimiter.tryAcquire(instance)) {
+            future.completeExceptionally(new RequestNotSentException(
+                    String.format(ERROR_CONCURRENCY_LIMIT, instance)));
+            return future;
+        }
+        loadBalancer.onRequestStart(instance);
+        // 实例被摘除时这个请求可能作为探测请求
+        long probe = outlierDetector.tryProbe(instance);
+        long startNanos = System.nanoTime();
         CompletableFuture<Connection> connection = connectionManager.getConnection(instance);
         connection.whenComplete((conn, throwable) -> {
             if (throwable != null) {
+                concurrencyLimiter.release(instance);
+                loadBalancer.onRequestEnd(instance, -1);
                 logger.error("Failed to get connection for instance: "
                         + instance, throwable);
-                future.completeExceptionally(throwable);
+                future.completeExceptionally(new RequestNotSentException(
+                        "Failed to connect to " + instance, throwable));
             } else {
                 logger.debug("Sending message to instance: {}, requestId: {}",
                         instance,
                         message.getRequestId());
-                conn.send(message)
-                        .whenComplete((resp, err) -> {
-                            if (err != null) {
-                                logger.error("Failed to send message: "
-                                        + message.getRequestId(), err);
-                                future.completeExceptionally(err);
-                            } else {
-                                logger.debug("Received response for requestId: {}",
-                                        message.getRequestId());
-                                future.complete(resp);
-                            }
-                        });
+                CompletableFuture<GatewayMessage> sent = conn.send(message);
+                future.whenComplete((_, _) -> {
+                    if (future.isCancelled()) {
+                        sent.cancel(false);
+                    }
+                });
+                sent.whenComplete((resp, err) -> {
+                    recordOutcome(instance,
+                            message.getBizType(),
+                            probe,
+                            startNanos,
+                            resp,
+                            err);
+                    if (err != null) {
+                        if (!future.isCancelled()) {
+                            logger.error("Failed to send message: "
+                                    + message.getRequestId(), err);
+                        }
+                        future.completeExceptionally(err);
+                    } else {
+                        logger.debug("Received response for requestId: {}",
+                                message.getRequestId());
+                        // 对冲落败等情况下请求已经被取消，响应直接丢弃
+                        if (!future.complete(resp)) {
+                            resp.releaseContent();
+                        }
+                    }
+                });
             }
         });
-
         return future;
     }
 
+    /**
+     * 已经发出的请求的结果计入实例的异常检测，没有发出和被取消的请求不计入。
+     * 同时归还实例的并发名额：收到响应时按 RTT 调整上限，超时说明实例过载，其他失败不调整。
+     * 负载均衡器同样得到通知，没有发出和被取消的请求不带 RTT
+     *
+     * @param probe 请求发出前 {@link OutlierDetector#tryProbe} 返回的编号
+     */
+    private void recordOutcome(
+            ServiceInstance instance,
+            String bizType,
+            long probe,
+            long startNanos,
+            GatewayMessage response,
+            Throwable err) {
+        long rttNanos = System.nanoTime() - startNanos;
+        if (err == null) {
+            concurrencyLimiter.release(instance, bizType, rttNanos, false);
+            loadBalancer.onRequestEnd(instance, rttNanos);
+            if (OutlierDetector.isFailure(response)) {
+                outlierDetector.onFailure(instance, probe);
+            } else {
+                outlierDetector.onSuccess(instance, probe);
+            }
+            return;
+        }
+        if (err instanceof TimeoutException) {
+            concurrencyLimiter.release(instance, bizType, rttNanos, true);
+        } else {
+            concurrencyLimiter.release(instance);
+        }
+        if (!(err instanceof RequestNotSentException)
+                && !(err instanceof CancellationException)) {
+            loadBalancer.onRequestEnd(instance, rttNanos);
+            outlierDetector.onFailure(instance, probe);
+        } else {
+            loadBalancer.onRequestEnd(instance, -1);
+        }
+    }
+
+    /**
+     * 从首选实例之外的实例中选一个发送对冲请求，预算不足时不对冲
+     */
+    private ServiceInstance selectHedgeInstance(
+            InstanceSnapshot services,
+            ServiceInstance primary,
+            GatewayMessage message) {
+        ServiceInstance instance =
+                loadBalancer.select(excluding(services, List.of(primary)), message);
+        if (instance == null || !hedgeBudget.tryWithdraw()) {
+            return null;
+        }
+        return instance;
+    }
+
+    /**
+     * bizType 的实例快照。注册中心的实例列表是不可变的，引用没变时直接复用，变化后重建
+     */
+    private InstanceSnapshot snapshot(String bizType, List<ServiceInstance> registered) {
+        InstanceSnapshot snapshot = snapshots.get(bizType);
+        if (snapshot == null || snapshot.source() != registered) {
+            snapshot = InstanceSnapshot.of(registered);
+            snapshots.put(bizType, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 去掉正在预热或者重连中的实例、被异常检测摘除的实例以及到达并发上限的实例，之后再交给负载均衡。
+     * 全部可用时直接返回原快照；全部不可用时同样返回原快照，由连接池和并发上限决定是否快速失败。
+     * 相同的不可用组合复用快照上缓存的子快照
+     */
+    private InstanceSnapshot available(InstanceSnapshot snapshot) {
+        InstanceSnapshot available = snapshot.excluding(unavailable);
+        return available.isEmpty() ? snapshot : available;
+    }
+
+    private boolean isUnavailable(ServiceInstance service) {
+        return !connectionManager.isAvailable(service)
+                || concurrencyLimiter.isSaturated(service)
+                || outlierDetector.isEjected(service);
+    }
+
+    private static InstanceSnapshot excluding(
+            InstanceSnapshot services,
+            Collection<ServiceInstance> excluded) {
+        return services.excluding(excluded::contains);
+    }
+
+    private static Attributes bizTypeAttributes(String bizType) {
+        return Attributes.of(GatewayMetrics.BIZ_TYPE, bizType);
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     @Override
     public ServiceRegistry getServiceRegistry() {
         return this.registry;
@@ -122,4 +555,80 @@ public class DefaultRouteService implements RouteService {
     public ConnectionManager getConnectionManager() {
         return this.connectionManager;
     }
+
+    /**
+     * 把流式响应的结果计入实例的异常检测和并发上限：按响应头的状态码和到达时间判断，
+     * 响应头到达之前的失败同 {@link #recordOutcome}
+     */
+    private final class OutcomeRecordingStream implements ResponseStream {
+        private final ServiceInstance instance;
+        private final String bizType;
+        private final long probe;
+        private final long startNanos;
+        private final ResponseStream delegate;
+        private volatile boolean headReceived;
+
+        OutcomeRecordingStream(
+                ServiceInstance instance,
+                String bizType,
+                long probe,
+                long startNanos,
+                ResponseStream delegate) {
+            this.instance = instance;
+            this.bizType = bizType;
+            this.probe = probe;
+            this.startNanos = startNanos;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onResponse(GatewayMessage response) {
+            recordOutcome(instance, bizType, probe, startNanos, response, null);
+            delegate.onResponse(response);
+        }
+
+        @Override
+        public void onHead(GatewayMessage head, Subscription subscription) {
+            headReceived = true;
+            recordOutcome(instance, bizType, probe, startNanos, head, null);
+            delegate.onHead(head, subscription);
+        }
+
+        @Override
+        public void onChunk(ByteBuf chunk) {
+            delegate.onChunk(chunk);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            if (!headReceived) {
+                recordOutcome(instance, bizType, probe, startNanos, null, cause);
+            }
+            delegate.onError(cause);
+        }
+    }
+
+    /**
+     * 一个可以被合并的上游请求
+     */
+    private static final class InFlightCall {
+        private final CompletableFuture<GatewayMessage> response = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        boolean tryJoin(int maxWaiters) {
+            int current;
+            do {
+                current = waiters.get();
+                if (current >= maxWaiters) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
 }
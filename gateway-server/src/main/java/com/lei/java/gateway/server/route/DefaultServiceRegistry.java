@@ -25,6 +25,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +44,8 @@ public class DefaultServiceRegistry implements ServiceRegistry {
     private final ScheduledExecutorService healthCheckExecutor;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final ConnectionManager connectionManager;
+    private final List<Consumer<ServiceInstance>> removedListeners =
+            new CopyOnWriteArrayList<>();
 
     public DefaultServiceRegistry(ConnectionManager connectionManager) {
         this.connectionManager = connectionManager;
@@ -66,17 +69,20 @@ public class DefaultServiceRegistry implements ServiceRegistry {
             throw new IllegalArgumentException("instance cannot be null");
         }
 
+        // 实例列表不可变，每次变化换成新的列表，路由时按引用判断实例快照是否需要重建
         serviceMap.compute(bizType, (key, existingInstances) -> {
             if (existingInstances == null) {
-                existingInstances = new CopyOnWriteArrayList<>();
+                existingInstances = List.of();
             }
-            if (!existingInstances.contains(instance)) {
-                existingInstances.add(instance);
-                // 添加了之后就去连接这个节点
-                connectionManager.getConnection(instance);
-                logger.info("Registered service instance [{}] for bizType [{}]", instance, bizType);
+            if (existingInstances.contains(instance)) {
+                return existingInstances;
             }
-            return existingInstances;
+            List<ServiceInstance> instances = new ArrayList<>(existingInstances);
+            instances.add(instance);
+            // 添加了之后就预热到这个节点的连接，预热完成之前负载均衡跳过这个节点
+            connectionManager.warmUp(instance);
+            logger.info("Registered service instance [{}] for bizType [{}]", instance, bizType);
+            return List.copyOf(instances);
         });
     }
 
@@ -89,13 +95,22 @@ public class DefaultServiceRegistry implements ServiceRegistry {
             throw new IllegalArgumentException("instance cannot be null");
         }
 
-        serviceMap.computeIfPresent(bizType, (key, instances) -> {
+        serviceMap.computeIfPresent(bizType, (key, existingInstances) -> {
+            List<ServiceInstance> instances = new ArrayList<>(existingInstances);
             instances.remove(instance);
             logger.info("Removed service instance [{}] for bizType [{}]", instance, bizType);
             return instances.isEmpty()
                     ? null
-                    : instances;
+                    : List.copyOf(instances);
         });
+        // 其他 bizType 也不再使用这个节点时，关闭连接并停止重连
+        boolean inUse = serviceMap.values()
+                .stream()
+                .anyMatch(instances -> instances.contains(instance));
+        if (!inUse) {
+            connectionManager.removeInstance(instance);
+            removedListeners.forEach(listener -> listener.accept(instance));
+        }
     }
 
     @Override
@@ -103,7 +118,7 @@ public class DefaultServiceRegistry implements ServiceRegistry {
         if (bizType == null || bizType.isEmpty()) {
             throw new IllegalArgumentException("bizType cannot be empty");
         }
-        return serviceMap.getOrDefault(bizType, new ArrayList<>());
+        return serviceMap.getOrDefault(bizType, List.of());
     }
 
     @Override
@@ -111,6 +126,11 @@ public class DefaultServiceRegistry implements ServiceRegistry {
         return new ConcurrentHashMap<>(serviceMap);
     }
 
+    @Override
+    public void addInstanceRemovedListener(Consumer<ServiceInstance> listener) {
+        removedListeners.add(listener);
+    }
+
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * <p>
+ * 对冲请求
+ * </p>
+ * 先向首选实例发送请求，超过对冲延迟仍未返回时再向另一个实例发送一份相同的请求，先成功的响应胜出，另一个被取消。
+ * 只有所有已发出的请求都失败时才算失败。
+ *
+ * @author 伍磊
+ */
+final class HedgedCall implements TimerTask {
+
+    private final CompletableFuture<GatewayMessage> result = new CompletableFuture<>();
+    private final Function<ServiceInstance, CompletableFuture<GatewayMessage>> sender;
+    private final Supplier<ServiceInstance> hedgeSelector;
+    private final Runnable onHedge;
+    // 以下字段由 this 保护
+    private final List<CompletableFuture<GatewayMessage>> attempts = new ArrayList<>(2);
+    private int launchedAttempts;
+    private int failedAttempts;
+    private Throwable lastFailure;
+    private boolean hedgeResolved;
+    private Timeout hedgeTimeout;
+
+    /**
+     * @param sender        向指定实例发送请求
+     * @param hedgeSelector 选择对冲实例，没有可用实例或者预算不足时返回 null
+     * @param onHedge       对冲请求发出时回调，用于统计
+     */
+    HedgedCall(
+            Function<ServiceInstance, CompletableFuture<GatewayMessage>> sender,
+            Supplier<ServiceInstance> hedgeSelector,
+            Runnable onHedge) {
+        this.sender = sender;
+        this.hedgeSelector = hedgeSelector;
+        this.onHedge = onHedge;
+    }
+
+    CompletableFuture<GatewayMessage> start(ServiceInstance primary, long hedgeDelayMillis) {
+        synchronized (this) {
+            launchedAttempts++;
+            hedgeTimeout = RouteTimer.get()
+                    .newTimeout(this, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        attempt(primary);
+        return result;
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+        if (result.isDone()) {
+            return;
+        }
+        ServiceInstance instance = hedgeSelector.get();
+        synchronized (this) {
+            hedgeResolved = true;
+            if (instance == null || result.isDone()) {
+                failIfAllFailed();
+                return;
+            }
+            launchedAttempts++;
+        }
+        onHedge.run();
+        attempt(instance);
+    }
+
+    private void attempt(ServiceInstance instance) {
+        CompletableFuture<GatewayMessage> attempt = sender.apply(instance);
+        synchronized (this) {
+            attempts.add(attempt);
+        }
+        // 发出之前另一个请求已经成功
+        if (result.isDone()) {
+            attempt.cancel(false);
+        }
+        attempt.whenComplete(this::onComplete);
+    }
+
+    private void onComplete(GatewayMessage response, Throwable throwable) {
+        if (throwable == null) {
+            if (result.complete(response)) {
+                cancelOthers();
+            } else {
+                // 另一个请求已经胜出
+                response.releaseContent();
+            }
+            return;
+        }
+        synchronized (this) {
+            failedAttempts++;
+            lastFailure = throwable;
+            // 首选请求失败时对冲还没发出，就不再发出
+            if (!hedgeResolved && hedgeTimeout.cancel()) {
+                hedgeResolved = true;
+            }
+            failIfAllFailed();
+        }
+    }
+
+    private void failIfAllFailed() {
+        if (hedgeResolved && failedAttempts == launchedAttempts && lastFailure != null) {
+            result.completeExceptionally(lastFailure);
+        }
+    }
+
+    private void cancelOthers() {
+        List<CompletableFuture<GatewayMessage>> snapshot;
+        synchronized (this) {
+            hedgeTimeout.cancel();
+            hedgeResolved = true;
+            snapshot = new ArrayList<>(attempts);
+        }
+        // 取消落败的请求，连接上对应的待响应条目随之移除
+        for (CompletableFuture<GatewayMessage> attempt : snapshot) {
+            attempt.cancel(false);
+        }
+    }
+}
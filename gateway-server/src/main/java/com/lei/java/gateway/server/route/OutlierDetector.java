@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import io.opentelemetry.api.common.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+import com.lei.java.gateway.server.metrics.GatewayMetrics;
+
+import static com.lei.java.gateway.server.metrics.MetricsUtil.OUTLIER_EJECTIONS_COUNTER;
+
+/**
+ * <p>
+ * 被动的异常实例检测
+ * </p>
+ * 根据每个实例的请求结果判断实例是否异常：连续失败达到阈值，或者滑动窗口内请求数足够且失败率达到阈值时，
+ * 把实例摘除一段时间，摘除时间随连续摘除的次数指数增长。摘除到期后进入半开状态，每隔一段时间放行一个探测请求，
+ * 探测成功恢复正常，失败则再次摘除。
+ * <p>
+ * {@link #isEjected} 只做判断，可以对每个候选实例调用；选中实例之后通过 {@link #tryProbe} 领取探测名额，
+ * 摘除期间只有领到名额的请求结果决定实例是否恢复，摘除之前发出的请求结果不再计入。
+ * <p>
+ * 只统计已经发出的请求：超时、连接中途断开、5xx 和错误响应计为失败；没有发出的请求反映的是连接状态，
+ * 由连接池处理。
+ *
+ * @author 伍磊
+ */
+public final class OutlierDetector {
+    private static final Logger logger = LoggerFactory.getLogger(OutlierDetector.class);
+
+    /**
+     * 不是探测请求
+     */
+    public static final long NOT_PROBE = 0;
+
+    private static final String HTTP_STATUS = "http_status";
+    private static final int BUCKETS = 10;
+
+    private final RouteConfig.OutlierConfig config;
+    private final LongSupplier clock;
+    private final Map<ServiceInstance, InstanceStats> stats = new ConcurrentHashMap<>();
+
+    public OutlierDetector(RouteConfig.OutlierConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    OutlierDetector(RouteConfig.OutlierConfig config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * 实例当前是否被摘除，没有副作用。半开状态下探测名额空闲时返回 false
+     */
+    public boolean isEjected(ServiceInstance instance) {
+        InstanceStats instanceStats = stats.get(instance);
+        return instanceStats != null && instanceStats.isEjected(clock.getAsLong());
+    }
+
+    /**
+     * 选中实例之后、发出请求之前调用。实例被摘除且探测名额空闲时领取名额，之后的请求结果通过返回的编号上报
+     *
+     * @return 探测编号，实例正常或者名额已被领取时返回 {@link #NOT_PROBE}
+     */
+    public long tryProbe(ServiceInstance instance) {
+        InstanceStats instanceStats = stats.get(instance);
+        return instanceStats == null
+                ? NOT_PROBE
+                : instanceStats.tryProbe(clock.getAsLong());
+    }
+
+    public void onSuccess(ServiceInstance instance) {
+        onSuccess(instance, NOT_PROBE);
+    }
+
+    /**
+     * @param probe {@link #tryProbe} 返回的编号
+     */
+    public void onSuccess(ServiceInstance instance, long probe) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        statsOf(instance).record(true, probe, clock.getAsLong());
+    }
+
+    public void onFailure(ServiceInstance instance) {
+        onFailure(instance, NOT_PROBE);
+    }
+
+    /**
+     * @param probe {@link #tryProbe} 返回的编号
+     */
+    public void onFailure(ServiceInstance instance, long probe) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        statsOf(instance).record(false, probe, clock.getAsLong());
+    }
+
+    /**
+     * 实例离开注册中心后清理它的统计
+     */
+    public void remove(ServiceInstance instance) {
+        stats.remove(instance);
+    }
+
+    /**
+     * 上游返回的响应是否算作实例的失败：5xx 或者错误消息
+     */
+    public static boolean isFailure(GatewayMessage response) {
+        if (response.getMsgType() == GatewayMessage.MESSAGE_TYPE_ERROR) {
+            return true;
+        }
+        Map<String, String> extensions = response.getExtensions();
+        String status = extensions == null
+                ? null
+                : extensions.get(HTTP_STATUS);
+        return status != null && status.length() == 3 && status.charAt(0) == '5';
+    }
+
+    private InstanceStats statsOf(ServiceInstance instance) {
+        return stats.computeIfAbsent(instance, InstanceStats::new);
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * 单个实例的统计，由 this 保护
+     */
+    private final class InstanceStats {
+        private final ServiceInstance instance;
+        private final Attributes attributes;
+        // 滑动窗口，按时间分成 BUCKETS 个桶
+        private final long[] bucketStarts = new long[BUCKETS];
+        private final int[] successes = new int[BUCKETS];
+        private final int[] failures = new int[BUCKETS];
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        // 连续摘除的次数，决定下一次摘除的时长
+        private int ejections;
+        private long ejectedUntil;
+        private long nextProbeTime;
+        private long recoveredAt;
+        // 最近一次放行的探测请求，结果返回之后清零
+        private long probe = NOT_PROBE;
+        private long probeSequence;
+
+        InstanceStats(ServiceInstance instance) {
+            this.instance = instance;
+            this.attributes = Attributes.of(GatewayMetrics.UPSTREAM, instance.getServerAddress());
+        }
+
+        synchronized boolean isEjected(long now) {
+            return state != State.CLOSED && now < Math.max(ejectedUntil, nextProbeTime);
+        }
+
+        synchronized long tryProbe(long now) {
+            if (isEjected(now) || state == State.CLOSED) {
+                return NOT_PROBE;
+            }
+            // 放行一个探测请求，探测结果返回之前同一间隔内不再放行，探测请求丢失时下一个间隔重新放行
+            state = State.HALF_OPEN;
+            nextProbeTime = now + config.getProbeIntervalMillis();
+            probe = ++probeSequence;
+            return probe;
+        }
+
+        synchronized void record(boolean success, long requestProbe, long now) {
+            if (state != State.CLOSED) {
+                // 摘除之前发出的请求和没有领到名额的请求不计入，只看当前探测请求的结果
+                if (requestProbe == NOT_PROBE || requestProbe != probe) {
+                    return;
+                }
+                probe = NOT_PROBE;
+                if (success) {
+                    logger.info("Upstream {} recovered, restoring traffic", instance);
+                    reset(now);
+                } else {
+                    eject(now, "probe failed");
+                }
+                return;
+            }
+
+            int bucket = bucketOf(now);
+            if (success) {
+                successes[bucket]++;
+                consecutiveFailures = 0;
+                return;
+            }
+            failures[bucket]++;
+            consecutiveFailures++;
+            if (config.getConsecutiveFailures() > 0
+                    && consecutiveFailures >= config.getConsecutiveFailures()) {
+                eject(now, consecutiveFailures + " consecutive failures");
+            } else if (failureRateExceeded(now)) {
+                eject(now, "failure rate above " + config.getFailureRatePercent() + "%");
+            }
+        }
+
+        private boolean failureRateExceeded(long now) {
+            if (config.getFailureRatePercent() <= 0) {
+                return false;
+            }
+            long windowStart = now - config.getWindowMillis();
+            int total = 0;
+            int failed = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (bucketStarts[i] > windowStart) {
+                    total += successes[i] + failures[i];
+                    failed += failures[i];
+                }
+            }
+            return total >= config.getMinRequests()
+                    && failed * 100.0 >= total * config.getFailureRatePercent();
+        }
+
+        private int bucketOf(long now) {
+            long width = Math.max(1, config.getWindowMillis() / BUCKETS);
+            long start = now - now % width;
+            int bucket = (int) ((now / width) % BUCKETS);
+            if (bucketStarts[bucket] != start) {
+                bucketStarts[bucket] = start;
+                successes[bucket] = 0;
+                failures[bucket] = 0;
+            }
+            return bucket;
+        }
+
+        private void eject(long now, String reason) {
+            // 恢复之后稳定了最大摘除时长，重新从基础时长开始
+            if (recoveredAt > 0 && now - recoveredAt >= config.getMaxEjectionMillis()) {
+                ejections = 0;
+            }
+            int shift = Math.min(ejections, 30);
+            long duration = Math.min(config.getMaxEjectionMillis(),
+                    config.getBaseEjectionMillis() << shift);
+            ejections++;
+            state = State.OPEN;
+            ejectedUntil = now + duration;
+            nextProbeTime = 0;
+            clearWindow();
+            OUTLIER_EJECTIONS_COUNTER.add(1, attributes);
+            logger.warn("Upstream {} ejected for {}ms: {}", instance, duration, reason);
+        }
+
+        private void reset(long now) {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            recoveredAt = now;
+            clearWindow();
+        }
+
+        private void clearWindow() {
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketStarts[i] = 0;
+                successes[i] = 0;
+                failures[i] = 0;
+            }
+        }
+    }
+}
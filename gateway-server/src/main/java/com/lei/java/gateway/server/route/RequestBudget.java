@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 按流量比例发放的额外请求预算
+ * </p>
+ * 每个正常请求存入 {@code ratio} 个令牌，每个额外请求（对冲、重试）取出一个令牌，余额有上限。
+ * 额外请求的数量因此不会超过正常流量的 {@code ratio} 倍再加上 {@code maxTokens} 的突发。
+ * 每个节点的预算只和自己的流量有关，整个集群的放大倍数同样有界。
+ *
+ * @author 伍磊
+ */
+public final class RequestBudget {
+
+    // 令牌用定点数表示，避免浮点数 CAS
+    private static final long UNIT = 1000;
+
+    private final long depositUnits;
+    private final long maxUnits;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio     每个正常请求存入的令牌数，例如 0.1 表示额外请求不超过 10%
+     * @param maxTokens 余额上限，同时也是初始余额
+     */
+    public RequestBudget(double ratio, int maxTokens) {
+        if (ratio < 0 || maxTokens < 0) {
+            throw new IllegalArgumentException("ratio and maxTokens must not be negative");
+        }
+        this.depositUnits = Math.round(ratio * UNIT);
+        this.maxUnits = maxTokens * UNIT;
+        this.balance = new AtomicLong(maxUnits);
+    }
+
+    /**
+     * 记录一个正常请求
+     */
+    public void deposit() {
+        if (depositUnits == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxUnits) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(maxUnits, current + depositUnits)));
+    }
+
+    /**
+     * 尝试为一个额外请求取出令牌
+     *
+     * @return 余额不足时返回 false
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    /**
+     * 当前余额，单位为令牌
+     */
+    public double balance() {
+        return balance.get() / (double) UNIT;
+    }
+}
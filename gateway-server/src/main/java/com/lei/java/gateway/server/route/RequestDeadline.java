@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.Map;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+import static com.lei.java.gateway.common.constants.GatewayConstant.EXTENSION_DEADLINE;
+import static com.lei.java.gateway.common.constants.GatewayConstant.EXTENSION_TIMEOUT;
+
+/**
+ * <p>
+ * 请求截止时间
+ * </p>
+ * 截止时间是网关内部的毫秒时间戳，记录在消息上但不参与编码，也不写入扩展字段。
+ * 客户端可以通过 {@code x-timeout-ms} 指定相对超时时间，网关收到后换算为截止时间；
+ * 转发给上游时再换算回剩余的 {@code x-timeout-ms}。
+ *
+ * @author 伍磊
+ */
+public final class RequestDeadline {
+
+    /**
+     * 没有截止时间
+     */
+    public static final long NONE = Long.MAX_VALUE;
+
+    public static final String ERROR_DEADLINE_EXCEEDED = "deadline exceeded";
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * 计算消息的截止时间：客户端指定的超时和配置的超时取较早的一个，记录在消息上供连接使用。
+     * 客户端只能通过相对的 {@code x-timeout-ms} 指定超时，传入的 {@code x-deadline} 直接移除，
+     * 避免客户端伪造截止时间或者随扩展字段转发给上游
+     *
+     * @param message              消息
+     * @param configTimeoutMillis  配置的超时时间，小于等于 0 表示不限制
+     * @return 截止时间，没有限制时返回 {@link #NONE}
+     */
+    public static long resolve(GatewayMessage message, long configTimeoutMillis) {
+        long now = System.currentTimeMillis();
+        long deadline = of(message);
+        Map<String, String> extensions = message.getExtensions();
+        if (extensions != null) {
+            if (extensions.containsKey(EXTENSION_DEADLINE)) {
+                extensions.remove(EXTENSION_DEADLINE);
+            }
+            String timeout = extensions.get(EXTENSION_TIMEOUT);
+            if (timeout != null) {
+                deadline = Math.min(deadline, now + parse(timeout, Long.MAX_VALUE - now));
+            }
+        }
+        if (configTimeoutMillis > 0) {
+            deadline = Math.min(deadline, now + configTimeoutMillis);
+        }
+        message.setDeadline(deadline);
+        return deadline;
+    }
+
+    /**
+     * 读取 {@link #resolve} 记录在消息上的截止时间
+     */
+    public static long of(GatewayMessage message) {
+        return message.getDeadline();
+    }
+
+    /**
+     * 距离截止时间的剩余毫秒数，已过期返回 0
+     */
+    public static long remainingMillis(long deadline) {
+        if (deadline == NONE) {
+            return NONE;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    private static long parse(String value, long defaultValue) {
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed > 0
+                    ? parsed
+                    : 0;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.route.connection.UpstreamCompression;
+
+/**
+ * <p>
+ * 相同请求的标识：bizType + 请求体 + 客户端接受的压缩编码
+ * </p>
+ * 哈希值只用于分桶，相等比较逐字节比较请求体，不会因为哈希冲突把两个不同的请求当成同一个。
+ * 客户端协商过压缩时上游的压缩响应原样转发，接受的编码不同的请求不能共用响应。
+ *
+ * @author 伍磊
+ */
+public final class RequestKey {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+    // 对象头、引用等固定开销的估算值
+    private static final int OVERHEAD_BYTES = 64;
+
+    private final String bizType;
+    private final byte[] body;
+    private final String acceptEncoding;
+    private final int hash;
+
+    private RequestKey(String bizType, byte[] body, String acceptEncoding) {
+        this.bizType = bizType;
+        this.body = body;
+        this.acceptEncoding = acceptEncoding;
+        this.hash = 31 * (31 * bizType.hashCode() + Arrays.hashCode(body))
+                + acceptEncoding.hashCode();
+    }
+
+    public static RequestKey of(GatewayMessage request) {
+        return new RequestKey(request.getBizType(),
+                request.getBody() != null
+                        ? request.getBody()
+                        : EMPTY_BODY,
+                acceptEncodingOf(request));
+    }
+
+    /**
+     * 去掉空白并转为小写，写法不同的相同声明视为同一个
+     */
+    private static String acceptEncodingOf(GatewayMessage request) {
+        String acceptEncoding = UpstreamCompression.clientAcceptEncoding(request);
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return "";
+        }
+        return acceptEncoding.replace(" ", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 估算占用的字节数
+     */
+    public int weight() {
+        return OVERHEAD_BYTES + (bizType.length() + acceptEncoding.length()) * 2 + body.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RequestKey other
+                && hash == other.hash
+                && bizType.equals(other.bizType)
+                && acceptEncoding.equals(other.acceptEncoding)
+                && Arrays.equals(body, other.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import io.netty.buffer.ByteBuf;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 响应的接收方
+ * </p>
+ * 普通响应通过 {@link #onResponse} 一次性交付；流式响应先交付 {@link #onHead}，之后每收到一块数据交付一次
+ * {@link #onChunk}，最后以 {@link #onComplete} 或 {@link #onError} 结束。流式响应由接收方控制读取速度：
+ * 每次交付之后，上游在 {@link Subscription#request()} 被调用之前不再读取。
+ *
+ * @author 伍磊
+ */
+public interface ResponseStream {
+
+    /**
+     * 完整的响应
+     *
+     * @param response 响应消息，消息体的 ByteBuf 由接收方释放
+     */
+    void onResponse(GatewayMessage response);
+
+    /**
+     * 流式响应的响应头，扩展字段中包含状态码和响应头，没有消息体
+     *
+     * @param head         响应头
+     * @param subscription 用于请求下一块数据或者取消
+     */
+    void onHead(GatewayMessage head, Subscription subscription);
+
+    /**
+     * 流式响应的一块数据
+     *
+     * @param chunk 数据块，由接收方释放
+     */
+    void onChunk(ByteBuf chunk);
+
+    /**
+     * 流式响应结束
+     */
+    void onComplete();
+
+    /**
+     * 请求失败，流式响应已经交付过的数据仍然有效
+     *
+     * @param cause 失败原因
+     */
+    void onError(Throwable cause);
+
+    /**
+     * 流式响应的读取控制，可以在任意线程调用
+     */
+    interface Subscription {
+
+        /**
+         * 接收方可以处理下一块数据
+         */
+        void request();
+
+        /**
+         * 不再需要后续数据，关闭上游连接
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * <p>
+ * 可重试的请求
+ * </p>
+ * 请求失败且失败原因允许重试时，换一个没有尝试过的实例重新发送，直到成功、不可重试或者没有可选的实例。
+ * 返回的 future 被取消时，正在进行的请求一起取消，不再重试。
+ *
+ * @author 伍磊
+ */
+final class RetryingCall {
+
+    private final CompletableFuture<GatewayMessage> result = new CompletableFuture<>();
+    private final Function<ServiceInstance, CompletableFuture<GatewayMessage>> sender;
+    private final Predicate<Throwable> retryable;
+    private final BiFunction<Set<ServiceInstance>, Throwable, ServiceInstance> retrySelector;
+    private final int maxRetries;
+    // 以下字段只在请求完成的回调中串行访问
+    private final Set<ServiceInstance> tried = new HashSet<>(4);
+    private int retries;
+
+    /**
+     * @param sender        向指定实例发送请求
+     * @param retryable     失败原因是否允许重试
+     * @param retrySelector 根据失败原因从尝试过的实例之外选择重试的实例，没有可用实例或者预算不足时返回 null
+     * @param maxRetries    最大重试次数
+     */
+    RetryingCall(
+            Function<ServiceInstance, CompletableFuture<GatewayMessage>> sender,
+            Predicate<Throwable> retryable,
+            BiFunction<Set<ServiceInstance>, Throwable, ServiceInstance> retrySelector,
+            int maxRetries) {
+        this.sender = sender;
+        this.retryable = retryable;
+        this.retrySelector = retrySelector;
+        this.maxRetries = maxRetries;
+    }
+
+    CompletableFuture<GatewayMessage> start(ServiceInstance instance) {
+        attempt(instance);
+        return result;
+    }
+
+    private void attempt(ServiceInstance instance) {
+        tried.add(instance);
+        CompletableFuture<GatewayMessage> attempt = sender.apply(instance);
+        result.whenComplete((_, _) -> {
+            if (result.isCancelled()) {
+                attempt.cancel(false);
+            }
+        });
+        attempt.whenComplete(this::onComplete);
+    }
+
+    private void onComplete(GatewayMessage response, Throwable throwable) {
+        if (throwable == null) {
+            if (!result.complete(response)) {
+                response.releaseContent();
+            }
+            return;
+        }
+        if (result.isDone()) {
+            return;
+        }
+        Throwable cause = unwrap(throwable);
+        if (retries < maxRetries && retryable.test(cause)) {
+            ServiceInstance next = retrySelector.apply(tried, cause);
+            if (next != null) {
+                retries++;
+                attempt(next);
+                return;
+            }
+        }
+        result.completeExceptionally(cause);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+}
@@ -37,6 +37,22 @@ public interface RouteService {
      */
     CompletableFuture<GatewayMessage> route(GatewayMessage message);
 
+    /**
+     * 路由并发送消息，响应交付给 {@code stream}。开启了流式响应的 bizType 边收边交付，其余的收到完整响应后交付
+     *
+     * @param message 网关消息
+     * @param stream  响应的接收方
+     */
+    default void stream(GatewayMessage message, ResponseStream stream) {
+        route(message).whenComplete((response, ex) -> {
+            if (ex != null) {
+                stream.onError(ex);
+            } else {
+                stream.onResponse(response);
+            }
+        });
+    }
+
     /**
      * 获取服务注册中心
      *
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <p>
+ * 路由相关的共享定时器
+ * </p>
+ * 所有上游请求的超时都挂在同一个时间轮上，请求完成时取消，定时任务本身只是一个很小的对象。
+ * 时间轮由一个守护线程驱动，回调中只能做轻量的操作。
+ *
+ * @author 伍磊
+ */
+public final class RouteTimer {
+
+    private static final long TICK_MILLIS = 10;
+    private static final int TICKS_PER_WHEEL = 1024;
+
+    private static final Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("gateway-route-timer", true),
+            TICK_MILLIS,
+            TimeUnit.MILLISECONDS,
+            TICKS_PER_WHEEL);
+
+    private RouteTimer() {
+    }
+
+    public static Timer get() {
+        return TIMER;
+    }
+}
@@ -17,6 +17,7 @@ package com.lei.java.gateway.server.route;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import com.lei.java.gateway.common.route.ServiceInstance;
 
@@ -55,6 +56,14 @@ public interface ServiceRegistry {
      */
     Map<String, List<ServiceInstance>> getAllServices();
 
+    /**
+     * 添加实例离开的监听器，实例不再属于任何业务类型时回调，用于清理按实例保存的状态
+     *
+     * @param listener 参数为离开的实例
+     */
+    default void addInstanceRemovedListener(Consumer<ServiceInstance> listener) {
+    }
+
     /**
      * 关闭注册中心，释放资源
      */
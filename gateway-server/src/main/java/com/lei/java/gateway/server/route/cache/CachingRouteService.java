@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.config.RouteConfig;
+import com.lei.java.gateway.server.route.ResponseStream;
+import com.lei.java.gateway.server.route.RouteService;
+import com.lei.java.gateway.server.route.ServiceRegistry;
+import com.lei.java.gateway.server.route.connection.ConnectionManager;
+
+/**
+ * <p>
+ * 带响应缓存的路由服务
+ * </p>
+ * 开启了缓存的 bizType 先查缓存，命中时不再请求上游；未开启缓存的 bizType 直接交给被装饰的路由服务。
+ *
+ * @author 伍磊
+ */
+public class CachingRouteService implements RouteService {
+    private static final Logger logger = LoggerFactory.getLogger(CachingRouteService.class);
+
+    private final RouteService delegate;
+    private final RouteConfig routeConfig;
+    private final ResponseCache responseCache;
+
+    public CachingRouteService(RouteService delegate, RouteConfig routeConfig) {
+        this.delegate = delegate;
+        this.routeConfig = routeConfig;
+        this.responseCache = new ResponseCache(routeConfig.getResponseCacheMaxBytes());
+    }
+
+    @Override
+    public CompletableFuture<GatewayMessage> route(GatewayMessage message) {
+        String bizType = message.getBizType();
+        long ttlMillis = bizType == null
+                ? 0
+                : routeConfig.cacheTtlMillis(bizType);
+        if (ttlMillis <= 0) {
+            return delegate.route(message);
+        }
+
+        GatewayMessage cached = responseCache.get(message);
+        if (cached != null) {
+            logger.debug("Response cache hit, bizType: {}, requestId: {}",
+                    bizType,
+                    message.getRequestId());
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.route(message)
+                .whenComplete((response, throwable) -> {
+                    if (throwable == null && response != null) {
+                        responseCache.put(message, response, ttlMillis);
+                    }
+                });
+    }
+
+    @Override
+    public void stream(GatewayMessage message, ResponseStream stream) {
+        // 开启了缓存的 bizType 需要完整的响应才能缓存，不走流式
+        String bizType = message.getBizType();
+        if (bizType != null && routeConfig.cacheTtlMillis(bizType) > 0) {
+            RouteService.super.stream(message, stream);
+        } else {
+            delegate.stream(message, stream);
+        }
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    @Override
+    public ServiceRegistry getServiceRegistry() {
+        return delegate.getServiceRegistry();
+    }
+
+    @Override
+    public ConnectionManager getConnectionManager() {
+        return delegate.getConnectionManager();
+    }
+}
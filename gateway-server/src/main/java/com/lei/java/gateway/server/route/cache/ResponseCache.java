@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.cache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.route.RequestKey;
+
+/**
+ * <p>
+ * 响应缓存
+ * </p>
+ * 以 {@link RequestKey} 为 key 缓存上游的响应，按占用的字节数限制大小。
+ * 淘汰策略使用 Caffeine 的 W-TinyLFU：新条目先进入一个小的窗口区，之后只有访问频率高于被淘汰者时才能进入主区，
+ * 偶发的一次性请求不会把热点条目挤出去。
+ *
+ * @author 伍磊
+ */
+public class ResponseCache {
+
+    private static final String HTTP_STATUS = "http_status";
+    private static final String HTTP_STATUS_OK = "200";
+    // 对象头、引用等固定开销的估算值
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final Cache<RequestKey, CachedResponse> cache;
+
+    public ResponseCache(long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((RequestKey key, CachedResponse value) -> key.weight() + value.weight())
+                .expireAfter(Expiry.writing((RequestKey _, CachedResponse value) -> Duration
+                        .ofMillis(value.ttlMillis())))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 查找缓存的响应，命中时返回一个新的响应消息，requestId 等字段取自当前请求
+     */
+    public GatewayMessage get(GatewayMessage request) {
+        CachedResponse cached = cache.getIfPresent(RequestKey.of(request));
+        if (cached == null) {
+            return null;
+        }
+        GatewayMessage response = new GatewayMessage();
+        response.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        response.setRequestId(request.getRequestId());
+        response.setClientId(request.getClientId());
+        response.setBizType(request.getBizType());
+        response.setExtensions(new HashMap<>(cached.extensions()));
+        response.setBody(cached.body());
+        return response;
+    }
+
+    /**
+     * 缓存上游的响应。上游通过 Cache-Control 指定的缓存时间优先，没有指定时使用默认缓存时间
+     *
+     * @param request          请求
+     * @param response         上游的响应，只缓存成功的业务响应
+     * @param defaultTtlMillis 默认缓存时间
+     */
+    public void put(GatewayMessage request, GatewayMessage response, long defaultTtlMillis) {
+        if (response.getMsgType() != GatewayMessage.MESSAGE_TYPE_BIZ) {
+            return;
+        }
+        Map<String, String> extensions = response.getExtensions();
+        String status = extensions.get(HTTP_STATUS);
+        if (status != null && !status.equals(HTTP_STATUS_OK)) {
+            return;
+        }
+        long ttlMillis = response.getCacheTtlMillis() >= 0
+                ? response.getCacheTtlMillis()
+                : defaultTtlMillis;
+        if (ttlMillis <= 0) {
+            return;
+        }
+        cache.put(RequestKey.of(request),
+                new CachedResponse(response.getBody(), new HashMap<>(extensions), ttlMillis));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 当前缓存占用的字节数（估算值）
+     */
+    public long weightedSize() {
+        return cache.policy()
+                .eviction()
+                .map(eviction -> eviction.weightedSize()
+                        .orElse(0))
+                .orElse(0L);
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    private record CachedResponse(byte[] body, Map<String, String> extensions, long ttlMillis) {
+
+        int weight() {
+            int weight = ENTRY_OVERHEAD_BYTES + (body != null
+                    ? body.length
+                    : 0);
+            for (Map.Entry<String, String> entry : extensions.entrySet()) {
+                weight += (entry.getKey()
+                        .length()
+                        + entry.getValue()
+                                .length())
+                        * 2;
+            }
+            return weight;
+        }
+    }
+}
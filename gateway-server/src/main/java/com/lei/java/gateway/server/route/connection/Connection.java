@@ -60,10 +60,20 @@ public interface Connection {
     void close();
 
     /**
-     * 处理响应消息
-     *
-     * @param message message
+     * 已发出、还没有完成的请求数
+     */
+    int getPendingCount();
+
+    /**
+     * 一个连接上可以同时处理的请求数，超过之后后来的请求需要排队。HTTP/1.1 的连接按顺序响应，只有 1
+     */
+    default int getMaxConcurrentRequests() {
+        return 1;
+    }
+
+    /**
+     * 最后一次发出请求或者收到响应的时间，毫秒时间戳
      */
-    void handleResponse(GatewayMessage message);
+    long getLastActiveTime();
 
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+/**
+ * <p>
+ * 请求已经写出，但是连接在响应返回之前断开
+ * </p>
+ * 上游可能已经处理了这个请求，只有幂等的请求可以重发。
+ *
+ * @author 伍磊
+ */
+public class ConnectionClosedException extends RuntimeException {
+
+    public ConnectionClosedException(String message) {
+        super(message);
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.lei.java.gateway.server.route.connection;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
 /**
  * 连接配置
  */
@@ -22,15 +26,110 @@ public final class ConnectionConfig {
 
     private static final String ROUTE_SERVICE_CONNECT_TIMEOUT = "ROUTE_SERVICE_CONNECT_TIMEOUT";
     private static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+    private static final String ROUTE_SERVICE_POOL_MIN_SIZE = "ROUTE_SERVICE_POOL_MIN_SIZE";
+    private static final int DEFAULT_POOL_MIN_SIZE = 1;
+    private static final String ROUTE_SERVICE_POOL_MAX_SIZE = "ROUTE_SERVICE_POOL_MAX_SIZE";
+    private static final int DEFAULT_POOL_MAX_SIZE = 4;
+    private static final String ROUTE_SERVICE_POOL_IDLE_TIMEOUT =
+            "ROUTE_SERVICE_POOL_IDLE_TIMEOUT";
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT = 60_000;
+    private static final String ROUTE_SERVICE_RECONNECT_BASE_DELAY =
+            "ROUTE_SERVICE_RECONNECT_BASE_DELAY";
+    private static final long DEFAULT_RECONNECT_BASE_DELAY = 100;
+    private static final String ROUTE_SERVICE_RECONNECT_MAX_DELAY =
+            "ROUTE_SERVICE_RECONNECT_MAX_DELAY";
+    private static final long DEFAULT_RECONNECT_MAX_DELAY = 30_000;
+    private static final String ROUTE_SERVICE_PIPELINING_DEPTH = "ROUTE_SERVICE_PIPELINING_DEPTH";
+    private static final int DEFAULT_PIPELINING_DEPTH = 8;
+    private static final String ROUTE_SERVICE_NATIVE_MAX_CONCURRENT =
+            "ROUTE_SERVICE_NATIVE_MAX_CONCURRENT";
+    private static final int DEFAULT_NATIVE_MAX_CONCURRENT = 128;
+    private static final String ROUTE_SERVICE_MAX_CONTENT_LENGTH =
+            "ROUTE_SERVICE_MAX_CONTENT_LENGTH";
+    private static final int DEFAULT_MAX_CONTENT_LENGTH = 4 * 1024 * 1024;
+    private static final String ROUTE_SERVICE_COMPRESSION = "ROUTE_SERVICE_COMPRESSION";
+    private static final boolean DEFAULT_COMPRESSION = true;
+    private static final String ROUTE_SERVICE_REQUEST_COMPRESSION_MIN_SIZE =
+            "ROUTE_SERVICE_REQUEST_COMPRESSION_MIN_SIZE";
+    private static final int DEFAULT_REQUEST_COMPRESSION_MIN_SIZE = 0;
+    private static final String ROUTE_SERVICE_RESPONSE_HEADERS = "ROUTE_SERVICE_RESPONSE_HEADERS";
+    private static final String DEFAULT_RESPONSE_HEADERS =
+            "content-type,content-encoding,cache-control,etag,last-modified";
+
+    /**
+     * 转发所有响应头
+     */
+    public static final String ALL_HEADERS = "*";
 
     private static final ConnectionConfig INSTANCE = new ConnectionConfig();
 
     private final int connectTimeoutMillis;
+    // 每个上游实例的连接池大小，注册实例时预热 poolMinSize 个连接
+    private final int poolMinSize;
+    private final int poolMaxSize;
+    // 超过 poolMinSize 的连接空闲多久之后关闭
+    private final long poolIdleTimeoutMillis;
+    // 建连失败后的重连间隔，从 base 开始指数增长到 max，并加入随机抖动
+    private final long reconnectBaseDelayMillis;
+    private final long reconnectMaxDelayMillis;
+    // 一个 HTTP/1.1 连接上已写出未响应的请求数上限，1 表示不使用 pipelining
+    private final int pipeliningDepth;
+    // 一个原生协议连接上进行中的请求数超过这个值时，连接池优先新建连接
+    private final int nativeMaxConcurrent;
+    // 上游响应体的最大长度
+    private final int maxContentLength;
+    // 是否接收并解压 HTTP/1.1 上游的压缩响应
+    private final boolean compressionEnabled;
+    // 请求体达到这个字节数时压缩后发给 HTTP/1.1 上游，小于等于 0 表示不压缩
+    private final int requestCompressionMinSize;
+    // 转发给客户端的上游响应头，不区分大小写，包含 * 时转发全部
+    private final Set<String> responseHeaders;
 
     private ConnectionConfig() {
         this.connectTimeoutMillis =
                 Integer.parseInt(System.getProperty(ROUTE_SERVICE_CONNECT_TIMEOUT,
                         String.valueOf(DEFAULT_CONNECT_TIMEOUT)));
+        this.poolMinSize = Integer.parseInt(System.getProperty(ROUTE_SERVICE_POOL_MIN_SIZE,
+                String.valueOf(DEFAULT_POOL_MIN_SIZE)));
+        this.poolMaxSize = Math.max(poolMinSize,
+                Integer.parseInt(System.getProperty(ROUTE_SERVICE_POOL_MAX_SIZE,
+                        String.valueOf(DEFAULT_POOL_MAX_SIZE))));
+        this.poolIdleTimeoutMillis = Long.parseLong(System.getProperty(
+                ROUTE_SERVICE_POOL_IDLE_TIMEOUT,
+                String.valueOf(DEFAULT_POOL_IDLE_TIMEOUT)));
+        this.reconnectBaseDelayMillis = Math.max(1, Long.parseLong(System.getProperty(
+                ROUTE_SERVICE_RECONNECT_BASE_DELAY,
+                String.valueOf(DEFAULT_RECONNECT_BASE_DELAY))));
+        this.reconnectMaxDelayMillis = Math.max(reconnectBaseDelayMillis,
+                Long.parseLong(System.getProperty(ROUTE_SERVICE_RECONNECT_MAX_DELAY,
+                        String.valueOf(DEFAULT_RECONNECT_MAX_DELAY))));
+        this.pipeliningDepth = Math.max(1,
+                Integer.parseInt(System.getProperty(ROUTE_SERVICE_PIPELINING_DEPTH,
+                        String.valueOf(DEFAULT_PIPELINING_DEPTH))));
+        this.nativeMaxConcurrent = Math.max(1,
+                Integer.parseInt(System.getProperty(ROUTE_SERVICE_NATIVE_MAX_CONCURRENT,
+                        String.valueOf(DEFAULT_NATIVE_MAX_CONCURRENT))));
+        this.maxContentLength = Integer.parseInt(System.getProperty(
+                ROUTE_SERVICE_MAX_CONTENT_LENGTH,
+                String.valueOf(DEFAULT_MAX_CONTENT_LENGTH)));
+        this.compressionEnabled = Boolean.parseBoolean(System.getProperty(
+                ROUTE_SERVICE_COMPRESSION,
+                String.valueOf(DEFAULT_COMPRESSION)));
+        this.requestCompressionMinSize = Integer.parseInt(System.getProperty(
+                ROUTE_SERVICE_REQUEST_COMPRESSION_MIN_SIZE,
+                String.valueOf(DEFAULT_REQUEST_COMPRESSION_MIN_SIZE)));
+        this.responseHeaders = parseHeaders(System.getProperty(ROUTE_SERVICE_RESPONSE_HEADERS,
+                DEFAULT_RESPONSE_HEADERS));
+    }
+
+    private static Set<String> parseHeaders(String value) {
+        Set<String> headers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String header : value.split(",")) {
+            if (!header.isBlank()) {
+                headers.add(header.trim());
+            }
+        }
+        return Collections.unmodifiableSet(headers);
     }
 
     public static ConnectionConfig getInstance() {
@@ -40,4 +139,48 @@ public final class ConnectionConfig {
     public int getConnectTimeoutMillis() {
         return connectTimeoutMillis;
     }
-}
\ No newline at end of file
+
+    public int getPoolMinSize() {
+        return poolMinSize;
+    }
+
+    public int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public long getPoolIdleTimeoutMillis() {
+        return poolIdleTimeoutMillis;
+    }
+
+    public long getReconnectBaseDelayMillis() {
+        return reconnectBaseDelayMillis;
+    }
+
+    public long getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    public int getPipeliningDepth() {
+        return pipeliningDepth;
+    }
+
+    public int getNativeMaxConcurrent() {
+        return nativeMaxConcurrent;
+    }
+
+    public int getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public int getRequestCompressionMinSize() {
+        return requestCompressionMinSize;
+    }
+
+    public Set<String> getResponseHeaders() {
+        return responseHeaders;
+    }
+}
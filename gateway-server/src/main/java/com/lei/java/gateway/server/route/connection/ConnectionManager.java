@@ -17,7 +17,9 @@ package com.lei.java.gateway.server.route.connection;
 
 import java.util.concurrent.CompletableFuture;
 
+import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.ResponseStream;
 
 /**
  * <p>
@@ -36,6 +38,59 @@ public interface ConnectionManager {
      */
     CompletableFuture<Connection> getConnection(ServiceInstance instance);
 
+    /**
+     * 向指定服务实例发送请求，响应边收边交付给 {@code stream}。不支持流式的实现收到完整响应后交付
+     *
+     * @param instance 服务实例
+     * @param message  请求消息
+     * @param stream   响应的接收方，没有连接上时收到 {@link RequestNotSentException}
+     */
+    default void stream(ServiceInstance instance, GatewayMessage message, ResponseStream stream) {
+        getConnection(instance).whenComplete((connection, throwable) -> {
+            if (throwable != null) {
+                stream.onError(new RequestNotSentException("Failed to connect to " + instance,
+                        throwable));
+                return;
+            }
+            connection.send(message)
+                    .whenComplete((response, ex) -> {
+                        if (ex != null) {
+                            stream.onError(ex);
+                        } else {
+                            stream.onResponse(response);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 预热到指定服务实例的连接，实例接收流量之前调用
+     *
+     * @param instance 服务实例
+     * @return 预热结束（无论成功与否）时完成
+     */
+    default CompletableFuture<Void> warmUp(ServiceInstance instance) {
+        return getConnection(instance).handle((_, _) -> null);
+    }
+
+    /**
+     * 服务实例当前是否可以接收请求，不可用的实例在后台重连，负载均衡应当跳过
+     *
+     * @param instance 服务实例
+     * @return 没有连接信息时返回 true
+     */
+    default boolean isAvailable(ServiceInstance instance) {
+        return true;
+    }
+
+    /**
+     * 服务实例下线，关闭到它的所有连接并停止重连
+     *
+     * @param instance 服务实例
+     */
+    default void removeInstance(ServiceInstance instance) {
+    }
+
     /**
      * 释放连接
      *
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import io.netty.channel.Channel;
+import io.opentelemetry.api.common.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.metrics.GatewayMetrics;
+import com.lei.java.gateway.server.route.RouteTimer;
+
+import static com.lei.java.gateway.server.metrics.MetricsUtil.UPSTREAM_POOL_SATURATED_COUNTER;
+import static com.lei.java.gateway.server.metrics.MetricsUtil.UPSTREAM_POOL_WAIT_HISTOGRAM;
+
+/**
+ * <p>
+ * 单个上游实例的连接池
+ * </p>
+ * 请求发往待响应请求数最少的连接。所有连接都已经达到各自的并发上限时，如果还没有达到最大连接数，就在后台新建一个连接，
+ * 当前请求仍然使用最空闲的连接，不等待新连接建立；只有池中没有可用连接时才需要等待。
+ * 超过最小连接数的空闲连接由 {@link #evictIdle()} 定期关闭。
+ * <p>
+ * 连接池始终尝试保持最小连接数：{@link #warmUp()} 在实例接收流量之前建好连接，连接断开后立即补充，
+ * 建连失败时按指数退避加随机抖动的间隔在后台持续重试，不会放弃。池中没有可用连接并且最近一次建连失败时，
+ * 实例视为不可用（{@link #isAvailable()}），请求直接失败而不再等待建连，负载均衡跳过这个实例。
+ *
+ * @author 伍磊
+ */
+public class ConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final ServiceInstance instance;
+    private final Function<ServiceInstance, CompletableFuture<Connection>> connector;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long reconnectBaseDelayMillis;
+    private final long reconnectMaxDelayMillis;
+    private final Attributes attributes;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    // 同一时间只有一个后台扩容的连接在建立
+    private final AtomicBoolean growing = new AtomicBoolean();
+    // 正在建立的连接数
+    private final AtomicInteger connecting = new AtomicInteger();
+    // 连续建连失败的次数，成功后清零
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 同一时间只有一个退避重连的任务
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+    private volatile long nextConnectTime;
+    private volatile boolean warming;
+    // 池中没有可用连接时，等待者共享的连接
+    private CompletableFuture<Connection> pendingConnect;
+    private volatile boolean closed;
+
+    public ConnectionPool(
+            ServiceInstance instance,
+            Function<ServiceInstance, CompletableFuture<Connection>> connector,
+            int minSize,
+            int maxSize,
+            long idleTimeoutMillis) {
+        this(instance,
+                connector,
+                minSize,
+                maxSize,
+                idleTimeoutMillis,
+                ConnectionConfig.getInstance()
+                        .getReconnectBaseDelayMillis(),
+                ConnectionConfig.getInstance()
+                        .getReconnectMaxDelayMillis());
+    }
+
+    /**
+     * @param reconnectBaseDelayMillis 第一次失败后的重连间隔，之后每次翻倍
+     * @param reconnectMaxDelayMillis  重连间隔的上限
+     */
+    public ConnectionPool(
+            ServiceInstance instance,
+            Function<ServiceInstance, CompletableFuture<Connection>> connector,
+            int minSize,
+            int maxSize,
+            long idleTimeoutMillis,
+            long reconnectBaseDelayMillis,
+            long reconnectMaxDelayMillis) {
+        this.instance = instance;
+        this.connector = connector;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.reconnectBaseDelayMillis = Math.max(1, reconnectBaseDelayMillis);
+        this.reconnectMaxDelayMillis =
+                Math.max(this.reconnectBaseDelayMillis, reconnectMaxDelayMillis);
+        this.attributes = Attributes.of(GatewayMetrics.UPSTREAM, instance.getServerAddress());
+    }
+
+    /**
+     * 获取待响应请求数最少的连接
+     */
+    public CompletableFuture<Connection> acquire() {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("ConnectionPool is closed"));
+        }
+        Connection best = null;
+        int bestPending = Integer.MAX_VALUE;
+        int activeCount = 0;
+        for (Connection connection : connections) {
+            if (!connection.isActive()) {
+                continue;
+            }
+            activeCount++;
+            int pending = connection.getPendingCount();
+            if (pending < bestPending) {
+                best = connection;
+                bestPending = pending;
+            }
+        }
+
+        if (best == null) {
+            if (inBackoff()) {
+                // 实例不可用，后台重连成功之前请求直接失败，由调用方换一个实例
+                return CompletableFuture.failedFuture(new RequestNotSentException(
+                        instance + " is unavailable, reconnecting"));
+            }
+            return waitForConnection();
+        }
+        if (bestPending >= Math.max(1, best.getMaxConcurrentRequests())) {
+            if (activeCount < maxSize) {
+                grow();
+            } else {
+                UPSTREAM_POOL_SATURATED_COUNTER.add(1, attributes);
+            }
+        }
+        return CompletableFuture.completedFuture(best);
+    }
+
+    /**
+     * 预热：建立最小连接数的连接
+     *
+     * @return 这一轮建连全部结束（无论成功与否）时完成
+     */
+    public CompletableFuture<Void> warmUp() {
+        if (closed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        warming = true;
+        CompletableFuture<Void> done = CompletableFuture.allOf(replenish().stream()
+                .map(future -> future.handle((_, _) -> null))
+                .toArray(CompletableFuture[]::new));
+        return done.whenComplete((_, _) -> warming = false);
+    }
+
+    /**
+     * 实例是否可以接收请求：有可用连接，或者还没有建过连接。
+     * 没有可用连接时，预热中、或者最近一次建连失败之后仍在退避或重连中的实例不可用
+     */
+    public boolean isAvailable() {
+        if (closed) {
+            return false;
+        }
+        for (Connection connection : connections) {
+            if (connection.isActive()) {
+                return true;
+            }
+        }
+        if (warming) {
+            return false;
+        }
+        return consecutiveFailures.get() == 0 || !inBackoff() && connecting.get() == 0;
+    }
+
+    /**
+     * 关闭超过最小连接数的空闲连接，移除已经断开的连接，并补足最小连接数
+     */
+    public void evictIdle() {
+        if (closed) {
+            return;
+        }
+        long idleBefore = System.currentTimeMillis() - idleTimeoutMillis;
+        int activeCount = 0;
+        for (Connection connection : connections) {
+            if (!connection.isActive()) {
+                remove(connection);
+            } else if (activeCount >= minSize
+                    && connection.getPendingCount() == 0
+                    && connection.getLastActiveTime() < idleBefore) {
+                logger.info("Closing idle connection to {}", instance);
+                remove(connection);
+            } else {
+                activeCount++;
+            }
+        }
+        if (activeCount < minSize) {
+            replenish();
+        }
+    }
+
+    public void remove(Connection connection) {
+        if (connections.remove(connection)) {
+            connection.close();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        connections.forEach(Connection::close);
+        connections.clear();
+    }
+
+    public ServiceInstance getServiceInstance() {
+        return instance;
+    }
+
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    private synchronized CompletableFuture<Connection> waitForConnection() {
+        if (pendingConnect != null) {
+            return pendingConnect;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Connection> future = connect();
+        pendingConnect = future;
+        // 建连可能已经完成，回调在当前线程里清空 pendingConnect，所以返回局部变量
+        future.whenComplete((_, _) -> {
+            UPSTREAM_POOL_WAIT_HISTOGRAM.record((System.nanoTime() - start) / 1_000_000.0,
+                    attributes);
+            clearPendingConnect(future);
+        });
+        return future;
+    }
+
+    private synchronized void clearPendingConnect(CompletableFuture<Connection> future) {
+        if (pendingConnect == future) {
+            pendingConnect = null;
+        }
+    }
+
+    private void grow() {
+        if (!inBackoff() && growing.compareAndSet(false, true)) {
+            connect().whenComplete((_, _) -> growing.set(false));
+        }
+    }
+
+    /**
+     * 补足最小连接数，处于退避期间时不建连，由退避结束后的重连任务补充
+     *
+     * @return 这次发起的建连
+     */
+    private List<CompletableFuture<Connection>> replenish() {
+        if (closed || inBackoff()) {
+            return List.of();
+        }
+        int activeCount = 0;
+        for (Connection connection : connections) {
+            if (connection.isActive()) {
+                activeCount++;
+            }
+        }
+        int missing = minSize - activeCount - connecting.get();
+        List<CompletableFuture<Connection>> futures = new ArrayList<>(Math.max(0, missing));
+        for (int i = 0; i < missing; i++) {
+            futures.add(connect());
+        }
+        return futures;
+    }
+
+    private boolean inBackoff() {
+        return consecutiveFailures.get() > 0 && System.currentTimeMillis() < nextConnectTime;
+    }
+
+    private CompletableFuture<Connection> connect() {
+        connecting.incrementAndGet();
+        return connector.apply(instance)
+                .whenComplete((connection, throwable) -> {
+                    connecting.decrementAndGet();
+                    if (throwable != null) {
+                        onConnectFailure(throwable);
+                    } else if (closed) {
+                        connection.close();
+                    } else {
+                        consecutiveFailures.set(0);
+                        connections.add(connection);
+                        watch(connection);
+                    }
+                });
+    }
+
+    /**
+     * 连接断开时移除并立即补充
+     */
+    private void watch(Connection connection) {
+        Channel channel = connection.getChannel();
+        if (channel == null) {
+            return;
+        }
+        channel.closeFuture()
+                .addListener(_ -> {
+                    if (closed || !connections.remove(connection)) {
+                        return;
+                    }
+                    logger.info("Connection to {} lost, replenishing", instance);
+                    replenish();
+                });
+    }
+
+    private void onConnectFailure(Throwable throwable) {
+        int failures = consecutiveFailures.incrementAndGet();
+        long delayMillis = backoffMillis(failures);
+        nextConnectTime = System.currentTimeMillis() + delayMillis;
+        logger.warn("Failed to connect to {} ({} consecutive failures), retrying in {}ms: {}",
+                instance,
+                failures,
+                delayMillis,
+                throwable.getMessage());
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (closed || !reconnectScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayMillis = Math.max(1, nextConnectTime - System.currentTimeMillis());
+        RouteTimer.get()
+                .newTimeout(_ -> {
+                    reconnectScheduled.set(false);
+                    // 期间又有建连失败，退避时间被延长
+                    if (inBackoff()) {
+                        scheduleReconnect();
+                    } else {
+                        replenish();
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 指数退避，取上限的一半加上另一半以内的随机值，避免大量连接同时重连
+     */
+    private long backoffMillis(int failures) {
+        int shift = Math.min(failures - 1, 30);
+        long ceiling = Math.min(reconnectMaxDelayMillis, reconnectBaseDelayMillis << shift);
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current()
+                .nextLong(ceiling - half + 1);
+    }
+}
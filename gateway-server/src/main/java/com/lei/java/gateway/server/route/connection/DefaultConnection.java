@@ -15,62 +15,51 @@
  */
 package com.lei.java.gateway.server.route.connection;
 
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.common.util.ConcurrentLongMap;
+import com.lei.java.gateway.server.route.RequestDeadline;
+import com.lei.java.gateway.server.route.RouteTimer;
 
 /**
  * <p>
  * 默认的连接实现
  * </p>
+ * 连接断开后不重连，由 {@link ConnectionPool} 移除并按退避策略新建连接。
  *
  * @author 伍磊
  */
 public class DefaultConnection implements Connection {
     private static final Logger logger = LoggerFactory.getLogger(DefaultConnection.class);
-
-    public static final int MAX_RETRY_TIMES = 3;
-    public static final int MAX_TOTAL_RETRY_TIMES = 5;
-    private static final long RETRY_INTERVAL_SECONDS = 1;
+    // 每个连接一张表，只有少数线程同时访问，段数取默认值会让大量连接白白占用空段
+    private static final int PENDING_STRIPES = 2;
+    private static final int PENDING_CAPACITY_PER_STRIPE = 16;
 
     private final ServiceInstance serviceInstance;
-    private volatile Channel channel;
-    private final Map<Long, CompletableFuture<GatewayMessage>> pendingMessages;
-    // 针对一个连接的重试次数
-    private final AtomicInteger retryCount;
-    // 针对这个 Connection 的整体的重试次数
-    private final AtomicInteger totalRetryCount;
-    private final Bootstrap bootstrap;
-
-    // 关键：用于区分是主动关闭还是被动断开的标志位
-    private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
-    // 这个标志位用于确保任何时候只有一个重连流程正在进行。
-    private final AtomicBoolean isReconnecting = new AtomicBoolean(false);
-
-    public DefaultConnection(
-            Bootstrap bootstrap,
-            Channel channel,
-            ServiceInstance serviceInstance) {
-        this.bootstrap = bootstrap;
+    private final Channel channel;
+    // correlationId -> 等待响应的请求
+    private final ConcurrentLongMap<CompletableFuture<GatewayMessage>> pendingMessages;
+    // 已发出、还没有完成的请求数，连接池据此选择最空闲的连接
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    public DefaultConnection(Channel channel, ServiceInstance serviceInstance) {
         this.channel = channel;
         this.serviceInstance = serviceInstance;
-        this.pendingMessages = new ConcurrentHashMap<>();
-        this.retryCount = new AtomicInteger(0);
-        this.totalRetryCount = new AtomicInteger(0);
-
-        setupChannel();
+        this.pendingMessages =
+                new ConcurrentLongMap<>(PENDING_STRIPES, PENDING_CAPACITY_PER_STRIPE);
     }
 
     @Override
@@ -78,22 +67,62 @@ public class DefaultConnection implements Connection {
         CompletableFuture<GatewayMessage> completableFuture = new CompletableFuture<>();
         if (!isActive()) {
             completableFuture
-                    .completeExceptionally(new IllegalStateException("Connection is not active"));
+                    .completeExceptionally(new RequestNotSentException("Connection is not active"));
             return completableFuture;
         }
 
-        channel.writeAndFlush(message)
+        long deadline = RequestDeadline.of(message);
+        long remainingMillis = RequestDeadline.remainingMillis(deadline);
+        if (remainingMillis <= 0) {
+            completableFuture.completeExceptionally(
+                    new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED));
+            return completableFuture;
+        }
+
+        // 写出之前登记，响应无论多快到达都能找到对应的请求
+        long correlationId = nextCorrelationId.incrementAndGet();
+        pendingMessages.put(correlationId, completableFuture);
+        pendingCount.incrementAndGet();
+        lastActiveTime = System.currentTimeMillis();
+        // 上游丢弃请求时不会有响应，到期后主动结束，避免请求一直挂在 pendingMessages 中
+        Timeout timeout = deadline == RequestDeadline.NONE
+                ? null
+                : RouteTimer.get()
+                        .newTimeout(_ -> expire(correlationId, completableFuture),
+                                remainingMillis,
+                                TimeUnit.MILLISECONDS);
+        // 完成、超时或者被调用方取消（例如对冲请求落败）时移除待响应条目，之后到达的响应直接丢弃
+        completableFuture.whenComplete((_, _) -> {
+            pendingCount.decrementAndGet();
+            pendingMessages.remove(correlationId, completableFuture);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        });
+
+        channel.writeAndFlush(new UpstreamRequest(correlationId, message))
                 .addListener(future -> {
-                    if (future.isSuccess()) {
-                        pendingMessages.put(message.getRequestId(), completableFuture);
-                    } else {
-                        completableFuture.completeExceptionally(future.cause());
+                    if (!future.isSuccess()) {
+                        completableFuture.completeExceptionally(new RequestNotSentException(
+                                "Failed to write request", future.cause()));
                     }
                 });
 
         return completableFuture;
     }
 
+    private void expire(long correlationId, CompletableFuture<GatewayMessage> future) {
+        if (future.completeExceptionally(
+                new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED))) {
+            logger.warn("Request {} to {} expired before response",
+                    correlationId,
+                    serviceInstance);
+            // 请求可能已经写出，由连接处理器判断是否需要关闭连接
+            channel.pipeline()
+                    .fireUserEventTriggered(new RequestExpired(correlationId));
+        }
+    }
+
     @Override
     public Channel getChannel() {
         return channel;
@@ -101,16 +130,13 @@ public class DefaultConnection implements Connection {
 
     @Override
     public boolean isActive() {
-        return channel != null && channel.isActive();
+        return channel.isActive();
     }
 
     @Override
     public void close() {
-        if (channel != null) {
-            isShuttingDown.set(true);
-            channel.close();
-            clearResource();
-        }
+        channel.close();
+        clearResource();
     }
 
     @Override
@@ -118,96 +144,59 @@ public class DefaultConnection implements Connection {
         return serviceInstance;
     }
 
-    public void handleResponse(GatewayMessage response) {
-        CompletableFuture<GatewayMessage> future = pendingMessages.remove(response.getRequestId());
-        if (future != null) {
-            future.complete(response);
-        }
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
     }
 
-    private void setupChannel() {
-        // 处理连接关闭
-        channel.closeFuture()
-                .addListener(future -> {
-                    // 非手动关闭再重连
-                    if (!isShuttingDown.get()) {
-                        // 只有当 isReconnecting 标志位从 false 成功变为 true 时，才执行重连。
-                        // 这确保了只有一个线程能够启动重连流程。
-                        if (isReconnecting.compareAndSet(false, true)) {
-                            logger.info("""
-                                    [{}]Connection lost.\
-                                    Acquiring reconnect lock\
-                                    and starting reconnection process for {}""",
-                                    this.hashCode(),
-                                    serviceInstance);
-                            scheduleReconnect();
-                        } else {
-                            logger.info("""
-                                    Connection lost,
-                                    but another reconnection process is already running for {}
-                                    """, serviceInstance);
-                        }
-                    }
-                });
+    @Override
+    public long getLastActiveTime() {
+        return lastActiveTime;
     }
 
-    private void scheduleReconnect() {
-        int currentRetry = retryCount.get();
-        int totalRetry = totalRetryCount.get();
-        if (currentRetry >= MAX_RETRY_TIMES || totalRetry >= MAX_TOTAL_RETRY_TIMES) {
-            // 重连失败，清理资源
-            logger.warn("Max retry times (currentRetry={}, totalRetry={}) reached for {}",
-                    currentRetry,
-                    totalRetry,
-                    serviceInstance);
-            clearResource();
-            // 放弃重连时，释放锁
-            isReconnecting.set(false);
-            return;
+    /**
+     * 处理响应
+     *
+     * @param correlationId 请求写出时分配的编号，见 {@link UpstreamRequest}
+     * @param response      响应消息
+     */
+    public void handleResponse(long correlationId, GatewayMessage response) {
+        lastActiveTime = System.currentTimeMillis();
+        CompletableFuture<GatewayMessage> future = pendingMessages.remove(correlationId);
+        // 请求已经超时或者被取消，响应不会再写出
+        if (future == null || !future.complete(response)) {
+            response.releaseContent();
+        }
+    }
+
+    /**
+     * 已写出的请求不会再有响应
+     */
+    void handleFailure(long correlationId, Throwable cause) {
+        CompletableFuture<GatewayMessage> future = pendingMessages.remove(correlationId);
+        if (future != null) {
+            future.completeExceptionally(cause);
         }
+    }
 
-        currentRetry = retryCount.incrementAndGet();
-        totalRetry = totalRetryCount.incrementAndGet();
-
-        logger.info("Scheduling reconnection for {}, attempt {}/{}, totalAttempt {}/{}",
-                serviceInstance,
-                currentRetry,
-                MAX_RETRY_TIMES,
-                totalRetry,
-                MAX_TOTAL_RETRY_TIMES);
-
-        channel.eventLoop()
-                .schedule(() -> {
-                    bootstrap.connect(serviceInstance.getHost(), serviceInstance.getPort())
-                            .addListener((ChannelFutureListener) future -> {
-                                if (future.isSuccess()) {
-                                    logger.info("Successfully reconnected to {}", serviceInstance);
-                                    channel = future.channel();
-                                    setupChannel();
-                                    retryCount.set(0);
-                                    isReconnecting.set(false);
-                                } else {
-                                    logger.warn("Failed to reconnect to {}: {}",
-                                            serviceInstance,
-                                            future.cause()
-                                                    .getMessage());
-                                    scheduleReconnect();
-                                }
-                            });
-                }, RETRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    /**
+     * 请求是否还在等待响应，已经超时或者被取消的请求返回 false
+     */
+    boolean isPending(long correlationId) {
+        return pendingMessages.containsKey(correlationId);
     }
 
     private void clearResource() {
-        pendingMessages.forEach((reqId, completeFuture) -> completeFuture
-                .completeExceptionally(new RuntimeException("Connection closed")));
+        pendingMessages.forEach((_, completeFuture) -> completeFuture
+                .completeExceptionally(new ConnectionClosedException("Connection closed")));
         pendingMessages.clear();
     }
 
-    public AtomicInteger getRetryCount() {
-        return retryCount;
-    }
-
-    public AtomicInteger getTotalRetryCount() {
-        return totalRetryCount;
+    /**
+     * 请求在收到响应之前超时，在 pipeline 中作为用户事件传递
+     *
+     * @param correlationId 超时请求的编号
+     */
+    record RequestExpired(long correlationId) {
     }
 }
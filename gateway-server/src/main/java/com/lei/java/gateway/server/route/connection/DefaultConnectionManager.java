@@ -15,14 +15,17 @@
  */
 package com.lei.java.gateway.server.route.connection;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
@@ -30,34 +33,47 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.MultiThreadIoEventLoopGroup;
 import io.netty.channel.nio.NioIoHandler;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.ResponseStream;
 
 /**
  * <p>
  * 默认的连接管理器
  * </p>
+ * 每个上游实例对应一个 {@link ConnectionPool}，连接池的大小和空闲时间见 {@link ConnectionConfig}，
+ * 连接方式见 {@link UpstreamTransport}。
  *
  * @author 伍磊
  */
 public class DefaultConnectionManager implements ConnectionManager {
     private static final Logger logger = LoggerFactory.getLogger(DefaultConnectionManager.class);
 
-    private final Map<ServiceInstance, Connection> connections;
-    // 一个静态的、线程安全的 Map，用于缓存正在进行的连接尝试。
-    private final Map<ServiceInstance, CompletableFuture<Connection>> pendingConnections;
+    private final Map<ServiceInstance, ConnectionPool> pools;
+    private final Map<ServiceInstance, StreamChannelPool> streamPools;
     private final EventLoopGroup workerGroup;
     private final Bootstrap bootstrap;
+    private final Bootstrap h2cBootstrap;
+    private final Bootstrap nativeBootstrap;
+    private final Bootstrap streamBootstrap;
     private volatile boolean closed;
     private final ThreadFactory createConnectionFactory;
+    private final ConnectionConfig config;
+    private final UpstreamCompression compression;
+    private final ScheduledFuture<?> evictionTask;
 
     public DefaultConnectionManager() {
-        this.connections = new ConcurrentHashMap<>();
-        this.pendingConnections = new ConcurrentHashMap<>();
+        this.pools = new ConcurrentHashMap<>();
+        this.streamPools = new ConcurrentHashMap<>();
+        this.config = ConnectionConfig.getInstance();
+        this.compression = UpstreamCompression.of(config);
         this.workerGroup = new MultiThreadIoEventLoopGroup(
                 Runtime.getRuntime()
                         .availableProcessors() * 2,
@@ -77,14 +93,50 @@ public class DefaultConnectionManager implements ConnectionManager {
                 .option(ChannelOption.SO_KEEPALIVE, true)
                 // 连接超时时间
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getConnectTimeoutMillis())
-                .handler(new ChannelInitializer<NioSocketChannel>() {
+                .handler(new ChannelInitializer<Channel>() {
                     @Override
-                    protected void initChannel(NioSocketChannel ch) {
+                    protected void initChannel(Channel ch) {
                         ChannelPipeline pipeline = ch.pipeline();
                         pipeline.addLast(new HttpClientCodec());
-                        pipeline.addLast(new HttpObjectAggregator(65536));
+                        pipeline.addLast(new HttpObjectAggregator(config.getMaxContentLength()));
                     }
                 });
+        this.h2cBootstrap = bootstrap.clone()
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        H2cConnection.initPipeline(ch.pipeline());
+                    }
+                });
+        this.nativeBootstrap = bootstrap.clone()
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        NativeConnection.initPipeline(ch.pipeline());
+                    }
+                });
+        // 流式响应的连接不聚合响应体，读取由接收方驱动
+        this.streamBootstrap = bootstrap.clone()
+                .option(ChannelOption.AUTO_READ, false)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline()
+                                .addLast(new HttpClientCodec());
+                    }
+                });
+
+        long evictionIntervalMillis = Math.max(10, config.getPoolIdleTimeoutMillis() / 2);
+        this.evictionTask = workerGroup.next()
+                .scheduleWithFixedDelay(() -> {
+                    pools.values()
+                            .forEach(ConnectionPool::evictIdle);
+                    streamPools.values()
+                            .forEach(StreamChannelPool::evictIdle);
+                },
+                        evictionIntervalMillis,
+                        evictionIntervalMillis,
+                        TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -95,48 +147,204 @@ public class DefaultConnectionManager implements ConnectionManager {
             return future;
         }
 
-        Connection connection = connections.get(instance);
-        if (connection != null && connection.isActive()) {
-            return CompletableFuture.completedFuture(connection);
+        return poolOf(instance).acquire();
+    }
+
+    @Override
+    public CompletableFuture<Void> warmUp(ServiceInstance instance) {
+        if (closed) {
+            return CompletableFuture.completedFuture(null);
         }
+        return poolOf(instance).warmUp();
+    }
 
-        return createConnection(instance);
+    @Override
+    public boolean isAvailable(ServiceInstance instance) {
+        ConnectionPool pool = pools.get(instance);
+        return pool == null || pool.isAvailable();
     }
 
-    private CompletableFuture<Connection> createConnection(ServiceInstance instance) {
-        // 使用 computeIfAbsent 实现原子性的“检查并创建”。
-        // 这个方法会保证对于同一个 instance，内部的 lambda 表达式只会被执行一次。
-        return pendingConnections.computeIfAbsent(instance, key -> {
+    @Override
+    public void removeInstance(ServiceInstance instance) {
+        ConnectionPool pool = pools.remove(instance);
+        if (pool != null) {
+            pool.close();
+        }
+        StreamChannelPool streamPool = streamPools.remove(instance);
+        if (streamPool != null) {
+            streamPool.close();
+        }
+    }
 
-            // --- 这部分代码块是线程安全的，只有第一个线程会进入 ---
+    /**
+     * HTTP/1.1 上游的流式请求独占一个连接，不占用连接池中的连接。响应完整结束后连接放回
+     * {@link StreamChannelPool}，之后的流式请求优先复用，没有空闲连接时才新建；其他协议收到完整响应后交付
+     */
+    @Override
+    public void stream(ServiceInstance instance, GatewayMessage message, ResponseStream stream) {
+        if (closed) {
+            stream.onError(new IllegalStateException("ConnectionManager is closed"));
+            return;
+        }
+        if (UpstreamProtocol.of(instance) != UpstreamProtocol.HTTP1) {
+            ConnectionManager.super.stream(instance, message, stream);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        FullHttpRequest request =
+                compression.apply(HttpProtocolConverter.toHttpRequest(message));
+        StreamChannelPool streamPool = streamPoolOf(instance);
+        Channel idle = streamPool.poll();
+        if (idle != null) {
+            startStream(idle, streamPool, instance, message, request, stream, startNanos);
+            return;
+        }
+        UpstreamTransport.connect(streamBootstrap, instance)
+                .addListener((ChannelFutureListener) f -> {
+                    if (!f.isSuccess()) {
+                        request.release();
+                        stream.onError(new RequestNotSentException(
+                                "Failed to connect to " + instance, f.cause()));
+                        return;
+                    }
+                    startStream(f.channel(),
+                            streamPool,
+                            instance,
+                            message,
+                            request,
+                            stream,
+                            startNanos);
+                });
+    }
 
-            logger.info("Creating new connection for {}", key);
-            CompletableFuture<Connection> future = new CompletableFuture<>();
+    private void startStream(
+            Channel channel,
+            StreamChannelPool streamPool,
+            ServiceInstance instance,
+            GatewayMessage message,
+            FullHttpRequest request,
+            ResponseStream stream,
+            long startNanos) {
+        ChannelHandler decompressor = compression.isEnabled()
+                ? compression.newDecompressor(
+                        encoding -> UpstreamCompression.clientAccepts(message, encoding))
+                : null;
+        StreamingResponseHandler handler = new StreamingResponseHandler(message,
+                stream,
+                instance,
+                config.getResponseHeaders(),
+                startNanos,
+                reusable -> {
+                    if (decompressor != null) {
+                        reusable.pipeline()
+                                .remove(decompressor);
+                    }
+                    streamPool.offer(reusable);
+                });
+        if (decompressor != null) {
+            channel.pipeline()
+                    .addLast(decompressor);
+        }
+        channel.pipeline()
+                .addLast(handler);
+        channel.writeAndFlush(request)
+                .addListener((ChannelFutureListener) written -> {
+                    if (written.isSuccess()) {
+                        channel.read();
+                    } else {
+                        handler.fail(new RequestNotSentException(
+                                "Failed to send request to " + instance,
+                                written.cause()));
+                    }
+                });
+    }
+
+    private StreamChannelPool streamPoolOf(ServiceInstance instance) {
+        return streamPools.computeIfAbsent(instance,
+                _ -> new StreamChannelPool(config.getPoolMaxSize(),
+                        config.getPoolIdleTimeoutMillis()));
+    }
+
+    private ConnectionPool poolOf(ServiceInstance instance) {
+        return pools.computeIfAbsent(instance,
+                key -> new ConnectionPool(key,
+                        this::createConnection,
+                        config.getPoolMinSize(),
+                        config.getPoolMaxSize(),
+                        config.getPoolIdleTimeoutMillis()));
+    }
 
-            createConnectionFactory.newThread(() -> {
-                bootstrap.connect(key.getHost(), key.getPort())
-                        .addListener((ChannelFutureListener) f -> {
-                            if (f.isSuccess()) {
-                                Channel channel = f.channel();
-                                Connection connection =
-                                        new DefaultConnection(bootstrap, channel, key);
-                                // 添加 HTTP 协议转换处理器
-                                channel.pipeline()
-                                        .addLast(new HttpConnectionHandler(connection));
-                                connections.put(key, connection);
-                                future.complete(connection);
-                            } else {
-                                future.completeExceptionally(f.cause());
+    private CompletableFuture<Connection> createConnection(ServiceInstance instance) {
+        switch (UpstreamProtocol.of(instance)) {
+            case H2C:
+                return createH2cConnection(instance);
+            case NATIVE:
+                return createNativeConnection(instance);
+            default:
+                break;
+        }
+        logger.info("Creating new connection for {}", instance);
+        CompletableFuture<Connection> future = new CompletableFuture<>();
+
+        createConnectionFactory.newThread(() -> {
+            UpstreamTransport.connect(bootstrap, instance)
+                    .addListener((ChannelFutureListener) f -> {
+                        if (f.isSuccess()) {
+                            Channel channel = f.channel();
+                            DefaultConnection connection =
+                                    new DefaultConnection(channel, instance);
+                            HttpConnectionHandler handler = new HttpConnectionHandler(connection,
+                                    config.getPipeliningDepth(),
+                                    compression);
+                            ChannelPipeline pipeline = channel.pipeline();
+                            // 在聚合之前解压，响应体上限按解压后的大小计算
+                            if (compression.isEnabled()) {
+                                pipeline.addBefore(pipeline.context(HttpObjectAggregator.class)
+                                        .name(),
+                                        null,
+                                        compression.newDecompressor(handler::acceptsEncoding));
                             }
+                            // 添加 HTTP 协议转换处理器
+                            pipeline.addLast(handler);
+                            future.complete(connection);
+                        } else {
+                            future.completeExceptionally(f.cause());
+                        }
+                    });
+        })
+                .start();
 
-                            // 无论成功还是失败，都要从 map 中移除。 这样，下一次调用 createConnection 时就可以发起新的连接尝试。
-                            pendingConnections.remove(key, future);
-                        });
-            })
-                    .start();
+        return future;
+    }
 
-            return future;
-        });
+    private CompletableFuture<Connection> createH2cConnection(ServiceInstance instance) {
+        logger.info("Creating new h2c connection for {}", instance);
+        CompletableFuture<Connection> future = new CompletableFuture<>();
+        UpstreamTransport.connect(h2cBootstrap, instance)
+                .addListener((ChannelFutureListener) f -> {
+                    if (f.isSuccess()) {
+                        future.complete(new H2cConnection(f.channel(), instance));
+                    } else {
+                        future.completeExceptionally(f.cause());
+                    }
+                });
+        return future;
+    }
+
+    private CompletableFuture<Connection> createNativeConnection(ServiceInstance instance) {
+        logger.info("Creating new native connection for {}", instance);
+        CompletableFuture<Connection> future = new CompletableFuture<>();
+        UpstreamTransport.connect(nativeBootstrap, instance)
+                .addListener((ChannelFutureListener) f -> {
+                    if (f.isSuccess()) {
+                        future.complete(new NativeConnection(f.channel(),
+                                instance,
+                                config.getNativeMaxConcurrent()));
+                    } else {
+                        future.completeExceptionally(f.cause());
+                    }
+                });
+        return future;
     }
 
     @Override
@@ -149,18 +357,32 @@ public class DefaultConnectionManager implements ConnectionManager {
     @Override
     public void removeConnection(Connection connection) {
         if (connection != null) {
-            connections.remove(connection.getServiceInstance());
+            ConnectionPool pool = pools.get(connection.getServiceInstance());
+            if (pool != null) {
+                pool.remove(connection);
+            }
             connection.close();
         }
     }
 
+    /**
+     * 所有上游实例的连接池
+     */
+    public Collection<ConnectionPool> getPools() {
+        return pools.values();
+    }
+
     @Override
     public void close() {
         if (!closed) {
             closed = true;
-            connections.values()
-                    .forEach(Connection::close);
-            connections.clear();
+            evictionTask.cancel(false);
+            pools.values()
+                    .forEach(ConnectionPool::close);
+            pools.clear();
+            streamPools.values()
+                    .forEach(StreamChannelPool::close);
+            streamPools.clear();
             workerGroup.shutdownGracefully();
         }
     }
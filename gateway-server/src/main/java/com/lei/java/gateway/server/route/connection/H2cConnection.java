@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.RequestDeadline;
+import com.lei.java.gateway.server.route.RouteTimer;
+
+/**
+ * <p>
+ * HTTP/2 连接
+ * </p>
+ * 明文 HTTP/2（h2c prior knowledge），每个请求占用一个 stream，响应在各自的 stream 上返回，
+ * 不需要像 HTTP/1.1 那样按顺序匹配，一个慢请求不会阻塞其他请求。
+ * 流量控制由 {@link Http2MultiplexHandler} 负责：stream 的发送窗口用完时写入会等待，读取的数据交给上层后归还接收窗口。
+ * 连接断开后不重连，由连接池移除并新建连接。
+ *
+ * @author 伍磊
+ */
+public class H2cConnection implements Connection {
+    private static final Logger logger = LoggerFactory.getLogger(H2cConnection.class);
+
+    private final Channel channel;
+    private final ServiceInstance serviceInstance;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    /**
+     * @param channel 已经通过 {@link #initPipeline(ChannelPipeline)} 初始化的连接
+     */
+    public H2cConnection(Channel channel, ServiceInstance serviceInstance) {
+        this.channel = channel;
+        this.serviceInstance = serviceInstance;
+    }
+
+    /**
+     * 初始化 HTTP/2 连接的 pipeline。连接建立后 {@link Http2FrameCodec} 直接发送连接前言，不经过 Upgrade
+     */
+    public static void initPipeline(ChannelPipeline pipeline) {
+        pipeline.addLast(Http2FrameCodecBuilder.forClient()
+                .build());
+        // 上游不会主动创建 stream
+        pipeline.addLast(new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+    }
+
+    @Override
+    public CompletableFuture<GatewayMessage> send(GatewayMessage message) {
+        CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+        if (!isActive()) {
+            future.completeExceptionally(new RequestNotSentException("Connection is not active"));
+            return future;
+        }
+
+        long deadline = RequestDeadline.of(message);
+        if (deadline != RequestDeadline.NONE) {
+            long remainingMillis = RequestDeadline.remainingMillis(deadline);
+            if (remainingMillis <= 0) {
+                future.completeExceptionally(
+                        new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED));
+                return future;
+            }
+            Timeout timeout = RouteTimer.get()
+                    .newTimeout(_ -> future.completeExceptionally(
+                            new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED)),
+                            remainingMillis,
+                            TimeUnit.MILLISECONDS);
+            future.whenComplete((_, _) -> timeout.cancel());
+        }
+
+        pendingCount.incrementAndGet();
+        lastActiveTime = System.currentTimeMillis();
+        future.whenComplete((_, _) -> {
+            pendingCount.decrementAndGet();
+            lastActiveTime = System.currentTimeMillis();
+        });
+
+        new Http2StreamChannelBootstrap(channel).handler(new StreamInitializer(message, future))
+                .open()
+                .addListener(f -> {
+                    if (!f.isSuccess()) {
+                        // 例如超过了上游允许的最大并发 stream 数
+                        future.completeExceptionally(new RequestNotSentException(
+                                "Failed to open stream", f.cause()));
+                        return;
+                    }
+                    Http2StreamChannel stream = (Http2StreamChannel) f.getNow();
+                    // 完成、超时或者被取消时关闭 stream，未结束的 stream 会发送 RST_STREAM
+                    future.whenComplete((_, _) -> stream.close());
+                    FullHttpRequest request = HttpProtocolConverter.toHttpRequest(message);
+                    request.headers()
+                            .set(HttpHeaderNames.HOST, serviceInstance.getServerAddress());
+                    stream.writeAndFlush(request)
+                            .addListener(w -> {
+                                if (!w.isSuccess()) {
+                                    future.completeExceptionally(new RequestNotSentException(
+                                            "Failed to write request", w.cause()));
+                                }
+                            });
+                });
+        return future;
+    }
+
+    @Override
+    public Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public ServiceInstance getServiceInstance() {
+        return serviceInstance;
+    }
+
+    @Override
+    public boolean isActive() {
+        return channel.isActive();
+    }
+
+    @Override
+    public void close() {
+        // 进行中的 stream 随之关闭，对应的请求以 ConnectionClosedException 失败
+        channel.close();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 上游允许的最大并发 stream 数
+     */
+    @Override
+    public int getMaxConcurrentRequests() {
+        Http2FrameCodec codec = channel.pipeline()
+                .get(Http2FrameCodec.class);
+        if (codec == null) {
+            return 1;
+        }
+        return codec.connection()
+                .local()
+                .maxActiveStreams();
+    }
+
+    /**
+     * 初始化单个请求的 stream：HTTP/2 帧和 HTTP/1.1 对象互相转换后复用 {@link HttpProtocolConverter}
+     */
+    private static final class StreamInitializer extends ChannelInitializer<Http2StreamChannel> {
+        private final GatewayMessage request;
+        private final CompletableFuture<GatewayMessage> future;
+
+        private StreamInitializer(
+                GatewayMessage request,
+                CompletableFuture<GatewayMessage> future) {
+            this.request = request;
+            this.future = future;
+        }
+
+        @Override
+        protected void initChannel(Http2StreamChannel ch) {
+            ch.pipeline()
+                    .addLast(new Http2StreamFrameToHttpObjectCodec(false));
+            ch.pipeline()
+                    .addLast(new HttpObjectAggregator(ConnectionConfig.getInstance()
+                            .getMaxContentLength()));
+            ch.pipeline()
+                    .addLast(new StreamHandler(request, future));
+        }
+    }
+
+    private static final class StreamHandler
+            extends SimpleChannelInboundHandler<FullHttpResponse> {
+        private final GatewayMessage request;
+        private final CompletableFuture<GatewayMessage> future;
+
+        private StreamHandler(
+                GatewayMessage request,
+                CompletableFuture<GatewayMessage> future) {
+            this.request = request;
+            this.future = future;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+            GatewayMessage message = HttpProtocolConverter.toGatewayMessage(response, request);
+            if (!future.complete(message)) {
+                message.releaseContent();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            // stream 被重置或者连接断开
+            future.completeExceptionally(new ConnectionClosedException("Stream closed"));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Stream {} failed, requestId: {}",
+                    ctx.channel(),
+                    request.getRequestId(),
+                    cause);
+            future.completeExceptionally(cause);
+            ctx.close();
+        }
+    }
+}
@@ -15,10 +15,11 @@
  */
 package com.lei.java.gateway.server.route.connection;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayDeque;
-import java.util.concurrent.ThreadFactory;
 
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -31,70 +32,154 @@ import com.lei.java.gateway.common.protocol.GatewayMessage;
 
 /**
  * HTTP 连接处理器 负责 GatewayMessage 和 HTTP 消息的转换
+ * <p>
+ * 转换和响应匹配都在 Channel 的 EventLoop 中完成。HTTP/1.1 的响应按请求顺序返回，请求写出之前先进入
+ * 队列，收到响应时取出队首即为对应的请求。已写出未响应的请求数不超过 {@code pipeliningDepth}，超出的请求
+ * 在这里排队，收到响应腾出位置后再写出。
  */
 public class HttpConnectionHandler extends ChannelDuplexHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpConnectionHandler.class);
 
-    private final Connection connection;
-    private final ArrayDeque<GatewayMessage> requests;
-    private final ThreadFactory httpHandlerFactory;
+    private final DefaultConnection connection;
+    private final int pipeliningDepth;
+    private final UpstreamCompression compression;
+    // 以下字段只在 EventLoop 中访问
+    private final ArrayDeque<UpstreamRequest> inFlight = new ArrayDeque<>();
+    private final ArrayDeque<QueuedWrite> queued = new ArrayDeque<>();
 
-    public HttpConnectionHandler(Connection connection) {
+    public HttpConnectionHandler(DefaultConnection connection, int pipeliningDepth) {
+        this(connection, pipeliningDepth, UpstreamCompression.DISABLED);
+    }
+
+    public HttpConnectionHandler(
+            DefaultConnection connection,
+            int pipeliningDepth,
+            UpstreamCompression compression) {
+        if (pipeliningDepth < 1) {
+            throw new IllegalArgumentException("pipeliningDepth must be positive");
+        }
         this.connection = connection;
-        this.requests = new ArrayDeque<>();
-        this.httpHandlerFactory = Thread.ofVirtual()
-                .name("upstream-http-handler-", 0)
-                .uncaughtExceptionHandler((t, e) -> logger.error("Uncaught exception", e))
-                .factory();
+        this.pipeliningDepth = pipeliningDepth;
+        this.compression = compression;
+    }
+
+    /**
+     * 当前正在接收的响应对应的客户端是否接受某个压缩编码，只在 EventLoop 中调用。
+     * 响应按请求顺序返回，已写出队列的队首就是当前响应对应的请求
+     */
+    public boolean acceptsEncoding(String encoding) {
+        UpstreamRequest request = inFlight.peek();
+        return request != null && UpstreamCompression.clientAccepts(request.message(), encoding);
     }
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
-
-        if (!(msg instanceof GatewayMessage)) {
-            logger.debug("[{}] Forwarding non-GatewayMessage directly.",
+        if (!(msg instanceof UpstreamRequest request)) {
+            logger.debug("[{}] Forwarding non-UpstreamRequest directly.",
                     ctx.channel()
                             .id());
             ctx.write(msg, promise);
             return;
         }
-
-        httpHandlerFactory.newThread(() -> {
-            GatewayMessage gatewayMessage = (GatewayMessage) msg;
-            FullHttpRequest httpRequest = HttpProtocolConverter.toHttpRequest(gatewayMessage);
-            // 转换为 HTTP 请求并发送
-            ctx.writeAndFlush(httpRequest, promise)
-                    .addListener(future -> {
-                        if (future.isSuccess()) {
-                            requests.add(gatewayMessage);
-                        }
-                    });
-        })
-                .start();
-
+        if (inFlight.size() < pipeliningDepth) {
+            dispatch(ctx, request, promise);
+        } else {
+            queued.add(new QueuedWrite(request, promise));
+        }
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        httpHandlerFactory.newThread(() -> {
-            try {
-                if (msg instanceof FullHttpResponse) {
-                    FullHttpResponse response = (FullHttpResponse) msg;
-                    // 获取原始请求
-                    GatewayMessage request = requests.poll();
-                    if (request != null) {
-                        // 转换为 GatewayMessage 并处理
-                        GatewayMessage gatewayMessage =
-                                HttpProtocolConverter.toGatewayMessage(response, request);
-                        connection.handleResponse(gatewayMessage);
-                    }
+        try {
+            if (msg instanceof FullHttpResponse response) {
+                UpstreamRequest request = inFlight.poll();
+                if (request == null) {
+                    logger.warn("[{}] Unexpected response without request: {}",
+                            ctx.channel()
+                                    .id(),
+                            response.status());
+                } else {
+                    GatewayMessage gatewayMessage =
+                            HttpProtocolConverter.toGatewayMessage(response, request.message());
+                    connection.handleResponse(request.correlationId(), gatewayMessage);
                 }
-            } finally {
-                ReferenceCountUtil.release(msg);
             }
-        })
-                .start();
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+        drainQueued(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof DefaultConnection.RequestExpired expired)) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+        // 已写出的请求超时后仍占着队列中的位置，上游一直不响应时之后的响应都会被它挡住。
+        // 关闭连接让其余已写出的请求立即失败，连接池也不会再选中这个连接
+        for (UpstreamRequest request : inFlight) {
+            if (request.correlationId() == expired.correlationId()) {
+                logger.warn("[{}] Closing connection, written request {} expired",
+                        ctx.channel()
+                                .id(),
+                        expired.correlationId());
+                ctx.close();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 已写出的请求不会再有响应，排队的请求还没有写出
+        UpstreamRequest request;
+        while ((request = inFlight.poll()) != null) {
+            connection.handleFailure(request.correlationId(),
+                    new ConnectionClosedException("Connection closed"));
+        }
+        ClosedChannelException cause = new ClosedChannelException();
+        QueuedWrite write;
+        while ((write = queued.poll()) != null) {
+            write.promise.tryFailure(cause);
+        }
+        super.channelInactive(ctx);
+    }
+
+    private void dispatch(ChannelHandlerContext ctx, UpstreamRequest request,
+            ChannelPromise promise) {
+        FullHttpRequest httpRequest;
+        try {
+            httpRequest = compression.apply(
+                    HttpProtocolConverter.toHttpRequest(request.message()));
+        } catch (RuntimeException e) {
+            promise.tryFailure(e);
+            return;
+        }
+        inFlight.add(request);
+        // 写出失败时无法确定上游收到了多少，之后的响应也无法再和请求对应，直接关闭连接
+        ctx.write(httpRequest, promise)
+                .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private void drainQueued(ChannelHandlerContext ctx) {
+        boolean written = false;
+        while (inFlight.size() < pipeliningDepth && !queued.isEmpty()) {
+            QueuedWrite write = queued.poll();
+            // 排队期间已经超时或者被取消的请求不再发出
+            if (connection.isPending(write.request.correlationId())) {
+                dispatch(ctx, write.request, write.promise);
+                written = true;
+            } else {
+                write.promise.trySuccess();
+            }
+        }
+        if (written) {
+            ctx.flush();
+        }
     }
 
-}
\ No newline at end of file
+    private record QueuedWrite(UpstreamRequest request, ChannelPromise promise) {
+    }
+}
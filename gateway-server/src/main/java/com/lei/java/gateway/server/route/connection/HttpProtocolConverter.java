@@ -15,7 +15,9 @@
  */
 package com.lei.java.gateway.server.route.connection;
 
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -26,9 +28,13 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpVersion;
 
 import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.route.RequestDeadline;
+
+import static com.lei.java.gateway.common.constants.GatewayConstant.EXTENSION_TIMEOUT;
 
 /**
  * HTTP 协议转换器
@@ -37,6 +43,8 @@ public class HttpProtocolConverter {
 
     private static final String HEADER_REQUEST_ID = "Request-Id";
     private static final String HEADER_CLIENT_ID = "X-Client-Id";
+    private static final String MAX_AGE = "max-age";
+    private static final String S_MAXAGE = "s-maxage";
 
     /**
      * 将 GatewayMessage 转换为 HTTP 请求
@@ -72,15 +80,57 @@ public class HttpProtocolConverter {
             }
         }
 
+        // 告诉上游还剩多少时间，上游可以据此放弃已经没有意义的处理
+        long deadline = RequestDeadline.of(message);
+        if (deadline != RequestDeadline.NONE) {
+            headers.set(EXTENSION_TIMEOUT, RequestDeadline.remainingMillis(deadline));
+        }
+
         return request;
     }
 
     /**
-     * 将 HTTP 响应转换为 GatewayMessage
+     * 将 HTTP 响应转换为 GatewayMessage，响应头按 {@link ConnectionConfig#getResponseHeaders()} 过滤
      */
     public static GatewayMessage toGatewayMessage(
             FullHttpResponse response,
             GatewayMessage request) {
+        return toGatewayMessage(response,
+                request,
+                ConnectionConfig.getInstance()
+                        .getResponseHeaders());
+    }
+
+    /**
+     * 将 HTTP 响应转换为 GatewayMessage。响应体的 ByteBuf 不复制，增加引用计数后作为消息的 content，
+     * 写出给客户端时直接跟在消息头后面
+     *
+     * @param allowedHeaders 转发给客户端的响应头，不区分大小写，包含 {@link ConnectionConfig#ALL_HEADERS}
+     *                       时转发全部
+     */
+    public static GatewayMessage toGatewayMessage(
+            FullHttpResponse response,
+            GatewayMessage request,
+            Set<String> allowedHeaders) {
+        GatewayMessage message = toResponseHead(response, request, allowedHeaders);
+
+        // 设置响应体
+        ByteBuf content = response.content();
+        if (content.isReadable()) {
+            message.setContent(content.retain());
+        }
+        return message;
+    }
+
+    /**
+     * 将 HTTP 响应头转换为没有消息体的 GatewayMessage，流式响应在收到响应体之前先转换响应头
+     *
+     * @param allowedHeaders 转发给客户端的响应头，规则同 {@link #toGatewayMessage}
+     */
+    public static GatewayMessage toResponseHead(
+            HttpResponse response,
+            GatewayMessage request,
+            Set<String> allowedHeaders) {
         GatewayMessage message = new GatewayMessage();
 
         // 复制请求中的关键字段
@@ -91,19 +141,28 @@ public class HttpProtocolConverter {
         // 设置消息类型为业务响应
         message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
 
-        // 设置响应体
-        ByteBuf content = response.content();
-        if (content.isReadable()) {
-            byte[] bytes = new byte[content.readableBytes()];
-            content.readBytes(bytes);
-            message.setBody(bytes);
-        }
-
-        // 将 HTTP headers 转换为扩展字段
+        // 按白名单将 HTTP headers 转换为扩展字段
         HttpHeaders headers = response.headers();
+        boolean allHeaders = allowedHeaders.contains(ConnectionConfig.ALL_HEADERS);
         for (Map.Entry<String, String> header : headers) {
+            if (allHeaders || allowedHeaders.contains(header.getKey())) {
+                message.getExtensions()
+                        .put(header.getKey(), header.getValue());
+            }
+        }
+
+        // 原样转发的压缩响应必须带上编码，否则客户端无法解码
+        String contentEncoding = headers.get(HttpHeaderNames.CONTENT_ENCODING);
+        if (contentEncoding != null && !allHeaders
+                && !allowedHeaders.contains(HttpHeaderNames.CONTENT_ENCODING.toString())) {
             message.getExtensions()
-                    .put(header.getKey(), header.getValue());
+                    .put(HttpHeaderNames.CONTENT_ENCODING.toString(), contentEncoding);
+        }
+
+        // 换算缓存时间，响应缓存据此决定是否缓存以及缓存多久
+        String cacheControl = headers.get(HttpHeaderNames.CACHE_CONTROL);
+        if (cacheControl != null) {
+            message.setCacheTtlMillis(cacheTtlMillis(cacheControl));
         }
 
         // 添加响应状态码
@@ -115,6 +174,44 @@ public class HttpProtocolConverter {
         return message;
     }
 
+    /**
+     * 解析 Cache-Control。网关是共享缓存，s-maxage 优先于 max-age
+     *
+     * @return 可以缓存的毫秒数，不允许缓存时返回 0，没有指定缓存时间时返回 -1
+     */
+    public static long cacheTtlMillis(String cacheControl) {
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+        for (String directive : cacheControl.split(",")) {
+            String value = directive.trim()
+                    .toLowerCase(Locale.ROOT);
+            if (value.equals("no-store") || value.equals("no-cache")
+                    || value.equals("private")) {
+                return 0;
+            }
+            if (value.startsWith(S_MAXAGE + "=")) {
+                sharedMaxAge = parseSeconds(value.substring(S_MAXAGE.length() + 1));
+            } else if (value.startsWith(MAX_AGE + "=")) {
+                maxAge = parseSeconds(value.substring(MAX_AGE.length() + 1));
+            }
+        }
+        long seconds = sharedMaxAge >= 0
+                ? sharedMaxAge
+                : maxAge;
+        return seconds >= 0
+                ? seconds * 1000
+                : -1;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            long seconds = Long.parseLong(value.replace("\"", ""));
+            return Math.clamp(seconds, 0, Long.MAX_VALUE / 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public static String convertToPath(String bizType) {
         if (bizType == null) {
             return null;
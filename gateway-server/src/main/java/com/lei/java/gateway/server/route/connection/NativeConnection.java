@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.codec.GatewayMessageCodec;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.common.upstream.GatewayUpstreamHandler;
+import com.lei.java.gateway.common.util.ConcurrentLongMap;
+import com.lei.java.gateway.server.route.RequestDeadline;
+import com.lei.java.gateway.server.route.RouteTimer;
+
+import static com.lei.java.gateway.common.constants.GatewayConstant.EXTENSION_TIMEOUT;
+
+/**
+ * <p>
+ * 原生协议连接
+ * </p>
+ * 直接使用 {@link GatewayMessage} 的帧格式与上游通信，省去 HTTP 的编码和解析，上游通过
+ * {@link GatewayUpstreamHandler} 接收。写出时 requestId 替换为连接内递增的编号，响应按编号匹配，
+ * 可以乱序返回，一个慢请求不会阻塞其他请求。
+ * 连接断开后不重连，由连接池移除并新建连接。
+ *
+ * @author 伍磊
+ */
+public class NativeConnection implements Connection {
+    private static final Logger logger = LoggerFactory.getLogger(NativeConnection.class);
+    // 每个连接一张表，只有少数线程同时访问，段数取默认值会让大量连接白白占用空段
+    private static final int PENDING_STRIPES = 2;
+    private static final int PENDING_CAPACITY_PER_STRIPE = 16;
+
+    private final Channel channel;
+    private final ServiceInstance serviceInstance;
+    private final int maxConcurrentRequests;
+    // 连接内的请求编号 -> 等待响应的请求
+    private final ConcurrentLongMap<PendingCall> pendingCalls =
+            new ConcurrentLongMap<>(PENDING_STRIPES, PENDING_CAPACITY_PER_STRIPE);
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    /**
+     * @param channel               已经通过 {@link #initPipeline(ChannelPipeline)} 初始化的连接
+     * @param maxConcurrentRequests 超过这个数量的进行中请求时连接池优先新建连接
+     */
+    public NativeConnection(
+            Channel channel,
+            ServiceInstance serviceInstance,
+            int maxConcurrentRequests) {
+        this.channel = channel;
+        this.serviceInstance = serviceInstance;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        channel.pipeline()
+                .addLast(new ResponseHandler());
+    }
+
+    /**
+     * 初始化原生协议连接的 pipeline
+     */
+    public static void initPipeline(ChannelPipeline pipeline) {
+        pipeline.addLast(new GatewayMessageCodec());
+    }
+
+    @Override
+    public CompletableFuture<GatewayMessage> send(GatewayMessage message) {
+        CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+        if (!isActive()) {
+            future.completeExceptionally(new RequestNotSentException("Connection is not active"));
+            return future;
+        }
+
+        long deadline = RequestDeadline.of(message);
+        long remainingMillis = RequestDeadline.remainingMillis(deadline);
+        if (remainingMillis <= 0) {
+            future.completeExceptionally(
+                    new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED));
+            return future;
+        }
+
+        // 写出之前登记，响应无论多快到达都能找到对应的请求
+        long requestId = nextRequestId.incrementAndGet();
+        PendingCall call = new PendingCall(message, future);
+        pendingCalls.put(requestId, call);
+        pendingCount.incrementAndGet();
+        lastActiveTime = System.currentTimeMillis();
+        Timeout timeout = deadline == RequestDeadline.NONE
+                ? null
+                : RouteTimer.get()
+                        .newTimeout(_ -> future.completeExceptionally(
+                                new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED)),
+                                remainingMillis,
+                                TimeUnit.MILLISECONDS);
+        future.whenComplete((_, _) -> {
+            pendingCalls.remove(requestId, call);
+            pendingCount.decrementAndGet();
+            lastActiveTime = System.currentTimeMillis();
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        });
+
+        channel.writeAndFlush(toFrame(message, requestId, deadline))
+                .addListener(f -> {
+                    if (!f.isSuccess()) {
+                        future.completeExceptionally(new RequestNotSentException(
+                                "Failed to write request", f.cause()));
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * 同一个请求可能同时发往多个实例（对冲、重试），不修改原始消息，只替换 requestId。
+     * 有截止时间时在扩展字段的副本中告诉上游还剩多少时间
+     */
+    private static GatewayMessage toFrame(GatewayMessage message, long requestId, long deadline) {
+        GatewayMessage frame = new GatewayMessage();
+        frame.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        frame.setRequestId(requestId);
+        frame.setClientId(message.getClientId());
+        frame.setBizType(message.getBizType());
+        Map<String, String> extensions = message.getExtensions();
+        if (deadline != RequestDeadline.NONE) {
+            extensions = extensions == null
+                    ? new HashMap<>()
+                    : new HashMap<>(extensions);
+            extensions.put(EXTENSION_TIMEOUT,
+                    Long.toString(RequestDeadline.remainingMillis(deadline)));
+        }
+        frame.setExtensions(extensions);
+        frame.setBody(message.getBody());
+        return frame;
+    }
+
+    @Override
+    public Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public ServiceInstance getServiceInstance() {
+        return serviceInstance;
+    }
+
+    @Override
+    public boolean isActive() {
+        return channel.isActive();
+    }
+
+    @Override
+    public void close() {
+        // 进行中的请求随之以 ConnectionClosedException 失败
+        channel.close();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    private record PendingCall(GatewayMessage request, CompletableFuture<GatewayMessage> future) {
+    }
+
+    private final class ResponseHandler extends SimpleChannelInboundHandler<GatewayMessage> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, GatewayMessage response) {
+            PendingCall call = pendingCalls.remove(response.getRequestId());
+            if (call == null) {
+                // 请求已经超时或者被取消
+                logger.debug("No pending request {} on {}", response.getRequestId(), channel);
+                return;
+            }
+            GatewayMessage request = call.request();
+            response.setRequestId(request.getRequestId());
+            response.setClientId(request.getClientId());
+            response.setBizType(request.getBizType());
+            call.future()
+                    .complete(response);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            ConnectionClosedException cause = new ConnectionClosedException("Connection closed");
+            pendingCalls.forEach((_, call) -> call.future()
+                    .completeExceptionally(cause));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("Native connection to {} failed, closing", serviceInstance, cause);
+            ctx.close();
+        }
+    }
+}
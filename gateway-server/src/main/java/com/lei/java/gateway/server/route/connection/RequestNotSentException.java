@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+/**
+ * <p>
+ * 请求没有写出到上游
+ * </p>
+ * 连接不可用或者写出失败，上游一定没有收到这个请求，换一个实例重发是安全的。
+ *
+ * @author 伍磊
+ */
+public class RequestNotSentException extends RuntimeException {
+
+    public RequestNotSentException(String message) {
+        super(message);
+    }
+
+    public RequestNotSentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
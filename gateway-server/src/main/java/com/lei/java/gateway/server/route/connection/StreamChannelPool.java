@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * <p>
+ * 单个上游实例的流式请求空闲连接
+ * </p>
+ * HTTP/1.1 的流式请求独占一个关闭了 autoRead 的连接，响应完整结束后连接放回这里，之后的流式请求直接复用，
+ * 不必每次重新建立连接。最近归还的连接优先复用，最多保留 {@code maxIdle} 个空闲连接，
+ * 超过空闲时间的由 {@link #evictIdle()} 定期关闭。
+ * <p>
+ * 空闲期间挂起一次读取，上游关闭连接时能及时发现；这期间收到任何数据都说明连接状态不对，直接关闭。
+ *
+ * @author 伍磊
+ */
+final class StreamChannelPool {
+
+    private static final ChannelHandler IDLE_GUARD = new IdleGuard();
+
+    private final int maxIdle;
+    private final long idleTimeoutMillis;
+    private final Deque<IdleChannel> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param maxIdle           最多保留的空闲连接数
+     * @param idleTimeoutMillis 空闲连接的最长保留时间
+     */
+    StreamChannelPool(int maxIdle, long idleTimeoutMillis) {
+        this.maxIdle = maxIdle;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * 取出一个可用的空闲连接，没有时返回 null
+     */
+    Channel poll() {
+        IdleChannel entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            Channel channel = entry.channel();
+            if (!channel.isActive()) {
+                continue;
+            }
+            try {
+                channel.pipeline()
+                        .remove(IDLE_GUARD);
+                return channel;
+            } catch (NoSuchElementException e) {
+                // 刚刚断开的连接，pipeline 已经清空
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 归还响应已经完整结束的连接，pipeline 中只能剩下 {@code HttpClientCodec}。空闲连接已满或者已经关闭时直接关闭连接
+     */
+    void offer(Channel channel) {
+        if (closed || !channel.isActive()) {
+            channel.close();
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            channel.close();
+            return;
+        }
+        channel.pipeline()
+                .addLast(IDLE_GUARD);
+        channel.read();
+        idle.addFirst(new IdleChannel(channel, System.currentTimeMillis()));
+        // 关闭和归还同时发生时，由归还方补充关闭
+        if (closed) {
+            close();
+        }
+    }
+
+    /**
+     * 关闭超过空闲时间或者已经断开的连接
+     */
+    void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<IdleChannel> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            IdleChannel entry = iterator.next();
+            if ((entry.idleSince() < idleBefore || !entry.channel()
+                    .isActive()) && idle.remove(entry)) {
+                idleCount.decrementAndGet();
+                entry.channel()
+                        .close();
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        IdleChannel entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            entry.channel()
+                    .close();
+        }
+    }
+
+    private record IdleChannel(Channel channel, long idleSince) {
+    }
+
+    /**
+     * 空闲连接上不应该收到任何响应
+     */
+    @ChannelHandler.Sharable
+    private static final class IdleGuard extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+            ctx.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
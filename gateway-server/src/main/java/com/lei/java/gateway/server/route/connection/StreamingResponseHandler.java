@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.opentelemetry.api.common.Attributes;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.metrics.GatewayMetrics;
+import com.lei.java.gateway.server.route.RequestDeadline;
+import com.lei.java.gateway.server.route.ResponseStream;
+import com.lei.java.gateway.server.route.RouteTimer;
+
+import static com.lei.java.gateway.server.metrics.MetricsUtil.UPSTREAM_TTFB_HISTOGRAM;
+
+/**
+ * <p>
+ * 流式响应处理器
+ * </p>
+ * 用于一个请求独占的 HTTP/1.1 连接，pipeline 中只有 {@code HttpClientCodec}，没有聚合器。响应头和每一块响应体
+ * 收到后立即交给 {@link ResponseStream}，响应体的 ByteBuf 不复制。连接关闭了 autoRead，只有接收方调用
+ * {@link #request()} 之后才继续从 socket 读取，客户端写不过来时上游的数据留在 TCP 窗口里。
+ * 响应完整结束并且上游允许保持连接时，处理器从 pipeline 中移除，连接交还给调用方复用；失败或者被取消后关闭连接。
+ *
+ * @author 伍磊
+ */
+public class StreamingResponseHandler extends ChannelInboundHandlerAdapter
+        implements ResponseStream.Subscription, TimerTask {
+
+    private final GatewayMessage request;
+    private final ResponseStream stream;
+    private final Set<String> allowedHeaders;
+    private final Attributes attributes;
+    private final long startNanos;
+    private final Consumer<Channel> release;
+    // 响应结束后置空，之后的 request 和 cancel 不会再影响已经交还的连接
+    private volatile Channel channel;
+    private volatile boolean cancelled;
+    // 以下字段只在 EventLoop 中访问
+    private boolean done;
+    private boolean keepAlive;
+    private Timeout deadlineTimeout;
+
+    /**
+     * @param request        请求消息，其中的截止时间到达后请求失败
+     * @param stream         响应的接收方
+     * @param instance       上游实例
+     * @param allowedHeaders 转发给客户端的响应头
+     * @param startNanos     开始连接上游的时间，用于统计首字节时间
+     * @param release        响应完整结束、连接可以复用时接收连接，此时处理器已经从 pipeline 中移除
+     */
+    public StreamingResponseHandler(
+            GatewayMessage request,
+            ResponseStream stream,
+            ServiceInstance instance,
+            Set<String> allowedHeaders,
+            long startNanos,
+            Consumer<Channel> release) {
+        this.request = request;
+        this.stream = stream;
+        this.allowedHeaders = allowedHeaders;
+        this.attributes = Attributes.of(GatewayMetrics.UPSTREAM, instance.getServerAddress());
+        this.startNanos = startNanos;
+        this.release = release;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+        long deadline = RequestDeadline.of(request);
+        if (deadline != RequestDeadline.NONE) {
+            deadlineTimeout = RouteTimer.get()
+                    .newTimeout(this,
+                            RequestDeadline.remainingMillis(deadline),
+                            TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        try {
+            if (done) {
+                return;
+            }
+            if (msg instanceof HttpResponse response) {
+                keepAlive = HttpUtil.isKeepAlive(response);
+                UPSTREAM_TTFB_HISTOGRAM.record((System.nanoTime() - startNanos) / 1_000_000.0,
+                        attributes);
+                stream.onHead(HttpProtocolConverter.toResponseHead(response,
+                        request,
+                        allowedHeaders), this);
+            }
+            if (msg instanceof HttpContent content) {
+                ByteBuf chunk = content.content();
+                boolean last = msg instanceof LastHttpContent;
+                if (chunk.isReadable()) {
+                    stream.onChunk(chunk.retain());
+                } else if (!last) {
+                    // 空的数据块不交给接收方，直接继续读取
+                    ctx.read();
+                }
+                if (last) {
+                    done = true;
+                    channel = null;
+                    cancelDeadline();
+                    // 先交还连接再通知接收方，接收方随后发起的请求可以复用这个连接
+                    if (keepAlive) {
+                        ctx.pipeline()
+                                .remove(this);
+                        release.accept(ctx.channel());
+                    } else {
+                        ctx.close();
+                    }
+                    stream.onComplete();
+                }
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (!done) {
+            done = true;
+            cancelDeadline();
+            // 接收方主动取消的不再通知
+            if (!cancelled) {
+                stream.onError(new ConnectionClosedException(
+                        "Upstream connection closed before the response completed"));
+            }
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        fail(cause);
+    }
+
+    @Override
+    public void request() {
+        Channel current = channel;
+        if (current != null) {
+            current.read();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        Channel current = channel;
+        if (current != null) {
+            // 在 EventLoop 中确认响应还没有结束，避免关闭已经交还复用的连接
+            current.eventLoop()
+                    .execute(() -> {
+                        if (!done) {
+                            current.close();
+                        }
+                    });
+        }
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+        Channel current = channel;
+        if (current == null) {
+            return;
+        }
+        current.eventLoop()
+                .execute(() -> fail(
+                        new TimeoutException(RequestDeadline.ERROR_DEADLINE_EXCEEDED)));
+    }
+
+    /**
+     * 请求失败并关闭连接，只在 EventLoop 中调用
+     */
+    void fail(Throwable cause) {
+        if (done) {
+            return;
+        }
+        done = true;
+        cancelDeadline();
+        stream.onError(cause);
+        channel.close();
+    }
+
+    private void cancelDeadline() {
+        if (deadlineTimeout != null) {
+            deadlineTimeout.cancel();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 网关和 HTTP/1.1 上游之间的压缩
+ * </p>
+ * 客户端没有通过扩展字段 {@code Accept-Encoding} 协商压缩时，网关向上游声明自己能解压 gzip 和 deflate，
+ * 收到的压缩响应在 pipeline 中边收边解压，客户端拿到的仍然是原始内容。客户端协商过的编码不解压，
+ * 压缩的响应体连同 {@code Content-Encoding} 原样转发。请求体超过阈值时压缩后再发出，需要上游支持。
+ *
+ * @author 伍磊
+ */
+public final class UpstreamCompression {
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCompression.class);
+
+    /**
+     * 不压缩也不声明压缩
+     */
+    public static final UpstreamCompression DISABLED = new UpstreamCompression(false, 0);
+
+    private static final String ACCEPT_ENCODING = HttpHeaderValues.GZIP + ", "
+            + HttpHeaderValues.DEFLATE;
+    private static final String ANY_ENCODING = "*";
+
+    private final boolean enabled;
+    private final int requestMinSize;
+
+    /**
+     * @param enabled        是否向上游声明并解压压缩的响应
+     * @param requestMinSize 请求体达到这个字节数时 gzip 压缩，小于等于 0 表示不压缩请求体
+     */
+    public UpstreamCompression(boolean enabled, int requestMinSize) {
+        this.enabled = enabled;
+        this.requestMinSize = requestMinSize;
+    }
+
+    public static UpstreamCompression of(ConnectionConfig config) {
+        return new UpstreamCompression(config.isCompressionEnabled(),
+                config.getRequestCompressionMinSize());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 处理发往上游的请求：声明可以接收的压缩编码，并按阈值压缩请求体
+     *
+     * @return 请求体被压缩时返回新的请求，原请求的请求体已经释放
+     */
+    public FullHttpRequest apply(FullHttpRequest request) {
+        HttpHeaders headers = request.headers();
+        if (enabled && !headers.contains(HttpHeaderNames.ACCEPT_ENCODING)) {
+            headers.set(HttpHeaderNames.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+        ByteBuf content = request.content();
+        if (requestMinSize <= 0
+                || content.readableBytes() < requestMinSize
+                || headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return request;
+        }
+        ByteBuf compressed = gzip(content, ByteBufAllocator.DEFAULT);
+        // 压缩失败或者压缩后没有变小，按原样发出
+        if (compressed == null) {
+            return request;
+        }
+        if (compressed.readableBytes() >= content.readableBytes()) {
+            compressed.release();
+            return request;
+        }
+        FullHttpRequest replaced = request.replace(compressed);
+        request.release();
+        replaced.headers()
+                .set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP)
+                .set(HttpHeaderNames.CONTENT_LENGTH, compressed.readableBytes());
+        return replaced;
+    }
+
+    /**
+     * 创建解压响应的处理器，放在 {@code HttpClientCodec} 之后
+     *
+     * @param passThrough 某个编码的响应是否原样转发，在 EventLoop 中按当前响应调用
+     */
+    public ChannelHandler newDecompressor(Predicate<String> passThrough) {
+        return new UpstreamContentDecompressor(passThrough);
+    }
+
+    /**
+     * 客户端是否通过扩展字段 {@code Accept-Encoding} 接受某个编码
+     */
+    public static boolean clientAccepts(GatewayMessage message, String encoding) {
+        String acceptEncoding = clientAcceptEncoding(message);
+        return acceptEncoding != null && accepts(acceptEncoding, encoding);
+    }
+
+    /**
+     * 客户端通过扩展字段声明的 {@code Accept-Encoding}，没有声明时返回 null
+     */
+    public static String clientAcceptEncoding(GatewayMessage message) {
+        Map<String, String> extensions = message.getExtensions();
+        if (extensions == null || extensions.isEmpty()) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : extensions.entrySet()) {
+            if (HttpHeaderNames.ACCEPT_ENCODING.contentEqualsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean accepts(String acceptEncoding, String encoding) {
+        for (String candidate : acceptEncoding.split(",")) {
+            int parameters = candidate.indexOf(';');
+            String name = (parameters < 0
+                    ? candidate
+                    : candidate.substring(0, parameters)).trim();
+            if (name.equalsIgnoreCase(encoding) || ANY_ENCODING.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuf gzip(ByteBuf content, ByteBufAllocator allocator) {
+        ByteBuf compressed = allocator.buffer(content.readableBytes() / 2 + 64);
+        try (OutputStream out = new GZIPOutputStream(new ByteBufOutputStream(compressed))) {
+            content.getBytes(content.readerIndex(), out, content.readableBytes());
+        } catch (IOException e) {
+            logger.warn("Failed to compress request body, sending it uncompressed", e);
+            compressed.release();
+            return null;
+        }
+        return compressed;
+    }
+
+    /**
+     * 按响应决定是否解压，客户端接受的编码不解压
+     */
+    private static final class UpstreamContentDecompressor extends HttpContentDecompressor {
+        private final Predicate<String> passThrough;
+
+        UpstreamContentDecompressor(Predicate<String> passThrough) {
+            super(0);
+            this.passThrough = passThrough;
+        }
+
+        @Override
+        protected EmbeddedChannel newContentDecoder(String contentEncoding) throws Exception {
+            if (passThrough.test(contentEncoding)) {
+                return null;
+            }
+            return super.newContentDecoder(contentEncoding);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.util.Locale;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * <p>
+ * 与上游通信使用的协议
+ * </p>
+ * 通过服务实例元数据中的 {@code protocol} 指定，未指定时使用 HTTP/1.1。
+ *
+ * @author 伍磊
+ */
+public enum UpstreamProtocol {
+
+    /**
+     * HTTP/1.1，一个连接上的请求按顺序响应
+     */
+    HTTP1("http1"),
+
+    /**
+     * 明文 HTTP/2（prior knowledge），一个连接上的请求各自占用一个 stream，互不阻塞
+     */
+    H2C("h2c"),
+
+    /**
+     * 网关的原生协议，直接使用 GatewayMessage 的帧格式，请求按 requestId 多路复用
+     */
+    NATIVE("native");
+
+    public static final String METADATA_KEY = "protocol";
+
+    private final String value;
+
+    UpstreamProtocol(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static UpstreamProtocol of(ServiceInstance instance) {
+        String protocol = instance.getMetadata()
+                .get(METADATA_KEY);
+        if (protocol == null) {
+            return HTTP1;
+        }
+        for (UpstreamProtocol upstreamProtocol : values()) {
+            if (upstreamProtocol.value.equals(protocol.trim()
+                    .toLowerCase(Locale.ROOT))) {
+                return upstreamProtocol;
+            }
+        }
+        return HTTP1;
+    }
+}
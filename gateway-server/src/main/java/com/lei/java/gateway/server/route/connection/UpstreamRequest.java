@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 写入上游 HTTP/1.1 连接的请求
+ * </p>
+ * 不同客户端的 requestId 可能重复，响应通过连接内递增的 correlationId 找到对应的请求。
+ *
+ * @param correlationId 连接内唯一的请求编号
+ * @param message       原始请求
+ * @author 伍磊
+ */
+public record UpstreamRequest(long correlationId, GatewayMessage message) {
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.connection;
+
+import java.net.UnixDomainSocketAddress;
+import java.util.Map;
+import java.util.Set;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.BootstrapConfig;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.nio.NioDomainSocketChannel;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * <p>
+ * 与上游建立连接使用的传输方式
+ * </p>
+ * 服务实例元数据中有 {@code unixSocket} 时通过这个路径上的 Unix domain socket 连接，用于和网关部署在同一台机器上的
+ * sidecar 服务，省去本机 TCP 协议栈的开销；否则按 host 和 port 通过 TCP 连接。两种方式建立的连接走同样的
+ * pipeline 和连接池。
+ *
+ * @author 伍磊
+ */
+public enum UpstreamTransport {
+
+    /**
+     * TCP
+     */
+    TCP,
+
+    /**
+     * Unix domain socket
+     */
+    UNIX;
+
+    public static final String METADATA_KEY = "unixSocket";
+
+    private static final Set<ChannelOption<?>> TCP_OPTIONS =
+            Set.of(ChannelOption.TCP_NODELAY, ChannelOption.SO_KEEPALIVE);
+
+    public static UpstreamTransport of(ServiceInstance instance) {
+        return socketPath(instance) == null
+                ? TCP
+                : UNIX;
+    }
+
+    /**
+     * 按实例的传输方式发起连接。Unix domain socket 使用 {@link NioDomainSocketChannel}，沿用 TCP bootstrap 的
+     * EventLoop、pipeline 和选项，只去掉对 TCP 有效的选项
+     *
+     * @param bootstrap 配置好 pipeline 的 TCP bootstrap
+     */
+    @SuppressWarnings("unchecked")
+    public static ChannelFuture connect(Bootstrap bootstrap, ServiceInstance instance) {
+        String path = socketPath(instance);
+        if (path == null) {
+            return bootstrap.connect(instance.getHost(), instance.getPort());
+        }
+        BootstrapConfig config = bootstrap.config();
+        Bootstrap unixBootstrap = new Bootstrap().group(config.group())
+                .channel(NioDomainSocketChannel.class)
+                .handler(config.handler());
+        for (Map.Entry<ChannelOption<?>, Object> option : config.options()
+                .entrySet()) {
+            if (!TCP_OPTIONS.contains(option.getKey())) {
+                unixBootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+            }
+        }
+        return unixBootstrap.connect(UnixDomainSocketAddress.of(path));
+    }
+
+    private static String socketPath(ServiceInstance instance) {
+        String path = instance.getMetadata()
+                .get(METADATA_KEY);
+        return path == null || path.isBlank()
+                ? null
+                : path.trim();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.loadbalancer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * 一致性哈希负载均衡器实现（Maglev）
+ * <p>
+ * 按 clientId 或者指定的扩展字段把请求固定到同一个实例，适合在实例上按用户缓存数据的上游。
+ * 每个快照构建一张 Maglev 查找表，选择时对键做一次哈希、查一次表，耗时和实例数量无关；
+ * 实例增减时只有少量的键换到别的实例上。
+ * <p>
+ * 有界负载：选中的实例在途请求数超过平均值的 {@code loadFactor} 倍时，沿查找表向后找第一个未超出的实例，
+ * 热点键不会压垮单个实例。在途请求数由 {@link #onRequestStart} 和 {@link #onRequestEnd} 维护。
+ * <p>
+ * 请求中没有哈希键时随机选择。实例的权重不参与哈希。
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    private static final double DEFAULT_LOAD_FACTOR = 1.25;
+    // 查找表的大小，取不小于实例数 100 倍的质数，保证每个实例分到的槽位数接近
+    private static final int[] TABLE_SIZES =
+            {251, 509, 1021, 2039, 4093, 8191, 16381, 32749, 65521};
+    private static final int SLOTS_PER_INSTANCE = 100;
+
+    private final String hashExtension;
+    private final double loadFactor;
+    private final Map<ServiceInstance, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+    private final Function<InstanceSnapshot, Table> tables = this::tableOf;
+    // 最近构建的查找表，过滤掉部分实例的临时快照内容相同时复用
+    private volatile Table recent;
+
+    /**
+     * 按 clientId 哈希
+     */
+    public ConsistentHashLoadBalancer() {
+        this(null, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param hashExtension 作为哈希键的扩展字段，为 null 时使用 clientId
+     * @param loadFactor    实例在途请求数相对平均值的上限，小于等于 0 表示不限制
+     */
+    public ConsistentHashLoadBalancer(String hashExtension, double loadFactor) {
+        if (loadFactor > 0 && loadFactor < 1) {
+            throw new IllegalArgumentException("loadFactor must be at least 1");
+        }
+        this.hashExtension = hashExtension;
+        this.loadFactor = loadFactor;
+    }
+
+    @Override
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        return snapshot.get(ThreadLocalRandom.current()
+                .nextInt(snapshot.size()));
+    }
+
+    @Override
+    public ServiceInstance select(InstanceSnapshot snapshot, GatewayMessage message) {
+        String key = keyOf(message);
+        if (key == null || snapshot.size() <= 1) {
+            return select(snapshot);
+        }
+
+        Table table = snapshot.attachment(this, tables);
+        int[] entries = table.entries;
+        int slot = (int) Long.remainderUnsigned(hash(key, 0), entries.length);
+        int index = entries[slot];
+        AtomicInteger[] counters = table.counters;
+        if (loadFactor <= 0 || counters[index].get() <= 0) {
+            return snapshot.get(index);
+        }
+
+        // 在途请求数超出上限时，沿查找表向后找第一个未超出的实例，同一个键的溢出顺序是固定的
+        long total = 0;
+        for (AtomicInteger counter : counters) {
+            total += Math.max(0, counter.get());
+        }
+        double capacity = Math.ceil(loadFactor * (total + 1) / counters.length);
+        for (int i = 0; i < entries.length; i++) {
+            int candidate = entries[(slot + i) % entries.length];
+            if (counters[candidate].get() < capacity) {
+                return snapshot.get(candidate);
+            }
+        }
+        return snapshot.get(index);
+    }
+
+    @Override
+    public void onRequestStart(ServiceInstance instance) {
+        counterOf(instance).incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(ServiceInstance instance, long rttNanos) {
+        // 实例已经下线并清理时不再记录
+        AtomicInteger counter = outstanding.get(instance);
+        if (counter != null) {
+            counter.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void onInstanceRemoved(ServiceInstance instance) {
+        outstanding.remove(instance);
+    }
+
+    private String keyOf(GatewayMessage message) {
+        if (message == null) {
+            return null;
+        }
+        if (hashExtension == null) {
+            return message.getClientId();
+        }
+        Map<String, String> extensions = message.getExtensions();
+        return extensions == null
+                ? null
+                : extensions.get(hashExtension);
+    }
+
+    private AtomicInteger counterOf(ServiceInstance instance) {
+        return outstanding.computeIfAbsent(instance, _ -> new AtomicInteger());
+    }
+
+    private Table tableOf(InstanceSnapshot snapshot) {
+        Table current = recent;
+        if (current != null && current.matches(snapshot)) {
+            return current;
+        }
+        Table table = new Table(snapshot);
+        recent = table;
+        return table;
+    }
+
+    /**
+     * 64 位 FNV-1a 哈希，再做一次 murmur3 的 finalizer 打散
+     */
+    private static long hash(String value, long seed) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int tableSize(int instances) {
+        for (int size : TABLE_SIZES) {
+            if (size >= instances * SLOTS_PER_INSTANCE) {
+                return size;
+            }
+        }
+        return TABLE_SIZES[TABLE_SIZES.length - 1];
+    }
+
+    /**
+     * 每个实例按自己的 offset 和 skip 生成槽位的排列，各实例轮流占用自己排列中下一个空闲的槽位，直到填满
+     */
+    private static int[] populate(ServiceInstance[] instances, int size) {
+        int count = instances.length;
+        long[] offsets = new long[count];
+        long[] skips = new long[count];
+        long[] next = new long[count];
+        for (int i = 0; i < count; i++) {
+            String name = instances[i].getServerAddress();
+            offsets[i] = Long.remainderUnsigned(hash(name, 0), size);
+            skips[i] = Long.remainderUnsigned(hash(name, 1), size - 1) + 1;
+        }
+        int[] entries = new int[size];
+        Arrays.fill(entries, -1);
+        int filled = 0;
+        while (true) {
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((offsets[i] + next[i] * skips[i]) % size);
+                while (entries[slot] >= 0) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + next[i] * skips[i]) % size);
+                }
+                entries[slot] = i;
+                next[i]++;
+                if (++filled == size) {
+                    return entries;
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个快照的查找表和实例的在途请求计数器，都按快照中的下标排列
+     */
+    private final class Table {
+        private final ServiceInstance[] instances;
+        private final int[] entries;
+        private final AtomicInteger[] counters;
+
+        Table(InstanceSnapshot snapshot) {
+            int size = snapshot.size();
+            instances = new ServiceInstance[size];
+            counters = new AtomicInteger[size];
+            for (int i = 0; i < size; i++) {
+                instances[i] = snapshot.get(i);
+                counters[i] = counterOf(instances[i]);
+            }
+            entries = populate(instances, tableSize(size));
+        }
+
+        boolean matches(InstanceSnapshot snapshot) {
+            if (snapshot.size() != instances.length) {
+                return false;
+            }
+            for (int i = 0; i < instances.length; i++) {
+                if (!instances[i].equals(snapshot.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
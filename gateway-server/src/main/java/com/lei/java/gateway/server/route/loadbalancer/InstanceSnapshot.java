@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * <p>
+ * 可选实例的不可变快照
+ * </p>
+ * 构建时过滤出健康且启用的实例并预先计算好加权选择用的别名表（alias method），之后的每次选择都是 O(1)，
+ * 也不分配对象。快照在实例列表变化时重新构建，每次构建得到一个新的版本号，负载均衡器可以据此判断自己的
+ * 状态是否需要重置。
+ *
+ * @author 伍磊
+ */
+public final class InstanceSnapshot {
+
+    // 需要在 EMPTY 之前初始化
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    public static final InstanceSnapshot EMPTY = new InstanceSnapshot(List.of(), List.of());
+
+    // 每个快照最多缓存的子快照数量，超过后新的组合不再缓存
+    private static final int MAX_SUBSETS = 64;
+
+    private final long version;
+    private final List<ServiceInstance> source;
+    private final ServiceInstance[] instances;
+    private final double totalWeight;
+    // 别名表，所有实例权重相同时为 null
+    private final double[] probabilities;
+    private final int[] aliases;
+    // 负载均衡器缓存在快照上的状态
+    private volatile Attachment attachment;
+    // 排除掩码 -> 子快照，第 i 位表示排除第 i 个实例
+    private final Map<Long, InstanceSnapshot> subsets = new ConcurrentHashMap<>();
+
+    private InstanceSnapshot(List<ServiceInstance> source, List<ServiceInstance> eligible) {
+        this.version = VERSIONS.incrementAndGet();
+        this.source = source;
+        this.instances = eligible.toArray(new ServiceInstance[0]);
+        double total = 0;
+        boolean uniform = true;
+        for (ServiceInstance instance : instances) {
+            total += weightOf(instance);
+            uniform &= weightOf(instance) == weightOf(instances[0]);
+        }
+        this.totalWeight = total;
+        if (uniform || total <= 0) {
+            this.probabilities = null;
+            this.aliases = null;
+        } else {
+            this.probabilities = new double[instances.length];
+            this.aliases = new int[instances.length];
+            buildAliasTable();
+        }
+    }
+
+    /**
+     * 由实例列表构建快照，只保留健康且启用的实例
+     *
+     * @param source 注册中心返回的实例列表，调用方不能再修改
+     */
+    public static InstanceSnapshot of(List<ServiceInstance> source) {
+        if (source == null || source.isEmpty()) {
+            return EMPTY;
+        }
+        List<ServiceInstance> eligible = new ArrayList<>(source.size());
+        for (ServiceInstance instance : source) {
+            if (instance.isHealthy() && instance.isEnabled()) {
+                eligible.add(instance);
+            }
+        }
+        return new InstanceSnapshot(source, eligible);
+    }
+
+    /**
+     * 构建快照的实例列表，可以按引用判断快照是否过期
+     */
+    public List<ServiceInstance> source() {
+        return source;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return instances.length;
+    }
+
+    public boolean isEmpty() {
+        return instances.length == 0;
+    }
+
+    public ServiceInstance get(int index) {
+        return instances[index];
+    }
+
+    public double totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * 按权重选择实例，权重小于等于 0 的实例不会被选中；所有实例的权重都不大于 0 时等概率选择
+     *
+     * @param random [0, 1) 之间的随机数
+     * @return 快照为空时返回 null
+     */
+    public ServiceInstance selectWeighted(double random) {
+        int size = instances.length;
+        if (size == 0) {
+            return null;
+        }
+        double scaled = random * size;
+        int column = Math.min((int) scaled, size - 1);
+        if (probabilities == null || scaled - column < probabilities[column]) {
+            return instances[column];
+        }
+        return instances[aliases[column]];
+    }
+
+    /**
+     * Vose 算法：每一列放一个实例和一个别名，概率不足 1 的列由概率有剩余的实例补足
+     */
+    private void buildAliasTable() {
+        int size = instances.length;
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weightOf(instances[i]) * size / totalWeight;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // 剩下的列概率为 1，浮点误差留在 small 中的也按 1 处理
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probabilities[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * 去掉满足条件的实例之后的子快照。相同的排除组合复用同一个子快照，不必每次请求重建别名表，
+     * 负载均衡器缓存在子快照上的状态也得以保留；实例超过 64 个时不缓存
+     *
+     * @param excluded 需要排除的实例
+     * @return 没有排除任何实例时返回自身，全部排除时返回 {@link #EMPTY}
+     */
+    public InstanceSnapshot excluding(Predicate<ServiceInstance> excluded) {
+        int size = instances.length;
+        if (size > Long.SIZE) {
+            List<ServiceInstance> others = new ArrayList<>(size);
+            for (ServiceInstance instance : instances) {
+                if (!excluded.test(instance)) {
+                    others.add(instance);
+                }
+            }
+            return others.size() == size ? this : subset(others);
+        }
+        long mask = 0;
+        for (int i = 0; i < size; i++) {
+            if (excluded.test(instances[i])) {
+                mask |= 1L << i;
+            }
+        }
+        if (mask == 0) {
+            return this;
+        }
+        if (Long.bitCount(mask) == size) {
+            return EMPTY;
+        }
+        InstanceSnapshot subset = subsets.get(mask);
+        if (subset == null) {
+            subset = subset(mask);
+            if (subsets.size() < MAX_SUBSETS) {
+                InstanceSnapshot existing = subsets.putIfAbsent(mask, subset);
+                subset = existing != null ? existing : subset;
+            }
+        }
+        return subset;
+    }
+
+    private InstanceSnapshot subset(long mask) {
+        List<ServiceInstance> others = new ArrayList<>(instances.length - Long.bitCount(mask));
+        for (int i = 0; i < instances.length; i++) {
+            if ((mask & 1L << i) == 0) {
+                others.add(instances[i]);
+            }
+        }
+        return subset(others);
+    }
+
+    private static InstanceSnapshot subset(List<ServiceInstance> others) {
+        return others.isEmpty() ? EMPTY : new InstanceSnapshot(List.copyOf(others), others);
+    }
+
+    /**
+     * 负载均衡器缓存在这个快照上的状态，例如按下标排列的实例统计，选择时不必再按实例查找。
+     * 同一个负载均衡器只计算一次，实例列表变化后随新的快照重新计算
+     *
+     * @param owner   状态的所有者，通常是负载均衡器自身
+     * @param factory 由快照计算状态，应当预先创建好，避免每次调用分配
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T attachment(Object owner, Function<InstanceSnapshot, T> factory) {
+        Attachment current = attachment;
+        if (current == null || current.owner != owner) {
+            current = new Attachment(owner, factory.apply(this));
+            attachment = current;
+        }
+        return (T) current.value;
+    }
+
+    private static double weightOf(ServiceInstance instance) {
+        return Math.max(0, instance.getWeight());
+    }
+
+    @Override
+    public String toString() {
+        return "InstanceSnapshot{"
+                + "version="
+                + version
+                + ", instances="
+                + Arrays.toString(instances)
+                + '}';
+    }
+
+    private record Attachment(Object owner, Object value) {
+    }
+}
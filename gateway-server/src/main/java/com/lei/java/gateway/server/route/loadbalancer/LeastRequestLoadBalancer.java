@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * 最少在途请求负载均衡器实现
+ * <p>
+ * 每次从快照中随机取两个不同的实例，选在途请求较少的一个（power of two choices）。只比较两个实例就能避开
+ * 已经积压的实例，又不会像总是选全局最空闲的实例那样，让所有请求同时涌向同一个实例。
+ * 在途请求数由 {@link #onRequestStart} 和 {@link #onRequestEnd} 维护。
+ */
+public class LeastRequestLoadBalancer implements LoadBalancer {
+    private final Map<ServiceInstance, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+    // 快照中每个实例的计数器，按下标排列
+    private final Function<InstanceSnapshot, AtomicInteger[]> counters = this::countersOf;
+
+    @Override
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        int size = snapshot.size();
+        if (size <= 1) {
+            return size == 0
+                    ? null
+                    : snapshot.get(0);
+        }
+
+        // 随机取两个不同的实例，两者顺序随机，相同时取第一个即可
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        AtomicInteger[] snapshotCounters = snapshot.attachment(this, counters);
+        return snapshotCounters[first].get() <= snapshotCounters[second].get()
+                ? snapshot.get(first)
+                : snapshot.get(second);
+    }
+
+    @Override
+    public void onRequestStart(ServiceInstance instance) {
+        counterOf(instance).incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(ServiceInstance instance, long rttNanos) {
+        // 实例已经下线并清理时不再记录
+        AtomicInteger counter = outstanding.get(instance);
+        if (counter != null) {
+            counter.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void onInstanceRemoved(ServiceInstance instance) {
+        outstanding.remove(instance);
+    }
+
+    /**
+     * 实例当前的在途请求数
+     */
+    public int outstanding(ServiceInstance instance) {
+        AtomicInteger counter = outstanding.get(instance);
+        return counter == null
+                ? 0
+                : counter.get();
+    }
+
+    private AtomicInteger counterOf(ServiceInstance instance) {
+        return outstanding.computeIfAbsent(instance, _ -> new AtomicInteger());
+    }
+
+    private AtomicInteger[] countersOf(InstanceSnapshot snapshot) {
+        AtomicInteger[] result = new AtomicInteger[snapshot.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counterOf(snapshot.get(i));
+        }
+        return result;
+    }
+}
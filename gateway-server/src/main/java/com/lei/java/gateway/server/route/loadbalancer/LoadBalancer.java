@@ -17,6 +17,7 @@ package com.lei.java.gateway.server.route.loadbalancer;
 
 import java.util.List;
 
+import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
 
 /**
@@ -24,10 +25,56 @@ import com.lei.java.gateway.common.route.ServiceInstance;
  */
 public interface LoadBalancer {
     /**
-     * 从服务实例列表中选择一个实例
+     * 从实例快照中选择一个实例。每个请求都会调用，实现应当是 O(1) 的并且不分配对象
      *
-     * @param instances 可用的服务实例列表
-     * @return 选中的服务实例，如果列表为空则返回null
+     * @param snapshot 可选实例的快照，只包含健康且启用的实例
+     * @return 选中的服务实例，如果快照为空则返回null
      */
-    ServiceInstance select(List<ServiceInstance> instances);
-}
\ No newline at end of file
+    ServiceInstance select(InstanceSnapshot snapshot);
+
+    /**
+     * 为一个请求选择实例，需要按请求内容选择的实现覆盖这个方法，例如按 clientId 做一致性哈希
+     *
+     * @param snapshot 可选实例的快照，只包含健康且启用的实例
+     * @param message  请求消息
+     * @return 选中的服务实例，如果快照为空则返回null
+     */
+    default ServiceInstance select(InstanceSnapshot snapshot, GatewayMessage message) {
+        return select(snapshot);
+    }
+
+    /**
+     * 从服务实例列表中选择一个实例，每次调用都要重新构建快照，实例列表不固定时使用
+     *
+     * @param instances 服务实例列表
+     * @return 选中的服务实例，如果没有可选实例则返回null
+     */
+    default ServiceInstance select(List<ServiceInstance> instances) {
+        return select(InstanceSnapshot.of(instances));
+    }
+
+    /**
+     * 请求发往选中的实例时回调，需要感知实例负载的实现据此统计在途请求
+     *
+     * @param instance 服务实例
+     */
+    default void onRequestStart(ServiceInstance instance) {
+    }
+
+    /**
+     * 请求结束时回调，和 {@link #onRequestStart} 一一对应
+     *
+     * @param instance 服务实例
+     * @param rttNanos 请求的往返时间，请求没有发出或者被取消时为 -1
+     */
+    default void onRequestEnd(ServiceInstance instance, long rttNanos) {
+    }
+
+    /**
+     * 实例离开注册中心时回调，按实例保存状态的实现据此清理
+     *
+     * @param instance 服务实例
+     */
+    default void onInstanceRemoved(ServiceInstance instance) {
+    }
+}
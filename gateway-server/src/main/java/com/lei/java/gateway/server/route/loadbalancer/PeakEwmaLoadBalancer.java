@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * 按延迟负载均衡器实现（Peak EWMA）
+ * <p>
+ * 每个实例维护响应时间的指数加权移动平均，样本高于当前值时直接取样本（对延迟升高立即反应，恢复时逐渐回落），
+ * 衰减的时间常数为 {@code decayWindow}。实例的得分为平均延迟乘以在途请求数加一，每次随机取两个实例选得分低的一个。
+ * 平均值读取时按距离上次更新的时间向 0 衰减，长时间没有请求的慢实例会重新得到探测的机会。
+ * <p>
+ * 还没有延迟样本的新实例：空闲时得分为 0，优先得到一个探测请求；探测请求返回之前得分很高，
+ * 不会在 JIT 预热阶段被大量请求压垮。
+ * <p>
+ * 选择时只读取 volatile 字段，不加锁；更新在请求完成时进行，由每个实例的统计对象自身保护。
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    private static final long DEFAULT_DECAY_WINDOW_MILLIS = 10_000;
+    // 还没有样本并且有在途请求的实例的得分
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    private final double decayNanos;
+    private final Map<ServiceInstance, Stats> stats = new ConcurrentHashMap<>();
+    // 快照中每个实例的统计，按下标排列
+    private final Function<InstanceSnapshot, Stats[]> snapshotStats = this::statsOf;
+
+    public PeakEwmaLoadBalancer() {
+        this(DEFAULT_DECAY_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param decayWindowMillis 衰减的时间常数，越小越快忘记过去的延迟
+     */
+    public PeakEwmaLoadBalancer(long decayWindowMillis) {
+        if (decayWindowMillis <= 0) {
+            throw new IllegalArgumentException("decayWindowMillis must be positive");
+        }
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayWindowMillis);
+    }
+
+    @Override
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        int size = snapshot.size();
+        if (size <= 1) {
+            return size == 0
+                    ? null
+                    : snapshot.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Stats[] instanceStats = snapshot.attachment(this, snapshotStats);
+        long now = System.nanoTime();
+        return instanceStats[first].score(now) <= instanceStats[second].score(now)
+                ? snapshot.get(first)
+                : snapshot.get(second);
+    }
+
+    @Override
+    public void onRequestStart(ServiceInstance instance) {
+        statsOf(instance).outstanding.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(ServiceInstance instance, long rttNanos) {
+        // 实例已经下线并清理时不再记录
+        Stats instanceStats = stats.get(instance);
+        if (instanceStats == null) {
+            return;
+        }
+        if (rttNanos >= 0) {
+            instanceStats.observe(rttNanos, System.nanoTime());
+        }
+        instanceStats.outstanding.decrementAndGet();
+    }
+
+    @Override
+    public void onInstanceRemoved(ServiceInstance instance) {
+        stats.remove(instance);
+    }
+
+    /**
+     * 实例当前的得分，越低越优先
+     */
+    public double score(ServiceInstance instance) {
+        Stats instanceStats = stats.get(instance);
+        return instanceStats == null
+                ? 0
+                : instanceStats.score(System.nanoTime());
+    }
+
+    private Stats statsOf(ServiceInstance instance) {
+        return stats.computeIfAbsent(instance, _ -> new Stats());
+    }
+
+    private Stats[] statsOf(InstanceSnapshot snapshot) {
+        Stats[] result = new Stats[snapshot.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = statsOf(snapshot.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 单个实例的统计，更新由 this 保护
+     */
+    private final class Stats {
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile double costNanos;
+        private volatile long stamp;
+        private volatile boolean sampled;
+
+        double score(long now) {
+            int pending = Math.max(0, outstanding.get());
+            if (!sampled) {
+                return pending == 0
+                        ? 0
+                        : PENALTY + pending;
+            }
+            return decayed(now) * (pending + 1);
+        }
+
+        synchronized void observe(long rttNanos, long now) {
+            if (!sampled) {
+                costNanos = rttNanos;
+                sampled = true;
+            } else {
+                // 读取时看到的值已经按时间衰减，在此基础上加入新样本
+                double weight = weight(now);
+                double cost = costNanos * weight;
+                costNanos = rttNanos > cost
+                        ? rttNanos
+                        : cost + rttNanos * (1 - weight);
+            }
+            stamp = now;
+        }
+
+        private double decayed(long now) {
+            return costNanos * weight(now);
+        }
+
+        private double weight(long now) {
+            return Math.exp(-Math.max(0, now - stamp) / decayNanos);
+        }
+    }
+}
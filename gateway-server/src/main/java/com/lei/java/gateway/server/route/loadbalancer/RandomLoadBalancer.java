@@ -15,9 +15,7 @@
  */
 package com.lei.java.gateway.server.route.loadbalancer;
 
-import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.lei.java.gateway.common.route.ServiceInstance;
 
@@ -25,25 +23,15 @@ import com.lei.java.gateway.common.route.ServiceInstance;
  * 随机负载均衡器实现
  */
 public class RandomLoadBalancer implements LoadBalancer {
-    private final Random random = new Random();
 
     @Override
-    public ServiceInstance select(List<ServiceInstance> instances) {
-        if (instances == null || instances.isEmpty()) {
-            return null;
-        }
-
-        // 过滤出健康的实例
-        List<ServiceInstance> healthyInstances = instances.stream()
-                .filter(ServiceInstance::isHealthy)
-                .filter(ServiceInstance::isEnabled)
-                .collect(Collectors.toList());
-
-        if (healthyInstances.isEmpty()) {
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
             return null;
         }
 
         // 随机选择一个实例
-        return healthyInstances.get(random.nextInt(healthyInstances.size()));
+        return snapshot.get(ThreadLocalRandom.current()
+                .nextInt(snapshot.size()));
     }
-}
\ No newline at end of file
+}
@@ -15,9 +15,7 @@
  */
 package com.lei.java.gateway.server.route.loadbalancer;
 
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import com.lei.java.gateway.common.route.ServiceInstance;
 
@@ -28,23 +26,13 @@ public class RoundRobinLoadBalancer implements LoadBalancer {
     private final AtomicInteger counter = new AtomicInteger(0);
 
     @Override
-    public ServiceInstance select(List<ServiceInstance> instances) {
-        if (instances == null || instances.isEmpty()) {
-            return null;
-        }
-
-        // 过滤出健康的实例
-        List<ServiceInstance> healthyInstances = instances.stream()
-                .filter(ServiceInstance::isHealthy)
-                .filter(ServiceInstance::isEnabled)
-                .collect(Collectors.toList());
-
-        if (healthyInstances.isEmpty()) {
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
             return null;
         }
 
         // 轮询选择一个实例
-        int index = Math.abs(counter.getAndIncrement() % healthyInstances.size());
-        return healthyInstances.get(index);
+        int index = Math.abs(counter.getAndIncrement() % snapshot.size());
+        return snapshot.get(index);
     }
-}
\ No newline at end of file
+}
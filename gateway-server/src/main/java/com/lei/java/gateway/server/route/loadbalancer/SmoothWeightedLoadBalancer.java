@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.lei.java.gateway.common.constants.GatewayConstant;
+import com.lei.java.gateway.common.route.ServiceInstance;
+
+/**
+ * 平滑加权轮询负载均衡器实现
+ * <p>
+ * 使用 nginx 的平滑加权轮询：每次选择时每个实例的当前值加上自己的权重，选当前值最大的实例，
+ * 再把它的当前值减去权重之和。结果是确定的，各实例被选中的比例等于权重之比，并且高权重实例的请求均匀地
+ * 穿插在其他实例之间，不会连续集中到同一个实例上。权重可以是小数。
+ * <p>
+ * 慢启动：实例加入后的 {@code slowStartMillis} 内，有效权重从原权重的 10% 线性增加到原权重，
+ * 避免刚启动、JIT 还没有预热的实例一上来就承担全部流量。加入时间取实例元数据中的注册时间
+ * {@link GatewayConstant#TIMESTAMP}，没有时取第一次被这个负载均衡器看到的时间。
+ */
+public class SmoothWeightedLoadBalancer implements LoadBalancer {
+
+    private static final long DEFAULT_SLOW_START_MILLIS = 30_000;
+    // 慢启动开始时的有效权重比例，保证新实例从一开始就能收到少量请求
+    private static final double MIN_SLOW_START_RATIO = 0.1;
+
+    private final long slowStartMillis;
+    private final Map<ServiceInstance, Long> joinedAt = new ConcurrentHashMap<>();
+    private final Function<InstanceSnapshot, Peers> peers = this::peersOf;
+    // 最近使用的轮询状态，过滤掉部分实例的临时快照内容相同时复用，保持轮询的连续
+    private volatile Peers recent;
+
+    public SmoothWeightedLoadBalancer() {
+        this(DEFAULT_SLOW_START_MILLIS);
+    }
+
+    /**
+     * @param slowStartMillis 新实例有效权重增加到原权重所用的时间，小于等于 0 表示不做慢启动
+     */
+    public SmoothWeightedLoadBalancer(long slowStartMillis) {
+        this.slowStartMillis = slowStartMillis;
+    }
+
+    @Override
+    public ServiceInstance select(InstanceSnapshot snapshot) {
+        int size = snapshot.size();
+        if (size <= 1) {
+            return size == 0
+                    ? null
+                    : snapshot.get(0);
+        }
+        return snapshot.get(snapshot.attachment(this, peers)
+                .next(System.currentTimeMillis()));
+    }
+
+    /**
+     * 实例离开后忘记加入时间，重新加入时再次慢启动
+     */
+    @Override
+    public void onInstanceRemoved(ServiceInstance instance) {
+        joinedAt.remove(instance);
+    }
+
+    /**
+     * 实例当前的有效权重
+     */
+    public double effectiveWeight(ServiceInstance instance) {
+        return effectiveWeight(Math.max(0, instance.getWeight()),
+                joinedAt(instance),
+                System.currentTimeMillis());
+    }
+
+    private double effectiveWeight(double weight, long joined, long now) {
+        long elapsed = now - joined;
+        if (slowStartMillis <= 0 || elapsed >= slowStartMillis) {
+            return weight;
+        }
+        return weight * Math.max(MIN_SLOW_START_RATIO, elapsed / (double) slowStartMillis);
+    }
+
+    private long joinedAt(ServiceInstance instance) {
+        return joinedAt.computeIfAbsent(instance, SmoothWeightedLoadBalancer::registeredAt);
+    }
+
+    private static long registeredAt(ServiceInstance instance) {
+        String timestamp = instance.getMetadata()
+                .get(GatewayConstant.TIMESTAMP);
+        if (timestamp != null) {
+            try {
+                return Long.parseLong(timestamp.trim());
+            } catch (NumberFormatException e) {
+                // 使用第一次看到的时间
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    private Peers peersOf(InstanceSnapshot snapshot) {
+        Peers current = recent;
+        if (current != null && current.matches(snapshot)) {
+            return current;
+        }
+        Peers created = new Peers(snapshot);
+        recent = created;
+        return created;
+    }
+
+    /**
+     * 一个快照上的轮询状态，按快照中的下标排列，选择由 this 保护
+     */
+    private final class Peers {
+        private final ServiceInstance[] instances;
+        private final double[] weights;
+        private final long[] joined;
+        private final double[] current;
+        // 所有实例的权重都不大于 0 时按相同权重轮询
+        private final boolean uniform;
+        // 所有实例都过了慢启动之后不再计算有效权重
+        private boolean warmedUp;
+
+        Peers(InstanceSnapshot snapshot) {
+            int size = snapshot.size();
+            instances = new ServiceInstance[size];
+            weights = new double[size];
+            joined = new long[size];
+            current = new double[size];
+            boolean positive = false;
+            for (int i = 0; i < size; i++) {
+                instances[i] = snapshot.get(i);
+                weights[i] = Math.max(0, instances[i].getWeight());
+                joined[i] = joinedAt(instances[i]);
+                positive |= weights[i] > 0;
+            }
+            uniform = !positive;
+        }
+
+        synchronized int next(long now) {
+            boolean allWarm = true;
+            double total = 0;
+            int best = 0;
+            for (int i = 0; i < instances.length; i++) {
+                double weight = uniform
+                        ? 1
+                        : weights[i];
+                if (!warmedUp) {
+                    weight = effectiveWeight(weight, joined[i], now);
+                    allWarm &= now - joined[i] >= slowStartMillis;
+                }
+                current[i] += weight;
+                total += weight;
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            warmedUp = allWarm;
+            current[best] -= total;
+            return best;
+        }
+
+        /**
+         * 实例和权重都相同时复用。实例的 equals 不比较权重，权重变化需要单独判断
+         */
+        boolean matches(InstanceSnapshot snapshot) {
+            if (snapshot.size() != instances.length) {
+                return false;
+            }
+            for (int i = 0; i < instances.length; i++) {
+                ServiceInstance instance = snapshot.get(i);
+                if (!instances[i].equals(instance)
+                        || weights[i] != Math.max(0, instance.getWeight())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
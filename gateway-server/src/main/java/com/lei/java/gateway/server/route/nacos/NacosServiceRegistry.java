@@ -18,11 +18,16 @@ package com.lei.java.gateway.server.route.nacos;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingFactory;
 import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.NamingEvent;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,16 +36,51 @@ import com.lei.java.gateway.common.config.nacos.NacosConfig;
 import com.lei.java.gateway.common.constants.GatewayConstant;
 import com.lei.java.gateway.common.route.ServiceInstance;
 import com.lei.java.gateway.server.route.ServiceRegistry;
+import com.lei.java.gateway.server.route.connection.ConnectionManager;
 
+/**
+ * Nacos 服务注册中心
+ * <p>
+ * 第一次查询某个业务类型时订阅它的实例变化，之后的查询直接返回最近一次推送的不可变列表。
+ * 实例加入时预热连接，离开时关闭连接并停止重连。
+ */
 public class NacosServiceRegistry implements ServiceRegistry {
     private static final Logger logger = LoggerFactory.getLogger(NacosServiceRegistry.class);
 
     private final NamingService namingService;
     private final NacosConfig nacosConfig;
+    private final ConnectionManager connectionManager;
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    // bizType -> 最近一次推送（或者第一次查询）的实例列表，不可变
+    private final ConcurrentMap<String, List<ServiceInstance>> instances =
+            new ConcurrentHashMap<>();
+    private final List<Consumer<ServiceInstance>> removedListeners =
+            new CopyOnWriteArrayList<>();
 
+    /**
+     * 只用于注册和查询，不管理到实例的连接
+     */
     public NacosServiceRegistry(NacosConfig nacosConfig) throws NacosException {
+        this(nacosConfig, null);
+    }
+
+    /**
+     * @param connectionManager 实例加入或离开时预热或移除连接，为 null 时不处理
+     */
+    public NacosServiceRegistry(NacosConfig nacosConfig, ConnectionManager connectionManager)
+            throws NacosException {
+        this(NamingFactory.createNamingService(nacosConfig.buildProperties()),
+                nacosConfig,
+                connectionManager);
+    }
+
+    public NacosServiceRegistry(
+            NamingService namingService,
+            NacosConfig nacosConfig,
+            ConnectionManager connectionManager) throws NacosException {
         this.nacosConfig = nacosConfig;
-        this.namingService = NamingFactory.createNamingService(nacosConfig.buildProperties());
+        this.namingService = namingService;
+        this.connectionManager = connectionManager;
 
         // 检查服务连接状态
         String status = namingService.getServerStatus();
@@ -83,13 +123,17 @@ public class NacosServiceRegistry implements ServiceRegistry {
 
     @Override
     public List<ServiceInstance> getServices(String bizType) {
+        // 路由时每个请求都会调用，返回同一个不可变列表，实例快照只在推送到达后重建
+        List<ServiceInstance> cached = instances.get(bizType);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            List<Instance> instances =
+            subscribe(bizType);
+            List<Instance> nacosInstances =
                     namingService.getAllInstances(bizType, nacosConfig.getGroup());
-            logger.debug("Found {} instances for bizType={}", instances.size(), bizType);
-            return instances.stream()
-                    .map(this::convertFromNacosInstance)
-                    .collect(Collectors.toList());
+            logger.debug("Found {} instances for bizType={}", nacosInstances.size(), bizType);
+            return initInstances(bizType, nacosInstances);
         } catch (NacosException e) {
             logger.error("Failed to get services for bizType: "
                     + bizType, e);
@@ -115,6 +159,11 @@ public class NacosServiceRegistry implements ServiceRegistry {
         }
     }
 
+    @Override
+    public void addInstanceRemovedListener(Consumer<ServiceInstance> listener) {
+        removedListeners.add(listener);
+    }
+
     @Override
     public void close() {
         try {
@@ -125,6 +174,70 @@ public class NacosServiceRegistry implements ServiceRegistry {
         }
     }
 
+    private void subscribe(String bizType) throws NacosException {
+        if (!subscribed.add(bizType)) {
+            return;
+        }
+        try {
+            namingService.subscribe(bizType, nacosConfig.getGroup(), event -> {
+                if (event instanceof NamingEvent namingEvent) {
+                    onInstancesChanged(bizType, namingEvent.getInstances());
+                }
+            });
+        } catch (NacosException e) {
+            subscribed.remove(bizType);
+            throw e;
+        }
+    }
+
+    /**
+     * 订阅之后的第一次推送到达之前，先用查询的结果；推送已经到达时以推送为准
+     */
+    private synchronized List<ServiceInstance> initInstances(
+            String bizType,
+            List<Instance> nacosInstances) {
+        List<ServiceInstance> current = instances.get(bizType);
+        if (current == null) {
+            onInstancesChanged(bizType, nacosInstances);
+            current = instances.get(bizType);
+        }
+        return current;
+    }
+
+    /**
+     * 和上一次推送的实例列表比较，预热新加入的实例，移除不再属于任何业务类型的实例
+     */
+    private synchronized void onInstancesChanged(String bizType, List<Instance> nacosInstances) {
+        List<ServiceInstance> current = nacosInstances.stream()
+                .map(this::convertFromNacosInstance)
+                .toList();
+        List<ServiceInstance> previous = instances.put(bizType, current);
+        if (previous == null) {
+            previous = List.of();
+        }
+        for (ServiceInstance instance : current) {
+            if (!previous.contains(instance) && connectionManager != null) {
+                logger.info("Instance [{}] joined bizType [{}]", instance, bizType);
+                connectionManager.warmUp(instance);
+            }
+        }
+        for (ServiceInstance instance : previous) {
+            if (!current.contains(instance) && !inUse(instance)) {
+                logger.info("Instance [{}] left bizType [{}]", instance, bizType);
+                if (connectionManager != null) {
+                    connectionManager.removeInstance(instance);
+                }
+                removedListeners.forEach(listener -> listener.accept(instance));
+            }
+        }
+    }
+
+    private boolean inUse(ServiceInstance instance) {
+        return instances.values()
+                .stream()
+                .anyMatch(list -> list.contains(instance));
+    }
+
     private Instance convertToNacosInstance(ServiceInstance serviceInstance) {
         Instance instance = new Instance();
         instance.setIp(serviceInstance.getHost());
@@ -33,7 +33,8 @@ public class DefaultSession implements Session {
     private final long createTime;
     private volatile long lastActiveTime;
     private volatile boolean authenticated;
-    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    // 大部分连接从不设置属性，第一次写入时才创建
+    private volatile Map<String, Object> attributes;
 
     public DefaultSession(String id, String clientId, Channel channel) {
         this.id = id;
@@ -88,21 +89,41 @@ public class DefaultSession implements Session {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T getAttribute(String key) {
-        return (T) attributes.get(key);
+        Map<String, Object> attributes = this.attributes;
+        return attributes == null
+                ? null
+                : (T) attributes.get(key);
     }
 
     @Override
     public void setAttribute(String key, Object value) {
-        attributes.put(key, value);
+        attributes().put(key, value);
     }
 
     @Override
     public void removeAttribute(String key) {
-        attributes.remove(key);
+        Map<String, Object> attributes = this.attributes;
+        if (attributes != null) {
+            attributes.remove(key);
+        }
     }
 
     @Override
     public Map<String, Object> getAttributes() {
+        return attributes();
+    }
+
+    private Map<String, Object> attributes() {
+        Map<String, Object> attributes = this.attributes;
+        if (attributes == null) {
+            synchronized (this) {
+                attributes = this.attributes;
+                if (attributes == null) {
+                    attributes = new ConcurrentHashMap<>(4);
+                    this.attributes = attributes;
+                }
+            }
+        }
         return attributes;
     }
 
@@ -15,21 +15,33 @@
  */
 package com.lei.java.gateway.server.session;
 
+import java.security.SecureRandom;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.netty.channel.Channel;
 
+import com.lei.java.gateway.server.config.GlobalNodeId;
+
 /**
  * 本地会话管理器实现
  */
 public class LocalSessionManager implements SessionManager {
+    // 节点 id 每次启动随机生成，作为前缀保证不同节点、同一节点重启前后生成的 id 不重复
+    private static final String SESSION_ID_PREFIX = Long.toUnsignedString(
+            UUID.fromString(GlobalNodeId.getNodeId())
+                    .getMostSignificantBits(),
+            Character.MAX_RADIX);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     // sessionId -> session
     protected final Map<String, Session> sessions = new ConcurrentHashMap<>();
     // clientId -> session
     protected final Map<String, Session> clientIdIndex = new ConcurrentHashMap<>();
+    private final AtomicLong sessionIdSequence = new AtomicLong();
 
     @Override
     public Session createSession(String clientId, Channel channel) {
@@ -103,9 +115,13 @@ public class LocalSessionManager implements SessionManager {
         return sessions.size();
     }
 
+    /**
+     * 节点前缀、节点内序号和随机数组成的 36 进制 id。前缀和序号保证全局唯一，随机部分使 id 无法根据已知的 id
+     * 推测出来
+     */
     private String generateSessionId() {
-        return UUID.randomUUID()
-                .toString()
-                .replace("-", "");
+        return SESSION_ID_PREFIX + '-'
+                + Long.toString(sessionIdSequence.incrementAndGet(), Character.MAX_RADIX) + '-'
+                + Long.toUnsignedString(RANDOM.nextLong(), Character.MAX_RADIX);
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.trace;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+
+/**
+ * <p>
+ * 单个在途请求的 trace 状态
+ * </p>
+ *
+ * @param span        服务端 span，未被采样时为 null
+ * @param startNanos  请求进入网关的时间
+ * @param attributes  指标属性
+ * @author 伍磊
+ */
+public record RequestTrace(
+        Span span,
+        long startNanos,
+        Attributes attributes
+) {
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.api.trace.TraceState;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+
+/**
+ * <p>
+ * 头部采样：在请求进入网关时决定是否追踪，未采样的请求不创建任何 span
+ * </p>
+ *
+ * @author 伍磊
+ */
+public final class TraceSampler {
+
+    private static final String GATEWAY_TRACE_BIZ_SAMPLE_RATIO = "GATEWAY_TRACE_BIZ_SAMPLE_RATIO";
+    private static final String GATEWAY_TRACE_SAMPLE_RATIO = "GATEWAY_TRACE_SAMPLE_RATIO";
+    private static final double DEFAULT_SAMPLE_RATIO = 1.0d;
+
+    private static final TraceSampler INSTANCE = new TraceSampler();
+
+    private final double bizSampleRatio;
+    private final double sampleRatio;
+
+    private TraceSampler() {
+        this(Double.parseDouble(System.getProperty(GATEWAY_TRACE_BIZ_SAMPLE_RATIO,
+                String.valueOf(DEFAULT_SAMPLE_RATIO))),
+                Double.parseDouble(System.getProperty(GATEWAY_TRACE_SAMPLE_RATIO,
+                        String.valueOf(DEFAULT_SAMPLE_RATIO))));
+    }
+
+    public TraceSampler(double bizSampleRatio, double sampleRatio) {
+        this.bizSampleRatio = bizSampleRatio;
+        this.sampleRatio = sampleRatio;
+    }
+
+    public static TraceSampler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 未采样请求的父 span。sampled 标志位为 0，ParentBased 采样器会据此丢弃所有子 span；
+     * traceId 和 spanId 每个请求随机生成，下游服务和日志仍然能区分不同的请求
+     */
+    public static Span unsampledParent() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long high;
+        long low;
+        do {
+            high = random.nextLong();
+            low = random.nextLong();
+        } while (high == 0 && low == 0);
+        long spanId;
+        do {
+            spanId = random.nextLong();
+        } while (spanId == 0);
+        return Span.wrap(SpanContext.create(TraceId.fromLongs(high, low),
+                SpanId.fromLong(spanId),
+                TraceFlags.getDefault(),
+                TraceState.getDefault()));
+    }
+
+    /**
+     * 是否追踪该消息，业务消息和其他消息（认证、心跳等）使用不同的采样率
+     */
+    public boolean shouldSample(byte msgType) {
+        double ratio = msgType == GatewayMessage.MESSAGE_TYPE_BIZ
+                ? bizSampleRatio
+                : sampleRatio;
+        if (ratio >= 1.0d) {
+            return true;
+        }
+        if (ratio <= 0d) {
+            return false;
+        }
+        return ThreadLocalRandom.current()
+                .nextDouble() < ratio;
+    }
+}
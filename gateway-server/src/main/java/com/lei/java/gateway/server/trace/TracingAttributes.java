@@ -16,8 +16,7 @@
 package com.lei.java.gateway.server.trace;
 
 import io.netty.util.AttributeKey;
-import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.api.trace.Span;
+import io.netty.util.collection.LongObjectMap;
 
 /**
  * <p>
@@ -27,15 +26,10 @@ import io.opentelemetry.api.trace.Span;
  * @author 伍磊
  */
 public final class TracingAttributes {
-    // 定义一个静态的、唯一的 AttributeKey 用于在 Channel 中存储和检索 Span
-    public static final AttributeKey<Span> SERVER_SPAN_KEY =
-            AttributeKey.valueOf("otel.server.span");
+    // 按 requestId 存储 Channel 上所有在途请求的 trace 状态，只在 EventLoop 中读写，因此不需要并发容器
+    public static final AttributeKey<LongObjectMap<RequestTrace>> INFLIGHT_REQUESTS_KEY =
+            AttributeKey.valueOf("otel.inflight.requests");
 
-    // 用于在 Channel 中暂存请求开始时间的 Key (使用纳秒更精确)
-    public static final AttributeKey<Long> START_TIME_KEY =
-            AttributeKey.valueOf("otel.start.time.nanos");
-
-    // 存储指标属性
-    public static final AttributeKey<Attributes> METRICS_ATTRIBUTES =
-            AttributeKey.valueOf("otel.metrics.attributes");
+    private TracingAttributes() {
+    }
 }
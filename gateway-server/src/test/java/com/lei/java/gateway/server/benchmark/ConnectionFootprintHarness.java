@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import com.lei.java.gateway.common.codec.GatewayMessageCodec;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.GatewayServer;
+
+import static com.lei.java.gateway.common.config.security.SecurityConfig.TOKEN_NAME;
+import static com.lei.java.gateway.common.config.security.SecurityConfig.TOKEN_VALUE;
+
+/**
+ * <p>
+ * 单连接内存占用测量
+ * </p>
+ * 在同一个 JVM 中启动服务端并建立 N 个回环连接，每个连接完成认证后保持空闲，统计 GC 后的堆内存和 Netty 直接内存增量。
+ * 先对只丢弃数据的裸 Netty 服务端测一遍作为基线，客户端在两次测量中完全相同，两者之差即为网关在每个连接上额外保留的状态。
+ *
+ * <pre>
+ * java -Xmx2g ... ConnectionFootprintHarness [connections]
+ * </pre>
+ *
+ * 同一进程内每个连接占用两个文件描述符，连接数受 {@code ulimit -n} 限制。
+ *
+ * @author 伍磊
+ */
+public class ConnectionFootprintHarness {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int BARE_PORT = 18190;
+    private static final int GATEWAY_PORT = 18191;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0
+                ? Integer.parseInt(args[0])
+                : 5_000;
+
+        EventLoopGroup clientGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        try {
+            // 预热，避免类加载和池化分配器初始化计入第一组结果
+            Footprint warmup = measureBare(clientGroup, Math.min(connections, 500));
+
+            Footprint bare = measureBare(clientGroup, connections);
+            Footprint gateway = measureGateway(clientGroup, connections);
+
+            System.out.printf("connections=%d (warmup heap %.1f B/conn)%n",
+                    connections,
+                    warmup.heapBytes / (double) Math.min(connections, 500));
+            System.out.printf("%-10s %16s %18s%n", "server", "heapBytes/conn", "directBytes/conn");
+            print("bare", bare, connections);
+            print("gateway", gateway, connections);
+            System.out.printf("%-10s %16.1f %18.1f%n",
+                    "overhead",
+                    (gateway.heapBytes - bare.heapBytes) / (double) connections,
+                    (gateway.directBytes - bare.directBytes) / (double) connections);
+        } finally {
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                    .sync();
+        }
+    }
+
+    private static void print(String name, Footprint footprint, int connections) {
+        System.out.printf("%-10s %16.1f %18.1f%n",
+                name,
+                footprint.heapBytes / (double) connections,
+                footprint.directBytes / (double) connections);
+    }
+
+    private static Footprint measureBare(EventLoopGroup clientGroup, int connections)
+            throws Exception {
+        EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+        EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        try {
+            Channel server = new ServerBootstrap().group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(DiscardHandler.INSTANCE)
+                    .bind(HOST, BARE_PORT)
+                    .sync()
+                    .channel();
+            Footprint footprint = measure(clientGroup, BARE_PORT, connections, false);
+            server.close()
+                    .sync();
+            return footprint;
+        } finally {
+            bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                    .sync();
+            workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                    .sync();
+        }
+    }
+
+    private static Footprint measureGateway(EventLoopGroup clientGroup, int connections)
+            throws Exception {
+        GatewayServer server = new GatewayServer(GATEWAY_PORT);
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        Thread.ofPlatform()
+                .daemon()
+                .start(() -> {
+                    try {
+                        server.start(started);
+                    } catch (Exception e) {
+                        started.completeExceptionally(e);
+                    }
+                });
+        started.get(10, TimeUnit.SECONDS);
+        try {
+            return measure(clientGroup, GATEWAY_PORT, connections, true);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Footprint measure(
+            EventLoopGroup clientGroup,
+            int port,
+            int connections,
+            boolean awaitAuth) throws Exception {
+        CountDownLatch authenticated = new CountDownLatch(awaitAuth
+                ? connections
+                : 0);
+        Bootstrap bootstrap = new Bootstrap().group(clientGroup)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new GatewayMessageCodec())
+                                .addLast(new ChannelInboundHandlerAdapter() {
+                                    @Override
+                                    public void channelRead(ChannelHandlerContext ctx,
+                                            Object msg) {
+                                        authenticated.countDown();
+                                        ReferenceCountUtil.release(msg);
+                                    }
+                                });
+                    }
+                });
+
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        List<Channel> clients = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Channel channel = bootstrap.connect(HOST, port)
+                    .sync()
+                    .channel();
+            channel.writeAndFlush(authMessage(i));
+            clients.add(channel);
+        }
+        if (!authenticated.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(
+                    "auth not finished, remaining=" + authenticated.getCount());
+        }
+        // 等待服务端处理完所有写出
+        Thread.sleep(500);
+        long heapAfter = usedHeap();
+        long directAfter = usedDirect();
+
+        for (Channel client : clients) {
+            client.close()
+                    .sync();
+        }
+        return new Footprint(heapAfter - heapBefore, directAfter - directBefore);
+    }
+
+    private static GatewayMessage authMessage(int i) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_AUTH);
+        message.setClientId("footprint-client-" + i);
+        message.setRequestId(i);
+        message.getExtensions()
+                .put(TOKEN_NAME, TOKEN_VALUE);
+        return message;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 分配器实际向操作系统申请的直接内存，包括池化 chunk 中尚未分配出去的部分
+     */
+    private static long usedDirect() {
+        if (ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider provider) {
+            return provider.metric()
+                    .usedDirectMemory();
+        }
+        return 0;
+    }
+
+    @ChannelHandler.Sharable
+    private static final class DiscardHandler extends ChannelInboundHandlerAdapter {
+        private static final DiscardHandler INSTANCE = new DiscardHandler();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private record Footprint(long heapBytes, long directBytes) {
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.AbstractScheduledEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+
+import com.lei.java.gateway.server.handler.IdleDetector;
+
+/**
+ * <p>
+ * 空闲检测模式对比
+ * </p>
+ * 建立 N 个 in-VM 连接，分别对比不加空闲检测、每个 Channel 一个 IdleStateHandler、共享时间轮三种情况下
+ * EventLoop 定时任务队列的长度以及每个连接的堆内存占用。
+ *
+ * <pre>
+ * java -Xmx4g ... IdleDetectionBenchmark [connections]
+ * </pre>
+ *
+ * @author 伍磊
+ */
+public class IdleDetectionBenchmark {
+
+    private static final int EVENT_LOOPS = 4;
+    private static final int ROUNDS = 3;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0
+                ? Integer.parseInt(args[0])
+                : 100_000;
+
+        // 预热一次，避免类加载影响第一组结果
+        run(null, 1_000);
+
+        Result baseline = best(null, connections);
+        Result handler = best(IdleDetector.Mode.HANDLER, connections);
+        Result wheel = best(IdleDetector.Mode.WHEEL, connections);
+
+        System.out.printf("connections=%d, eventLoops=%d%n", connections, EVENT_LOOPS);
+        System.out.printf("%-10s %16s %20s%n", "mode", "scheduledTasks", "idleBytes/conn");
+        print("none", baseline, baseline, connections);
+        print("handler", handler, baseline, connections);
+        print("wheel", wheel, baseline, connections);
+    }
+
+    /**
+     * GC 后的堆占用仍有抖动，每种模式跑多轮取最小值
+     */
+    private static Result best(IdleDetector.Mode mode, int connections) throws Exception {
+        Result best = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            Result result = run(mode, connections);
+            if (best == null || result.heapBytes < best.heapBytes) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    private static void print(String name, Result result, Result baseline, int connections) {
+        System.out.printf("%-10s %16d %20.1f%n",
+                name,
+                result.scheduledTasks,
+                (result.heapBytes - baseline.heapBytes) / (double) connections);
+    }
+
+    private static Result run(IdleDetector.Mode mode, int connections) throws Exception {
+        IdleDetector detector = mode == null
+                ? null
+                : new IdleDetector(mode, TIMEOUT_MILLIS, 1000);
+        EventLoopGroup group =
+                new MultiThreadIoEventLoopGroup(EVENT_LOOPS, LocalIoHandler.newFactory());
+        LocalAddress address = new LocalAddress("idle-benchmark-" + System.nanoTime());
+        List<Channel> clients = new ArrayList<>(connections);
+        try {
+            Channel server = new ServerBootstrap().group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            if (detector != null) {
+                                ch.pipeline()
+                                        .addLast(detector.newHandler());
+                            }
+                            ch.pipeline()
+                                    .addLast(NoopHandler.INSTANCE);
+                        }
+                    })
+                    .bind(address)
+                    .sync()
+                    .channel();
+
+            Bootstrap bootstrap = new Bootstrap().group(group)
+                    .channel(LocalChannel.class)
+                    .handler(NoopHandler.INSTANCE);
+            long before = usedHeap();
+            for (int i = 0; i < connections; i++) {
+                // 显式指定本地地址，随机分配的临时地址在大量连接时会冲突
+                clients.add(bootstrap.connect(address, new LocalAddress(address.id() + "-" + i))
+                        .sync()
+                        .channel());
+            }
+            // 等待所有服务端 Channel 完成初始化
+            Thread.sleep(500);
+            long after = usedHeap();
+            int scheduledTasks = scheduledTasks(group);
+
+            for (Channel client : clients) {
+                client.close()
+                        .sync();
+            }
+            server.close()
+                    .sync();
+            return new Result(scheduledTasks, after - before);
+        } finally {
+            group.shutdownGracefully(100, 1000, TimeUnit.MILLISECONDS)
+                    .sync();
+        }
+    }
+
+    private static int scheduledTasks(EventLoopGroup group) throws Exception {
+        Field field = AbstractScheduledEventExecutor.class.getDeclaredField("scheduledTaskQueue");
+        field.setAccessible(true);
+        int total = 0;
+        for (EventExecutor executor : group) {
+            // 定时任务队列不是线程安全的，在 EventLoop 内读取
+            total += executor.submit(() -> {
+                Collection<?> queue = (Collection<?>) field.get(executor);
+                return queue == null
+                        ? 0
+                        : queue.size();
+            })
+                    .get();
+        }
+        return total;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @ChannelHandler.Sharable
+    private static final class NoopHandler extends ChannelInboundHandlerAdapter {
+        private static final NoopHandler INSTANCE = new NoopHandler();
+    }
+
+    private record Result(int scheduledTasks, long heapBytes) {
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.lei.java.gateway.common.config.nacos.NacosConfig;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.loadbalancer.ConsistentHashLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.InstanceSnapshot;
+import com.lei.java.gateway.server.route.loadbalancer.LeastRequestLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.LoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.PeakEwmaLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.RandomLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.RoundRobinLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.SmoothWeightedLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.WeightedLoadBalancer;
+import com.lei.java.gateway.server.route.nacos.NacosServiceRegistry;
+
+/**
+ * <p>
+ * 负载均衡选择的耗时和分配
+ * </p>
+ * {@code snapshot} 在预先构建好的快照上选择，对应路由时实例列表没有变化的情况；{@code list} 每次从实例列表
+ * 重新构建快照，对应改造前每次过滤实例列表的做法；{@code nacosRegistry} 从 Nacos 注册中心取实例列表，
+ * 和路由时一样按引用判断快照是否需要重建。配合 {@code -prof gc} 查看每次选择分配的字节数。
+ *
+ * <pre>
+ * java ... LoadBalancerBenchmark [jmh 参数，例如 -prof gc]
+ * </pre>
+ *
+ * @author 伍磊
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoadBalancerBenchmark {
+
+    private static final String BIZ_TYPE = "benchmark";
+
+    @Benchmark
+    public ServiceInstance snapshot(Instances instances) {
+        return instances.loadBalancer.select(instances.snapshot, instances.message);
+    }
+
+    @Benchmark
+    public ServiceInstance list(Instances instances) {
+        return instances.loadBalancer.select(instances.list);
+    }
+
+    @Benchmark
+    public ServiceInstance nacosRegistry(Instances instances) {
+        List<ServiceInstance> registered = instances.registry.getServices(BIZ_TYPE);
+        InstanceSnapshot snapshot = instances.registrySnapshot;
+        if (snapshot == null || snapshot.source() != registered) {
+            snapshot = InstanceSnapshot.of(registered);
+            instances.registrySnapshot = snapshot;
+        }
+        return instances.loadBalancer.select(snapshot, instances.message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(LoadBalancerBenchmark.class.getSimpleName())
+                .parent(new CommandLineOptions(args))
+                .build()).run();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Instances {
+
+        @Param({"4", "64"})
+        int size;
+
+        @Param({"random", "roundRobin", "weighted", "leastRequest", "peakEwma", "consistentHash",
+            "smoothWeighted"})
+        String balancer;
+
+        List<ServiceInstance> list;
+        InstanceSnapshot snapshot;
+        LoadBalancer loadBalancer;
+        GatewayMessage message;
+        NacosServiceRegistry registry;
+        volatile InstanceSnapshot registrySnapshot;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            list = new ArrayList<>(size);
+            List<Instance> nacosInstances = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                double weight = 1 + i % 5;
+                list.add(new ServiceInstance("127.0.0.1", 9000 + i, weight, Map.of(), true, true));
+                Instance instance = new Instance();
+                instance.setIp("127.0.0.1");
+                instance.setPort(9000 + i);
+                instance.setWeight(weight);
+                nacosInstances.add(instance);
+            }
+            registry = new NacosServiceRegistry(namingService(nacosInstances),
+                    new NacosConfig("127.0.0.1:8848"),
+                    null);
+            snapshot = InstanceSnapshot.of(list);
+            message = new GatewayMessage();
+            message.setClientId("benchmark-client");
+            loadBalancer = switch (balancer) {
+                case "random" -> new RandomLoadBalancer();
+                case "roundRobin" -> new RoundRobinLoadBalancer();
+                case "leastRequest" -> new LeastRequestLoadBalancer();
+                case "peakEwma" -> new PeakEwmaLoadBalancer();
+                case "consistentHash" -> new ConsistentHashLoadBalancer();
+                case "smoothWeighted" -> new SmoothWeightedLoadBalancer();
+                default -> new WeightedLoadBalancer();
+            };
+        }
+
+        /**
+         * 不连接 Nacos 服务端，查询时返回固定的实例列表
+         */
+        private static NamingService namingService(List<Instance> nacosInstances) {
+            return (NamingService) Proxy.newProxyInstance(NamingService.class.getClassLoader(),
+                    new Class<?>[] {NamingService.class},
+                    (_, method, _) -> switch (method.getName()) {
+                        case "getServerStatus" -> "UP";
+                        case "getAllInstances" -> nacosInstances;
+                        default -> null;
+                    });
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+
+/**
+ * <p>
+ * HTTP/1.1 上游请求延迟
+ * </p>
+ * 在同一个 JVM 中启动一个原样返回请求体的 HTTP 服务端，通过 {@link DefaultConnectionManager} 以不同的并发数发送请求，
+ * 统计端到端延迟的分位数和吞吐。响应体和请求体不一致或者超时计为失败，用来发现响应对应到了错误的请求或者丢失。
+ *
+ * <pre>
+ * java ... UpstreamLatencyBenchmark [requestsPerRound]
+ * </pre>
+ *
+ * @author 伍磊
+ */
+public class UpstreamLatencyBenchmark {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int PORT = 18192;
+    private static final int[] CONCURRENCY = {1, 16, 64};
+    private static final long TIMEOUT_MILLIS = 2000;
+    private static final long STALL_SECONDS = 60;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0
+                ? Integer.parseInt(args[0])
+                : 100_000;
+
+        EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+        EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+        try {
+            Channel server = new ServerBootstrap().group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                    .addLast(new HttpServerCodec())
+                                    .addLast(new HttpObjectAggregator(65536))
+                                    .addLast(new EchoHandler());
+                        }
+                    })
+                    .bind(HOST, PORT)
+                    .sync()
+                    .channel();
+            ServiceInstance instance = new ServiceInstance(HOST, PORT);
+
+            System.out.printf("%-12s %10s %10s %10s %10s %12s %10s%n",
+                    "concurrency",
+                    "p50(us)",
+                    "p99(us)",
+                    "p999(us)",
+                    "max(us)",
+                    "req/s",
+                    "failed");
+            for (int concurrency : CONCURRENCY) {
+                // 每一轮使用新的连接，一轮里的连接出了问题不影响下一轮
+                DefaultConnectionManager connectionManager = new DefaultConnectionManager();
+                try {
+                    // 预热，同时让连接池扩到需要的大小
+                    run(connectionManager, instance, concurrency, requests / 10);
+                    print(concurrency, requests, run(connectionManager,
+                            instance,
+                            concurrency,
+                            requests));
+                } finally {
+                    connectionManager.close();
+                }
+            }
+            server.close()
+                    .sync();
+        } finally {
+            bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                    .sync();
+            workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                    .sync();
+        }
+    }
+
+    private static void print(int concurrency, int requests, Result result) {
+        if (result == null) {
+            System.out.printf("%-12d %s%n", concurrency, "stalled");
+            return;
+        }
+        long[] latencies = result.latencies;
+        Arrays.sort(latencies);
+        System.out.printf("%-12d %10d %10d %10d %10d %12.0f %10d%n",
+                concurrency,
+                percentile(latencies, 0.50),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                latencies[latencies.length - 1] / 1000,
+                requests / (result.elapsedNanos / 1e9),
+                result.failures);
+    }
+
+    /**
+     * 闭环压测：concurrency 个调用方，每个调用方收到响应之后才发出下一个请求
+     *
+     * @return 没有在限定时间内完成时返回 null
+     */
+    private static Result run(
+            DefaultConnectionManager connectionManager,
+            ServiceInstance instance,
+            int concurrency,
+            int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger issued = new AtomicInteger();
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            sendNext(connectionManager, instance, issued, requests, latencies, failures, done);
+        }
+        // 响应丢失之后同一个连接上的请求可能全部超时，不再继续等待
+        if (!done.await(STALL_SECONDS, TimeUnit.SECONDS)) {
+            return null;
+        }
+        return new Result(latencies, System.nanoTime() - start, failures.get());
+    }
+
+    private static void sendNext(
+            DefaultConnectionManager connectionManager,
+            ServiceInstance instance,
+            AtomicInteger issued,
+            int requests,
+            long[] latencies,
+            AtomicLong failures,
+            CountDownLatch done) {
+        int index = issued.getAndIncrement();
+        if (index >= requests) {
+            return;
+        }
+        String body = Integer.toString(index);
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType("bench.echo");
+        message.setRequestId(index);
+        message.setClientId("bench");
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        // 丢失的响应按超时计入失败，而不是让压测一直等下去
+        message.setDeadline(System.currentTimeMillis() + TIMEOUT_MILLIS);
+
+        long start = System.nanoTime();
+        connectionManager.getConnection(instance)
+                .thenCompose(connection -> connection.send(message))
+                .whenComplete((response, throwable) -> {
+                    latencies[index] = System.nanoTime() - start;
+                    if (throwable != null || response.getBody() == null
+                            || !body.equals(new String(response.getBody(),
+                                    StandardCharsets.UTF_8))) {
+                        failures.incrementAndGet();
+                    }
+                    if (response != null) {
+                        response.releaseContent();
+                    }
+                    done.countDown();
+                    sendNext(connectionManager,
+                            instance,
+                            issued,
+                            requests,
+                            latencies,
+                            failures,
+                            done);
+                });
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1000;
+    }
+
+    private record Result(long[] latencies, long elapsedNanos, long failures) {
+    }
+
+    private static final class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK,
+                    request.content()
+                            .retain());
+            response.headers()
+                    .setInt(HttpHeaderNames.CONTENT_LENGTH,
+                            response.content()
+                                    .readableBytes());
+            ctx.writeAndFlush(response);
+        }
+    }
+}
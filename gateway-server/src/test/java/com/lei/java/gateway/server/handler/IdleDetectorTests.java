@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 时间轮空闲检测测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class IdleDetectorTests {
+
+    private static final long TIMEOUT_MILLIS = 100;
+    private static final long TICK_MILLIS = 10;
+
+    @Test
+    public void testReaderIdleFiredAfterTimeout() {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel channel = newChannel(events);
+
+        advance(channel, TIMEOUT_MILLIS - TICK_MILLIS);
+        assertThat(events).isEmpty();
+
+        advance(channel, TICK_MILLIS);
+        assertThat(events).containsExactly(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+
+        // 持续空闲时每个超时周期再触发一次
+        advance(channel, TIMEOUT_MILLIS);
+        assertThat(events).containsExactly(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT,
+                IdleStateEvent.READER_IDLE_STATE_EVENT);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testReadPostponesReaderIdle() {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel channel = newChannel(events);
+
+        advance(channel, TIMEOUT_MILLIS / 2);
+        channel.writeInbound("ping");
+        advance(channel, TIMEOUT_MILLIS / 2 + TICK_MILLIS);
+        assertThat(events).isEmpty();
+
+        advance(channel, TIMEOUT_MILLIS / 2);
+        assertThat(events).containsExactly(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testClosedChannelLeavesWheel() {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel channel = newChannel(events);
+        IdleTimingWheel wheel = ((WheelIdleStateHandler) channel.pipeline()
+                .first()).wheel();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        channel.close();
+        // EmbeddedChannel 关闭后不再执行定时任务，直接推进时间轮
+        for (long i = 0; i <= TIMEOUT_MILLIS; i += TICK_MILLIS) {
+            wheel.tick();
+        }
+        assertThat(events).isEmpty();
+        assertThat(wheel.size()).isZero();
+        channel.finishAndReleaseAll();
+    }
+
+    private static EmbeddedChannel newChannel(List<Object> events) {
+        IdleDetector detector =
+                new IdleDetector(IdleDetector.Mode.WHEEL, TIMEOUT_MILLIS, TICK_MILLIS);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        // 冻结时间，定时任务只随 advanceTimeBy 推进，不受测试执行耗时影响
+        channel.freezeTime();
+        channel.pipeline()
+                .addLast(detector.newHandler(), new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        events.add(evt);
+                    }
+                });
+        return channel;
+    }
+
+    private static void advance(EmbeddedChannel channel, long millis) {
+        for (long i = 0; i < millis; i += TICK_MILLIS) {
+            channel.advanceTimeBy(TICK_MILLIS, TimeUnit.MILLISECONDS);
+            channel.runScheduledPendingTasks();
+        }
+    }
+}
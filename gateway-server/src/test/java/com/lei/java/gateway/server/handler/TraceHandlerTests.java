@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.collection.LongObjectMap;
+import io.opentelemetry.api.trace.SpanContext;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.trace.RequestTrace;
+import com.lei.java.gateway.server.trace.TraceSampler;
+
+import static com.lei.java.gateway.server.trace.TracingAttributes.INFLIGHT_REQUESTS_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * trace handler 测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class TraceHandlerTests {
+
+    @Test
+    public void testPipelinedRequestsMatchedByRequestId() {
+        EmbeddedChannel channel = newChannel(new TraceSampler(1.0d, 1.0d));
+
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 1L));
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 2L));
+        LongObjectMap<RequestTrace> inflight = inflight(channel);
+        assertThat(inflight).hasSize(2);
+        RequestTrace first = inflight.get(1L);
+
+        // 响应乱序返回，只结束对应的请求
+        channel.writeOutbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 2L));
+        assertThat(inflight).hasSize(1);
+        assertThat(inflight.get(1L)).isSameAs(first);
+
+        channel.writeOutbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 1L));
+        assertThat(inflight).isEmpty();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testPushDoesNotCompleteInflightRequest() {
+        EmbeddedChannel channel = newChannel(new TraceSampler(1.0d, 1.0d));
+
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 7L));
+        // 推送给客户端的消息即使 requestId 相同也不是响应
+        channel.writeOutbound(message(GatewayMessage.MESSAGE_TYPE_PUSH, 7L));
+        assertThat(inflight(channel)).containsKey(7L);
+
+        channel.writeOutbound(message(GatewayMessage.MESSAGE_TYPE_ERROR, 7L));
+        assertThat(inflight(channel)).isEmpty();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testUnsampledRequestsSkipSpans() {
+        EmbeddedChannel channel = newChannel(new TraceSampler(0d, 1.0d));
+
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 1L));
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_HEARTBEAT, 2L));
+
+        LongObjectMap<RequestTrace> inflight = inflight(channel);
+        assertThat(inflight.get(1L)
+                .span()).isNull();
+        assertThat(inflight.get(2L)
+                .span()).isNotNull();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testUnsampledParentsHaveDistinctTraceIds() {
+        SpanContext first = TraceSampler.unsampledParent()
+                .getSpanContext();
+        SpanContext second = TraceSampler.unsampledParent()
+                .getSpanContext();
+
+        // 只清除 sampled 标志，不同请求的 trace 仍然可以区分
+        assertThat(first.isValid()).isTrue();
+        assertThat(first.isSampled()).isFalse();
+        assertThat(first.getTraceId()).isNotEqualTo(second.getTraceId());
+        assertThat(first.getSpanId()).isNotEqualTo(second.getSpanId());
+    }
+
+    @Test
+    public void testInflightRequestsReleasedOnClose() {
+        EmbeddedChannel channel = newChannel(new TraceSampler(1.0d, 1.0d));
+
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_BIZ, 1L));
+        channel.writeInbound(message(GatewayMessage.MESSAGE_TYPE_PUSH_HEARTBEAT, 2L));
+        assertThat(inflight(channel)).hasSize(1);
+
+        channel.close();
+        assertThat(inflight(channel)).isNull();
+        channel.finishAndReleaseAll();
+    }
+
+    private static EmbeddedChannel newChannel(TraceSampler sampler) {
+        return new EmbeddedChannel(new TraceInboundHandler(sampler), new TraceOutboundHandler());
+    }
+
+    private static LongObjectMap<RequestTrace> inflight(EmbeddedChannel channel) {
+        return channel.attr(INFLIGHT_REQUESTS_KEY)
+                .get();
+    }
+
+    private static GatewayMessage message(byte msgType, long requestId) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(msgType);
+        message.setRequestId(requestId);
+        message.setClientId("client-1");
+        return message;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 实例并发上限测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class ConcurrencyLimiterTests {
+
+    private static final ServiceInstance INSTANCE = new ServiceInstance("127.0.0.1", 9001);
+    private static final String BIZ_TYPE = "order.query";
+    private static final long BASE_RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final RouteConfig.ConcurrencyConfig config = new RouteConfig.ConcurrencyConfig();
+
+    @BeforeEach
+    public void setUp() {
+        config.setEnabled(true);
+        config.setInitialLimit(10);
+        config.setMinLimit(2);
+        config.setMaxLimit(100);
+    }
+
+    @Test
+    public void testInFlightCappedAtLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(INSTANCE)).isFalse();
+        assertThat(limiter.isSaturated(INSTANCE)).isTrue();
+
+        // 没有发出的请求归还名额，不影响上限
+        limiter.release(INSTANCE);
+        assertThat(limiter.isSaturated(INSTANCE)).isFalse();
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(10);
+        assertThat(limiter.inFlight(INSTANCE)).isEqualTo(9);
+    }
+
+    @Test
+    public void testLimitGrowsWhileFullyUsedAndFast() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(INSTANCE);
+        }
+
+        // 上限一直用满并且 RTT 正常，每个响应加 1 / limit
+        for (int i = 0; i < 12; i++) {
+            limiter.release(INSTANCE, BIZ_TYPE, BASE_RTT, false);
+            assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+            now.addAndGet(BASE_RTT);
+        }
+
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(11);
+        assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+    }
+
+    @Test
+    public void testLimitNotRaisedWhenUnderused() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.tryAcquire(INSTANCE);
+            limiter.release(INSTANCE, BIZ_TYPE, BASE_RTT, false);
+        }
+
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(10);
+    }
+
+    @Test
+    public void testSlowResponsesBackOffOncePerRtt() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+        acquireAndRelease(limiter, BASE_RTT, false);
+
+        // 同一轮 RTT 内的多个慢响应只下调一次
+        acquireAndRelease(limiter, BASE_RTT * 5, false);
+        acquireAndRelease(limiter, BASE_RTT * 5, false);
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(9);
+
+        now.addAndGet(BASE_RTT);
+        acquireAndRelease(limiter, BASE_RTT * 5, false);
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(8);
+
+        // 超时同样下调，并且不低于下限
+        for (int i = 0; i < 20; i++) {
+            now.addAndGet(BASE_RTT);
+            acquireAndRelease(limiter, 0, true);
+        }
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(2);
+    }
+
+    @Test
+    public void testBaselineMeasuredPerBizType() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+        acquireAndRelease(limiter, BASE_RTT, false);
+
+        // 慢接口的正常延迟和它自己的基准比较，不算拥塞
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(BASE_RTT);
+            assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+            limiter.release(INSTANCE, "report.export", BASE_RTT * 20, false);
+        }
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(10);
+
+        // 同一个业务类型变慢仍然下调
+        acquireAndRelease(limiter, BASE_RTT * 5, false);
+        assertThat(limiter.limit(INSTANCE)).isEqualTo(9);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertThat(new RouteConfig.ConcurrencyConfig().isEnabled()).isFalse();
+    }
+
+    @Test
+    public void testDisabledNeverLimits() {
+        config.setMaxLimit(0);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config, now::get);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+        }
+        assertThat(limiter.isSaturated(INSTANCE)).isFalse();
+        assertThat(limiter.instances()).isEmpty();
+    }
+
+    private void acquireAndRelease(ConcurrencyLimiter limiter, long rttNanos, boolean dropped) {
+        assertThat(limiter.tryAcquire(INSTANCE)).isTrue();
+        limiter.release(INSTANCE, BIZ_TYPE, rttNanos, dropped);
+    }
+}
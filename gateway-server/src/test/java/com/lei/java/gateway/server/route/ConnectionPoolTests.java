@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.Connection;
+import com.lei.java.gateway.server.route.connection.ConnectionPool;
+import com.lei.java.gateway.server.route.connection.RequestNotSentException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 上游连接池测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class ConnectionPoolTests {
+
+    private static final ServiceInstance INSTANCE = new ServiceInstance("127.0.0.1", 9001);
+
+    // 连接池发起的每一次建连
+    private final List<CompletableFuture<Connection>> connects = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testAcquireWaitsForFirstConnection() {
+        ConnectionPool pool = newPool(1, 4, 60_000);
+
+        CompletableFuture<Connection> first = pool.acquire();
+        CompletableFuture<Connection> second = pool.acquire();
+        // 等待者共享同一次建连
+        assertThat(connects).hasSize(1);
+        assertThat(first).isNotDone();
+
+        Connection connection = connection(0);
+        connects.getFirst()
+                .complete(connection);
+
+        assertThat(first).isCompletedWithValue(connection);
+        assertThat(second).isCompletedWithValue(connection);
+        assertThat(pool.getConnections()).containsExactly(connection);
+    }
+
+    @Test
+    public void testLeastPendingConnectionSelected() {
+        ConnectionPool pool = newPool(1, 2, 60_000);
+        Connection busy = connection(3);
+        Connection idle = connection(1);
+        fill(pool, busy, idle);
+
+        assertThat(pool.acquire()).isCompletedWithValue(idle);
+    }
+
+    @Test
+    public void testPoolGrowsInBackgroundUntilMaxSize() {
+        ConnectionPool pool = newPool(1, 2, 60_000);
+        Connection busy = connection(2);
+        fill(pool, busy);
+
+        // 所有连接都在处理请求，后台扩容，当前请求不等待；同一时间只有一个扩容的连接在建立
+        assertThat(pool.acquire()).isCompletedWithValue(busy);
+        assertThat(pool.acquire()).isCompletedWithValue(busy);
+        assertThat(connects).hasSize(1);
+
+        Connection added = connection(1);
+        connects.getLast()
+                .complete(added);
+        assertThat(pool.getConnections()).containsExactly(busy, added);
+
+        // 达到最大连接数之后不再扩容
+        when(added.getPendingCount()).thenReturn(3);
+        pool.acquire();
+        assertThat(connects).hasSize(1);
+    }
+
+    @Test
+    public void testIdleConnectionsEvictedDownToMinSize() {
+        ConnectionPool pool = newPool(1, 4, 1_000);
+        Connection first = connection(0);
+        Connection second = connection(0);
+        Connection dead = connection(0);
+        fill(pool, first, second, dead);
+        long idleSince = System.currentTimeMillis() - 5_000;
+        when(first.getLastActiveTime()).thenReturn(idleSince);
+        when(second.getLastActiveTime()).thenReturn(idleSince);
+        when(dead.isActive()).thenReturn(false);
+
+        pool.evictIdle();
+
+        assertThat(pool.getConnections()).containsExactly(first);
+        verify(second).close();
+        verify(dead).close();
+        verify(first, never()).close();
+    }
+
+    @Test
+    public void testEvictionRefillsMinSize() {
+        ConnectionPool pool = newPool(2, 4, 1_000);
+        fill(pool, connection(0));
+
+        pool.evictIdle();
+
+        assertThat(connects).hasSize(1);
+    }
+
+    @Test
+    public void testWarmUpOpensMinSizeBeforeAvailable() {
+        ConnectionPool pool = newPool(3, 4, 60_000);
+
+        CompletableFuture<Void> warmUp = pool.warmUp();
+        assertThat(connects).hasSize(3);
+        // 预热完成之前负载均衡跳过这个实例
+        assertThat(pool.isAvailable()).isFalse();
+
+        connects.forEach(connect -> connect.complete(connection(0)));
+        assertThat(warmUp).isCompleted();
+        assertThat(pool.isAvailable()).isTrue();
+        assertThat(pool.getConnections()).hasSize(3);
+    }
+
+    @Test
+    public void testReconnectWithBackoffAfterFailure() throws InterruptedException {
+        ConnectionPool pool = newPool(1, 4, 60_000, 50, 100);
+
+        pool.warmUp();
+        connects.getFirst()
+                .completeExceptionally(new ConnectException("Connection refused"));
+
+        // 退避期间不可用，请求直接失败，不再建连
+        assertThat(pool.isAvailable()).isFalse();
+        assertThat(pool.acquire()).failsWithin(0, TimeUnit.MILLISECONDS)
+                .withThrowableOfType(Exception.class)
+                .withCauseInstanceOf(RequestNotSentException.class);
+        assertThat(connects).hasSize(1);
+
+        // 后台持续重连，失败后退避时间增长
+        waitFor(() -> connects.size() == 2);
+        connects.getLast()
+                .completeExceptionally(new ConnectException("Connection refused"));
+        waitFor(() -> connects.size() == 3);
+        Connection connection = connection(0);
+        connects.getLast()
+                .complete(connection);
+
+        assertThat(pool.isAvailable()).isTrue();
+        assertThat(pool.acquire()).isCompletedWithValue(connection);
+    }
+
+    @Test
+    public void testLostConnectionReplenished() {
+        ConnectionPool pool = newPool(1, 4, 60_000);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Connection lost = connection(0);
+        when(lost.getChannel()).thenReturn(channel);
+        pool.warmUp();
+        connects.getFirst()
+                .complete(lost);
+        connects.clear();
+
+        when(lost.isActive()).thenReturn(false);
+        channel.close();
+
+        assertThat(pool.getConnections()).isEmpty();
+        assertThat(connects).hasSize(1);
+    }
+
+    @Test
+    public void testClosedPoolStopsReconnecting() throws InterruptedException {
+        ConnectionPool pool = newPool(1, 4, 60_000, 10, 10);
+
+        pool.warmUp();
+        pool.close();
+        connects.getFirst()
+                .completeExceptionally(new ConnectException("Connection refused"));
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(connects).hasSize(1);
+        assertThat(pool.isAvailable()).isFalse();
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize, long idleTimeoutMillis) {
+        return newPool(minSize, maxSize, idleTimeoutMillis, 100, 30_000);
+    }
+
+    private ConnectionPool newPool(
+            int minSize,
+            int maxSize,
+            long idleTimeoutMillis,
+            long reconnectBaseDelayMillis,
+            long reconnectMaxDelayMillis) {
+        return new ConnectionPool(INSTANCE, _ -> {
+            CompletableFuture<Connection> future = new CompletableFuture<>();
+            connects.add(future);
+            return future;
+        },
+                minSize,
+                maxSize,
+                idleTimeoutMillis,
+                reconnectBaseDelayMillis,
+                reconnectMaxDelayMillis);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    /**
+     * 把连接依次放入池中：空池时等待建连，之后让池中的连接都处于繁忙状态触发扩容
+     */
+    private void fill(ConnectionPool pool, Connection... connections) {
+        for (Connection connection : connections) {
+            List<Connection> existing = List.copyOf(pool.getConnections());
+            List<Integer> pending = new ArrayList<>();
+            for (Connection c : existing) {
+                pending.add(c.getPendingCount());
+                when(c.getPendingCount()).thenReturn(1);
+            }
+            pool.acquire();
+            connects.getLast()
+                    .complete(connection);
+            for (int i = 0; i < existing.size(); i++) {
+                when(existing.get(i)
+                        .getPendingCount()).thenReturn(pending.get(i));
+            }
+        }
+        connects.clear();
+    }
+
+    private static Connection connection(int pending) {
+        Connection connection = mock(Connection.class);
+        when(connection.isActive()).thenReturn(true);
+        when(connection.getPendingCount()).thenReturn(pending);
+        when(connection.getLastActiveTime()).thenReturn(System.currentTimeMillis());
+        return connection;
+    }
+}
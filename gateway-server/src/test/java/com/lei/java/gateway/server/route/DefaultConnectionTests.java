@@ -19,6 +19,7 @@ import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
@@ -30,6 +31,7 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.MultiThreadIoEventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.nio.NioIoHandler;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -40,10 +42,15 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.lei.java.gateway.common.constants.GatewayConstant;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
 import com.lei.java.gateway.common.route.ServiceInstance;
 import com.lei.java.gateway.server.route.connection.DefaultConnection;
+import com.lei.java.gateway.server.route.connection.RequestNotSentException;
+import com.lei.java.gateway.server.route.connection.UpstreamRequest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * <p>
@@ -148,7 +155,6 @@ public class DefaultConnectionTests {
 
         // 构建 DefaultConnection
         DefaultConnection defaultConnection = new DefaultConnection(
-                bootstrap,
                 clientChannel,
                 new ServiceInstance("127.0.0.1", port));
 
@@ -166,10 +172,12 @@ public class DefaultConnectionTests {
             assertThat(clientChannel.isActive()).isFalse();
             assertThat(defaultConnection.isActive()).isFalse();
 
-            // 等待 2s 重连
-            TimeUnit.SECONDS.sleep(2);
-            assertThat(defaultConnection.isActive()).isTrue();
-            assertThat(clientChannel.isActive()).isFalse();
+            // 连接自身不重连，由连接池补充新的连接；断开之后的请求直接失败
+            GatewayMessage message = new GatewayMessage();
+            message.setRequestId(1L);
+            assertThatThrownBy(() -> defaultConnection.send(message)
+                    .get(1, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(RequestNotSentException.class);
 
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
@@ -177,81 +185,72 @@ public class DefaultConnectionTests {
     }
 
     @Test
-    public void testReconnectFailure() throws InterruptedException, ExecutionException {
-        int port = 8080 + RANDOM.nextInt(100);
-
-        // 启动服务端
-        ServerBootstrap serverBootstrap = new ServerBootstrap();
-        CompletableFuture<Channel> serverChannelFuture = new CompletableFuture<>();
-        CompletableFuture<Channel> serverSideClientChannelFuture = new CompletableFuture<>();
+    public void testPendingRequestExpiresAtDeadline() {
+        // 上游收到请求但永远不响应
+        EmbeddedChannel channel = new EmbeddedChannel();
+        DefaultConnection connection = new DefaultConnection(channel,
+                new ServiceInstance("127.0.0.1", 8080));
 
-        new Thread(() -> {
-            serverBootstrap.group(BOSS_GROUP, WORKER_GROUP)
-                    .channel(NioServerSocketChannel.class)
-                    .childHandler(new ChannelInitializer<NioSocketChannel>() {
-                        @Override
-                        protected void initChannel(NioSocketChannel ch) throws Exception {
-                            serverSideClientChannelFuture.complete(ch);
-                            ChannelPipeline pipeline = ch.pipeline();
-                            pipeline.addLast(new StringDecoder());
-                            pipeline.addLast(new StringEncoder());
-                            pipeline.addLast(new SimpleChannelInboundHandler<String>() {
-                                @Override
-                                protected void channelRead0(ChannelHandlerContext ctx, String msg)
-                                        throws Exception {
-                                    ctx.writeAndFlush(msg);
-                                }
-                            });
-                        }
-                    });
-            ChannelFuture channelFuture = serverBootstrap.bind(port)
-                    .syncUninterruptibly();
-            Channel serverChannel = channelFuture.channel();
-            serverChannelFuture.complete(serverChannel);
-            serverChannel.closeFuture()
-                    .syncUninterruptibly();
-        }).start();
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setRequestId(1L);
+        message.setDeadline(System.currentTimeMillis() + 200);
+        CompletableFuture<GatewayMessage> future = connection.send(message);
+        UpstreamRequest request = channel.readOutbound();
+        assertThat(request.message()).isSameAs(message);
 
-        serverChannelFuture.get();
+        assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(TimeoutException.class)
+                .hasMessageContaining(RequestDeadline.ERROR_DEADLINE_EXCEEDED);
 
-        // 启动客户端
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(WORKER_GROUP)
-                .channel(NioSocketChannel.class)
-                .handler(new ChannelInitializer<NioSocketChannel>() {
-                    @Override
-                    protected void initChannel(NioSocketChannel ch) throws Exception {
-                        ChannelPipeline pipeline = ch.pipeline();
-                        pipeline.addLast(new StringDecoder());
-                        pipeline.addLast(new StringEncoder());
-                    }
-                });
-        ChannelFuture channelFuture = bootstrap.connect("127.0.0.1", port)
-                .syncUninterruptibly();
-        Channel clientChannel = channelFuture.channel();
+        // 超时之后到达的响应直接忽略
+        GatewayMessage late = new GatewayMessage();
+        late.setRequestId(1L);
+        connection.handleResponse(request.correlationId(), late);
+        assertThat(future).isCompletedExceptionally();
+        connection.close();
+    }
 
-        // 构建 DefaultConnection
-        DefaultConnection defaultConnection = new DefaultConnection(
-                bootstrap,
-                clientChannel,
-                new ServiceInstance("127.0.0.1", port));
+    @Test
+    public void testDeadlineResolvedWithoutExtensions() {
+        GatewayMessage message = new GatewayMessage();
+        message.setExtensions(null);
+        assertThat(RequestDeadline.resolve(message, 0)).isEqualTo(RequestDeadline.NONE);
+        assertThat(message.getExtensions()).isNull();
 
-        // 关闭
-        serverSideClientChannelFuture.get()
-                .close()
-                .syncUninterruptibly();
+        // 有配置的超时时间时截止时间记录在消息上，不写入扩展字段
+        long deadline = RequestDeadline.resolve(message, 1000);
+        assertThat(deadline).isNotEqualTo(RequestDeadline.NONE);
+        assertThat(RequestDeadline.of(message)).isEqualTo(deadline);
+        assertThat(message.getExtensions()).isNull();
+    }
 
-        // 关闭服务端
-        Channel serverChannel = serverChannelFuture.get();
-        serverChannel.close()
-                .syncUninterruptibly();
+    @Test
+    public void testClientDeadlineIgnored() {
+        GatewayMessage message = new GatewayMessage();
+        message.getExtensions()
+                .put(GatewayConstant.EXTENSION_DEADLINE, "1");
+        message.getExtensions()
+                .put(GatewayConstant.EXTENSION_TIMEOUT, "500");
 
-        // 等待重连超时
-        TimeUnit.SECONDS.sleep(5);
-        assertThat(defaultConnection.isActive()).isFalse();
-        // 单次连接数量
-        assertThat(defaultConnection.getRetryCount()
-                .get()).isEqualTo(DefaultConnection.MAX_RETRY_TIMES);
+        // 客户端只能指定相对超时，传入的截止时间被移除，不会转发给上游
+        long now = System.currentTimeMillis();
+        long deadline = RequestDeadline.resolve(message, 0);
+        assertThat(deadline).isBetween(now + 500, System.currentTimeMillis() + 500);
+        assertThat(message.getExtensions()).doesNotContainKey(GatewayConstant.EXTENSION_DEADLINE);
     }
 
+    @Test
+    public void testExpiredRequestNotSent() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        DefaultConnection connection = new DefaultConnection(channel,
+                new ServiceInstance("127.0.0.1", 8080));
+
+        GatewayMessage message = new GatewayMessage();
+        message.setRequestId(2L);
+        message.setDeadline(System.currentTimeMillis() - 1);
+        assertThat(connection.send(message)).isCompletedExceptionally();
+        assertThat((Object) channel.readOutbound()).isNull();
+        connection.close();
+    }
 }
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+import com.lei.java.gateway.server.route.connection.Connection;
+import com.lei.java.gateway.server.route.connection.ConnectionClosedException;
+import com.lei.java.gateway.server.route.connection.ConnectionManager;
+import com.lei.java.gateway.server.route.connection.RequestNotSentException;
+import com.lei.java.gateway.server.route.loadbalancer.RoundRobinLoadBalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 路由服务测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class DefaultRouteServiceTests {
+
+    private static final String BIZ_TYPE = "order.query";
+    private static final ServiceInstance SLOW = new ServiceInstance("127.0.0.1", 9001);
+    private static final ServiceInstance FAST = new ServiceInstance("127.0.0.1", 9002);
+
+    @Mock
+    private ServiceRegistry registry;
+    @Mock
+    private ConnectionManager connectionManager;
+
+    // 每个实例上发出的请求
+    private final Map<ServiceInstance, CompletableFuture<GatewayMessage>> sent =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger sendCount = new AtomicInteger();
+    private final RouteConfig routeConfig = new RouteConfig();
+    private final RouteConfig.BizRouteConfig bizConfig = new RouteConfig.BizRouteConfig();
+
+    @BeforeEach
+    public void setUp() {
+        routeConfig.getBiz()
+                .put(BIZ_TYPE, bizConfig);
+        when(registry.getServices(BIZ_TYPE)).thenReturn(List.of(SLOW, FAST));
+        for (ServiceInstance instance : List.of(SLOW, FAST)) {
+            Connection connection = mock(Connection.class);
+            when(connection.send(any())).thenAnswer(_ -> {
+                CompletableFuture<GatewayMessage> future = new CompletableFuture<>();
+                sendCount.incrementAndGet();
+                sent.put(instance, future);
+                return future;
+            });
+            when(connectionManager.getConnection(instance))
+                    .thenReturn(CompletableFuture.completedFuture(connection));
+            when(connectionManager.isAvailable(instance)).thenReturn(true);
+        }
+    }
+
+    @Test
+    public void testUnavailableInstanceSkipped() throws Exception {
+        when(connectionManager.isAvailable(SLOW)).thenReturn(false);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+
+        // SLOW 正在重连，轮询负载均衡只能选到 FAST
+        assertThat(sent).containsOnlyKeys(FAST);
+        GatewayMessage response = request();
+        sent.get(FAST)
+                .complete(response);
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(response);
+    }
+
+    @Test
+    public void testHedgedRequestWinsAndLoserCancelled() throws Exception {
+        DefaultRouteService routeService = newRouteService(50, 10);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        // 轮询负载均衡，第一个请求发往 SLOW
+        assertThat(sent).containsOnlyKeys(SLOW);
+
+        waitFor(() -> sent.containsKey(FAST));
+        GatewayMessage response = request();
+        sent.get(FAST)
+                .complete(response);
+
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(response);
+        assertThat(sent.get(SLOW)).isCancelled();
+    }
+
+    @Test
+    public void testNoHedgeWhenPrimaryRespondsInTime() throws Exception {
+        DefaultRouteService routeService = newRouteService(200, 10);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        GatewayMessage response = request();
+        sent.get(SLOW)
+                .complete(response);
+
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(response);
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertThat(sent).containsOnlyKeys(SLOW);
+    }
+
+    @Test
+    public void testNoHedgeWhenBudgetExhausted() throws Exception {
+        DefaultRouteService routeService = newRouteService(20, 0);
+        // 初始余额用完之后，预算为 0 不再对冲
+        for (int i = 0; i < 10; i++) {
+            sent.clear();
+            routeService.route(request());
+            waitFor(() -> sent.size() == 2);
+        }
+
+        sent.clear();
+        routeService.route(request());
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(sent).hasSize(1);
+    }
+
+    @Test
+    public void testNotSentRequestRetriedOnAnotherInstance() throws Exception {
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new RequestNotSentException("Connection is not active"));
+
+        // 非幂等的请求没有发出时同样可以重试
+        assertThat(sent).containsOnlyKeys(SLOW, FAST);
+        GatewayMessage response = request();
+        sent.get(FAST)
+                .complete(response);
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(response);
+    }
+
+    @Test
+    public void testSentRequestNotRetriedUnlessIdempotent() {
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+
+        assertThat(sent).containsOnlyKeys(SLOW);
+        assertThatThrownBy(() -> result.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ConnectionClosedException.class);
+    }
+
+    @Test
+    public void testIdempotentRequestReplayedWhenConnectionClosed() throws Exception {
+        DefaultRouteService routeService = newRouteService(0, 10);
+        bizConfig.setIdempotent(true);
+
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+
+        GatewayMessage response = request();
+        sent.get(FAST)
+                .complete(response);
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(response);
+    }
+
+    @Test
+    public void testNoRetryWhenBudgetExhausted() {
+        DefaultRouteService routeService = newRouteService(0, 0);
+        // 初始余额用完之后，预算为 0 不再重试
+        for (int i = 0; i < 10; i++) {
+            sent.clear();
+            routeService.route(request());
+            failFirstAttempt();
+            assertThat(sent).hasSize(2);
+        }
+
+        sent.clear();
+        CompletableFuture<GatewayMessage> result = routeService.route(request());
+        failFirstAttempt();
+        assertThat(sent).hasSize(1);
+        assertThat(result).isCompletedExceptionally();
+    }
+
+    @Test
+    public void testFailingInstanceEjected() {
+        routeConfig.getOutlier()
+                .setConsecutiveFailures(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+
+        // SLOW 被摘除之后，轮询只会选到 FAST
+        sent.clear();
+        routeService.route(request());
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(FAST);
+        assertThat(sendCount).hasValue(3);
+    }
+
+    @Test
+    public void testRemovedInstanceStateCleared() {
+        routeConfig.getConcurrency()
+                .setEnabled(true);
+        routeConfig.getOutlier()
+                .setConsecutiveFailures(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+        verify(registry).addInstanceRemovedListener(any());
+
+        routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+        assertThat(routeService.getConcurrencyLimiter()
+                .instances()).contains(SLOW);
+
+        // 实例离开注册中心后清理它的状态，重新加入时不再沿用之前的摘除
+        routeService.onInstanceRemoved(SLOW);
+        assertThat(routeService.getConcurrencyLimiter()
+                .instances()).doesNotContain(SLOW);
+        sent.clear();
+        routeService.route(request());
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(SLOW, FAST);
+    }
+
+    @Test
+    public void testReregisteredInstanceStateKept() {
+        routeConfig.getConcurrency()
+                .setEnabled(true);
+        routeConfig.getOutlier()
+                .setConsecutiveFailures(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        routeService.route(request());
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+
+        // 实例离开后在延迟清理之前重新注册，清理到期时保留它的状态，摘除仍然有效
+        when(registry.getAllServices()).thenReturn(Map.of(BIZ_TYPE, List.of(SLOW, FAST)));
+        routeService.onInstanceRemoved(SLOW);
+        assertThat(routeService.getConcurrencyLimiter()
+                .instances()).contains(SLOW);
+        sent.clear();
+        routeService.route(request());
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(FAST);
+    }
+
+    @Test
+    public void testSaturatedInstanceOverflowsToOthers() {
+        routeConfig.getConcurrency()
+                .setEnabled(true);
+        routeConfig.getConcurrency()
+                .setInitialLimit(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(SLOW);
+
+        // 轮询本该选 SLOW，但是 SLOW 已经到达上限，溢出到 FAST
+        routeService.route(request());
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(SLOW, FAST);
+        assertThat(sendCount).hasValue(2);
+
+        // 两个实例都到达上限，请求没有发出
+        CompletableFuture<GatewayMessage> rejected = routeService.route(request());
+        assertThat(sendCount).hasValue(2);
+        assertThat(rejected).isCompletedExceptionally();
+    }
+
+    @Test
+    public void testIdenticalConcurrentRequestsCoalesced() throws Exception {
+        bizConfig.setCoalesce(true);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        CompletableFuture<GatewayMessage> first = routeService.route(request(1L, "a"));
+        CompletableFuture<GatewayMessage> second = routeService.route(request(2L, "a"));
+        CompletableFuture<GatewayMessage> other = routeService.route(request(3L, "b"));
+        assertThat(sendCount).hasValue(2);
+
+        GatewayMessage response = request(1L, "a");
+        response.getExtensions()
+                .put("http_status", "200");
+        sent.get(SLOW)
+                .complete(response);
+
+        // 每个调用方拿到的响应都改写为自己的 requestId
+        assertThat(first.get(1, TimeUnit.SECONDS)
+                .getRequestId()).isEqualTo(1L);
+        GatewayMessage secondResponse = second.get(1, TimeUnit.SECONDS);
+        assertThat(secondResponse.getRequestId()).isEqualTo(2L);
+        assertThat(secondResponse.getBody()).isEqualTo(response.getBody());
+        assertThat(secondResponse.getExtensions()).containsEntry("http_status", "200");
+        assertThat(other).isNotDone();
+
+        // 上一个请求完成之后，相同的请求重新发出
+        routeService.route(request(4L, "a"));
+        assertThat(sendCount).hasValue(3);
+    }
+
+    @Test
+    public void testCoalescedResponseWithoutExtensions() throws Exception {
+        bizConfig.setCoalesce(true);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        routeService.route(request(1L, "a"));
+        CompletableFuture<GatewayMessage> second = routeService.route(request(2L, "a"));
+        GatewayMessage response = request(1L, "a");
+        response.setExtensions(null);
+        sent.get(SLOW)
+                .complete(response);
+
+        GatewayMessage secondResponse = second.get(1, TimeUnit.SECONDS);
+        assertThat(secondResponse.getRequestId()).isEqualTo(2L);
+        assertThat(secondResponse.getExtensions()).isNull();
+    }
+
+    @Test
+    public void testCoalescingCappedByMaxWaiters() {
+        bizConfig.setCoalesce(true);
+        routeConfig.setCoalesceMaxWaiters(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        routeService.route(request(1L, "a"));
+        routeService.route(request(2L, "a"));
+        routeService.route(request(3L, "a"));
+
+        assertThat(sendCount).hasValue(2);
+    }
+
+    @Test
+    public void testCoalescedRequestsShareFailure() {
+        bizConfig.setCoalesce(true);
+        DefaultRouteService routeService = newRouteService(0, 10);
+
+        CompletableFuture<GatewayMessage> first = routeService.route(request(1L, "a"));
+        CompletableFuture<GatewayMessage> second = routeService.route(request(2L, "a"));
+        sent.get(SLOW)
+                .completeExceptionally(new ConnectionClosedException("Connection closed"));
+
+        assertThat(sendCount).hasValue(1);
+        assertThatThrownBy(() -> second.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(ConnectionClosedException.class);
+        assertThat(first).isCompletedExceptionally();
+    }
+
+    @Test
+    public void testStreamingBizTypeForwardedToConnectionManager() {
+        bizConfig.setStream(true);
+        routeConfig.getOutlier()
+                .setConsecutiveFailures(1);
+        DefaultRouteService routeService = newRouteService(0, 10);
+        ResponseStream stream = mock(ResponseStream.class);
+
+        routeService.stream(request(), stream);
+
+        // 流式请求不经过连接池，由连接管理器单独建立连接
+        ArgumentCaptor<ResponseStream> captor = ArgumentCaptor.forClass(ResponseStream.class);
+        verify(connectionManager).stream(eq(SLOW), any(), captor.capture());
+        assertThat(sent).isEmpty();
+
+        // 响应头之前的失败计入异常检测，SLOW 被摘除
+        ConnectionClosedException cause = new ConnectionClosedException("Connection closed");
+        captor.getValue()
+                .onError(cause);
+        verify(stream).onError(cause);
+        routeService.route(request());
+        routeService.route(request());
+        assertThat(sent).containsOnlyKeys(FAST);
+    }
+
+    @Test
+    public void testNonStreamingBizTypeDeliversFullResponse() {
+        DefaultRouteService routeService = newRouteService(0, 10);
+        ResponseStream stream = mock(ResponseStream.class);
+
+        routeService.stream(request(), stream);
+        GatewayMessage response = request();
+        sent.get(SLOW)
+                .complete(response);
+
+        verify(stream).onResponse(response);
+        verify(connectionManager, never()).stream(any(), any(), any());
+    }
+
+    private DefaultRouteService newRouteService(long hedgeDelayMillis, double budgetPercent) {
+        routeConfig.setHedgeBudgetPercent(budgetPercent);
+        routeConfig.setRetryBudgetPercent(budgetPercent);
+        bizConfig.setHedgeDelayMillis(hedgeDelayMillis);
+        return new DefaultRouteService(registry,
+                new RoundRobinLoadBalancer(),
+                connectionManager,
+                routeConfig);
+    }
+
+    private void failFirstAttempt() {
+        sent.values()
+                .iterator()
+                .next()
+                .completeExceptionally(new RequestNotSentException("Connection is not active"));
+    }
+
+    private static GatewayMessage request() {
+        return request(1L, null);
+    }
+
+    private static GatewayMessage request(long requestId, String body) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType(BIZ_TYPE);
+        message.setRequestId(requestId);
+        message.setClientId("client-" + requestId);
+        if (body != null) {
+            message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return message;
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
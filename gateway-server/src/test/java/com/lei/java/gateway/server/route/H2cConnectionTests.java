@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.Connection;
+import com.lei.java.gateway.server.route.connection.ConnectionClosedException;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+import com.lei.java.gateway.server.route.connection.H2cConnection;
+import com.lei.java.gateway.server.route.connection.UpstreamProtocol;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p>
+ * HTTP/2 上游连接测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class H2cConnectionTests {
+
+    private static final String SLOW_BODY = "slow";
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private DefaultConnectionManager connectionManager;
+    private ServiceInstance instance;
+
+    @BeforeEach
+    public void setUp() {
+        group = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+        serverChannel = new ServerBootstrap().group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<NioSocketChannel>() {
+                    @Override
+                    protected void initChannel(NioSocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(Http2FrameCodecBuilder.forServer()
+                                        .build());
+                        ch.pipeline()
+                                .addLast(new Http2MultiplexHandler(new EchoStreamInitializer()));
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .syncUninterruptibly()
+                .channel();
+        int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        instance = new ServiceInstance("127.0.0.1",
+                port,
+                Map.of(UpstreamProtocol.METADATA_KEY, UpstreamProtocol.H2C.getValue()));
+        connectionManager = new DefaultConnectionManager();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionManager.close();
+        serverChannel.close()
+                .syncUninterruptibly();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                .syncUninterruptibly();
+    }
+
+    @Test
+    public void testConcurrentRequestsMatchedByStream() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+        assertThat(connection).isInstanceOf(H2cConnection.class);
+
+        // 慢请求不阻塞后面的请求
+        AtomicLong slowCompletedAt = new AtomicLong();
+        AtomicLong lastFastCompletedAt = new AtomicLong();
+        CompletableFuture<GatewayMessage> slow = connection.send(request(1L, SLOW_BODY))
+                .whenComplete((_, _) -> slowCompletedAt.set(System.nanoTime()));
+        List<CompletableFuture<GatewayMessage>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // 不同客户端的 requestId 可能相同，响应按 stream 匹配
+            responses.add(connection.send(request(1L, "body-" + i))
+                    .whenComplete((_, _) -> lastFastCompletedAt
+                            .accumulateAndGet(System.nanoTime(), Math::max)));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            GatewayMessage response = responses.get(i)
+                    .get(3, TimeUnit.SECONDS);
+            assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                    .isEqualTo("body-" + i);
+        }
+        assertThat(new String(slow.get(3, TimeUnit.SECONDS)
+                .getBody(), StandardCharsets.UTF_8)).isEqualTo(SLOW_BODY);
+        assertThat(slowCompletedAt.get()).isGreaterThan(lastFastCompletedAt.get());
+        // 完成回调在 get() 返回之后才可能执行完
+        long deadline = System.currentTimeMillis() + 1000;
+        while (connection.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertThat(connection.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void testCancelledRequestReleasesStream() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+
+        CompletableFuture<GatewayMessage> slow = connection.send(request(1L, SLOW_BODY));
+        slow.cancel(false);
+
+        assertThat(connection.getPendingCount()).isZero();
+        GatewayMessage response = connection.send(request(2L, "next"))
+                .get(3, TimeUnit.SECONDS);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).isEqualTo("next");
+        assertThat(connection.isActive()).isTrue();
+    }
+
+    @Test
+    public void testPendingRequestsFailWhenConnectionClosed() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+
+        CompletableFuture<GatewayMessage> slow = connection.send(request(1L, SLOW_BODY));
+        // 等请求写出
+        connection.send(request(2L, "fast"))
+                .get(3, TimeUnit.SECONDS);
+        connection.close();
+
+        assertThatThrownBy(() -> slow.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ConnectionClosedException.class);
+    }
+
+    private static GatewayMessage request(long requestId, String body) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType("test.h2c.service");
+        message.setRequestId(requestId);
+        message.setClientId("client-" + requestId);
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+
+    /**
+     * 上游：原样返回请求体，请求体为 slow 时延迟 2s 返回
+     */
+    private static final class EchoStreamInitializer
+            extends ChannelInitializer<Http2StreamChannel> {
+        @Override
+        protected void initChannel(Http2StreamChannel ch) {
+            ch.pipeline()
+                    .addLast(new Http2StreamFrameToHttpObjectCodec(true));
+            ch.pipeline()
+                    .addLast(new HttpObjectAggregator(65536));
+            ch.pipeline()
+                    .addLast(new SimpleChannelInboundHandler<FullHttpRequest>() {
+                        @Override
+                        protected void channelRead0(
+                                ChannelHandlerContext ctx,
+                                FullHttpRequest request) {
+                            String body = request.content()
+                                    .toString(StandardCharsets.UTF_8);
+                            FullHttpResponse response = new DefaultFullHttpResponse(
+                                    HttpVersion.HTTP_1_1,
+                                    HttpResponseStatus.OK,
+                                    Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+                            response.headers()
+                                    .setInt(HttpHeaderNames.CONTENT_LENGTH,
+                                            response.content()
+                                                    .readableBytes());
+                            if (SLOW_BODY.equals(body)) {
+                                ctx.executor()
+                                        .schedule(() -> ctx.writeAndFlush(response),
+                                                2,
+                                                TimeUnit.SECONDS);
+                            } else {
+                                ctx.writeAndFlush(response);
+                            }
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.ConnectionClosedException;
+import com.lei.java.gateway.server.route.connection.DefaultConnection;
+import com.lei.java.gateway.server.route.connection.HttpConnectionHandler;
+import com.lei.java.gateway.server.route.connection.RequestNotSentException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p>
+ * HTTP/1.1 上游连接处理器测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class HttpConnectionHandlerTests {
+
+    private static final int PIPELINING_DEPTH = 2;
+
+    private EmbeddedChannel channel;
+    private DefaultConnection connection;
+
+    @BeforeEach
+    public void setUp() {
+        // 不加 HTTP 编解码器，直接读写 FullHttpRequest 和 FullHttpResponse
+        channel = new EmbeddedChannel();
+        connection = new DefaultConnection(channel,
+                new ServiceInstance("127.0.0.1", 8080));
+        channel.pipeline()
+                .addLast(new HttpConnectionHandler(connection, PIPELINING_DEPTH));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connection.close();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testResponsesMatchedInOrderDespiteSameRequestId() throws Exception {
+        // 不同客户端的 requestId 可能相同
+        CompletableFuture<GatewayMessage> first = connection.send(request(1L, "a"));
+        CompletableFuture<GatewayMessage> second = connection.send(request(1L, "b"));
+        assertThat(readRequestBody()).isEqualTo("a");
+        assertThat(readRequestBody()).isEqualTo("b");
+
+        channel.writeInbound(response("A"));
+        channel.writeInbound(response("B"));
+
+        assertThat(body(first.get())).isEqualTo("A");
+        assertThat(first.get()
+                .getClientId()).isEqualTo("client-a");
+        assertThat(body(second.get())).isEqualTo("B");
+        assertThat(second.get()
+                .getClientId()).isEqualTo("client-b");
+    }
+
+    @Test
+    public void testRequestsBeyondPipeliningDepthQueued() throws Exception {
+        CompletableFuture<GatewayMessage> first = connection.send(request(1L, "a"));
+        connection.send(request(2L, "b"));
+        CompletableFuture<GatewayMessage> third = connection.send(request(3L, "c"));
+        assertThat(readRequestBody()).isEqualTo("a");
+        assertThat(readRequestBody()).isEqualTo("b");
+        assertThat((Object) channel.readOutbound()).isNull();
+        assertThat(connection.getPendingCount()).isEqualTo(3);
+
+        // 收到第一个响应之后腾出位置
+        channel.writeInbound(response("A"));
+        assertThat(body(first.get())).isEqualTo("A");
+        assertThat(readRequestBody()).isEqualTo("c");
+        assertThat(third).isNotDone();
+    }
+
+    @Test
+    public void testCancelledQueuedRequestNotWritten() {
+        connection.send(request(1L, "a"));
+        connection.send(request(2L, "b"));
+        CompletableFuture<GatewayMessage> third = connection.send(request(3L, "c"));
+        CompletableFuture<GatewayMessage> fourth = connection.send(request(4L, "d"));
+        third.cancel(false);
+        readRequestBody();
+        readRequestBody();
+
+        channel.writeInbound(response("A"));
+        assertThat(readRequestBody()).isEqualTo("d");
+        assertThat((Object) channel.readOutbound()).isNull();
+        assertThat(fourth).isNotDone();
+    }
+
+    @Test
+    public void testChannelClosedFailsWrittenAndQueuedRequests() {
+        CompletableFuture<GatewayMessage> first = connection.send(request(1L, "a"));
+        connection.send(request(2L, "b"));
+        CompletableFuture<GatewayMessage> queued = connection.send(request(3L, "c"));
+
+        connection.close();
+
+        // 已写出的请求上游可能已经处理，排队的请求确定没有发出
+        assertThatThrownBy(first::get).hasCauseInstanceOf(ConnectionClosedException.class);
+        assertThatThrownBy(queued::get).hasCauseInstanceOf(RequestNotSentException.class);
+        assertThat(connection.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void testExpiredWrittenRequestClosesConnection() {
+        // 上游一直不响应第一个请求，之后的响应都会被挡住
+        GatewayMessage hung = request(1L, "a");
+        hung.setDeadline(System.currentTimeMillis() + 100);
+        CompletableFuture<GatewayMessage> first = connection.send(hung);
+        CompletableFuture<GatewayMessage> second = connection.send(request(2L, "b"));
+        readRequestBody();
+        readRequestBody();
+
+        assertThatThrownBy(() -> first.get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThatThrownBy(() -> second.get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(ConnectionClosedException.class);
+        assertThat(connection.isActive()).isFalse();
+        assertThat(connection.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void testExpiredQueuedRequestKeepsConnection() {
+        connection.send(request(1L, "a"));
+        connection.send(request(2L, "b"));
+        GatewayMessage queued = request(3L, "c");
+        queued.setDeadline(System.currentTimeMillis() + 100);
+        CompletableFuture<GatewayMessage> third = connection.send(queued);
+
+        // 排队的请求还没有写出，超时不影响连接上的其他请求
+        assertThatThrownBy(() -> third.get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(connection.isActive()).isTrue();
+        assertThat(connection.getPendingCount()).isEqualTo(2);
+        readRequestBody();
+        readRequestBody();
+    }
+
+    @Test
+    public void testResponseContentRelayedAndHeadersFiltered() throws Exception {
+        CompletableFuture<GatewayMessage> future = connection.send(request(1L, "a"));
+        readRequestBody();
+
+        DefaultFullHttpResponse response = response("A");
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                .set("X-Internal-Trace", "upstream");
+        channel.writeInbound(response);
+
+        // HTTP 响应已经释放，响应体的 ByteBuf 由网关消息继续持有，没有复制
+        GatewayMessage message = future.get();
+        assertThat(response.refCnt()).isEqualTo(1);
+        assertThat(message.getContent()).isSameAs(response.content());
+        assertThat(message.getExtensions()).containsEntry("content-type", "application/json")
+                .containsEntry("http_status", "200")
+                .doesNotContainKey("X-Internal-Trace");
+        message.releaseContent();
+        assertThat(response.refCnt()).isZero();
+    }
+
+    private String readRequestBody() {
+        FullHttpRequest request = channel.readOutbound();
+        try {
+            return request.content()
+                    .toString(StandardCharsets.UTF_8);
+        } finally {
+            request.release();
+        }
+    }
+
+    private static GatewayMessage request(long requestId, String body) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType("order.query");
+        message.setRequestId(requestId);
+        message.setClientId("client-" + body);
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+
+    private static DefaultFullHttpResponse response(String body) {
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK,
+                Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    }
+
+    private static String body(GatewayMessage message) {
+        return new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+}
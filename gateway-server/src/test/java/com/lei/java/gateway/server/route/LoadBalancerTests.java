@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.constants.GatewayConstant;
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.loadbalancer.ConsistentHashLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.InstanceSnapshot;
+import com.lei.java.gateway.server.route.loadbalancer.LeastRequestLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.LoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.PeakEwmaLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.RoundRobinLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.SmoothWeightedLoadBalancer;
+import com.lei.java.gateway.server.route.loadbalancer.WeightedLoadBalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * <p>
+ * 实例快照和负载均衡测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class LoadBalancerTests {
+
+    private static final ServiceInstance A = instance(9001, 1, true);
+    private static final ServiceInstance B = instance(9002, 3, true);
+    private static final ServiceInstance C = instance(9003, 6, true);
+    private static final ServiceInstance DOWN = instance(9004, 5, false);
+    private static final int SAMPLES = 100;
+
+    @Test
+    public void testSnapshotKeepsOnlyEligibleInstances() {
+        List<ServiceInstance> source = List.of(A, DOWN, B);
+        InstanceSnapshot snapshot = InstanceSnapshot.of(source);
+
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.get(0)).isEqualTo(A);
+        assertThat(snapshot.get(1)).isEqualTo(B);
+        assertThat(snapshot.totalWeight()).isEqualTo(4);
+        assertThat(snapshot.source()).isSameAs(source);
+        assertThat(InstanceSnapshot.of(source)
+                .version()).isGreaterThan(snapshot.version());
+        assertThat(InstanceSnapshot.of(List.of(DOWN))
+                .isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testExcludingReusesSubset() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, B, C));
+
+        InstanceSnapshot withoutB = snapshot.excluding(B::equals);
+
+        assertThat(withoutB.size()).isEqualTo(2);
+        assertThat(withoutB.get(0)).isEqualTo(A);
+        assertThat(withoutB.get(1)).isEqualTo(C);
+        assertThat(withoutB.totalWeight()).isEqualTo(7);
+        // 相同的排除组合复用同一个子快照，版本号不变
+        assertThat(snapshot.excluding(B::equals)).isSameAs(withoutB);
+        assertThat(snapshot.excluding(C::equals)).isNotSameAs(withoutB);
+        assertThat(snapshot.excluding(instance -> false)).isSameAs(snapshot);
+        assertThat(snapshot.excluding(instance -> true)).isSameAs(InstanceSnapshot.EMPTY);
+    }
+
+    @Test
+    public void testWeightedSelectionFollowsWeights() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, B, C));
+        Map<ServiceInstance, Integer> counts = new HashMap<>();
+
+        // 均匀取遍 [0, 1)，别名表给出的比例应当和权重一致
+        int samples = SAMPLES * 10;
+        for (int i = 0; i < samples; i++) {
+            counts.merge(snapshot.selectWeighted((i + 0.5) / samples), 1, Integer::sum);
+        }
+
+        assertThat(counts.get(A) / (double) samples).isCloseTo(0.1, within(0.01));
+        assertThat(counts.get(B) / (double) samples).isCloseTo(0.3, within(0.01));
+        assertThat(counts.get(C) / (double) samples).isCloseTo(0.6, within(0.01));
+    }
+
+    @Test
+    public void testZeroWeightInstanceNeverSelected() {
+        ServiceInstance drained = instance(9005, 0, true);
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(drained, A));
+        WeightedLoadBalancer loadBalancer = new WeightedLoadBalancer();
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+        }
+        // 所有实例权重都为 0 时等概率选择，不会返回 null
+        assertThat(loadBalancer.select(List.of(drained))).isEqualTo(drained);
+    }
+
+    @Test
+    public void testRoundRobinCyclesThroughSnapshot() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, DOWN, B, C));
+        RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(B);
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(C);
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+        assertThat(loadBalancer.select(InstanceSnapshot.EMPTY)).isNull();
+    }
+
+    @Test
+    public void testLeastRequestAvoidsBackedUpInstance() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, B));
+        LeastRequestLoadBalancer loadBalancer = new LeastRequestLoadBalancer();
+        loadBalancer.onRequestStart(A);
+        loadBalancer.onRequestStart(A);
+
+        // 只有两个实例时每次都比较这两个，总是选在途请求少的 B
+        for (int i = 0; i < SAMPLES; i++) {
+            assertThat(loadBalancer.select(snapshot)).isEqualTo(B);
+        }
+
+        loadBalancer.onRequestStart(B);
+        loadBalancer.onRequestStart(B);
+        loadBalancer.onRequestStart(B);
+        loadBalancer.onRequestEnd(A, -1);
+        assertThat(loadBalancer.outstanding(A)).isEqualTo(1);
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+    }
+
+    @Test
+    public void testRemovedInstanceForgotten() {
+        LeastRequestLoadBalancer loadBalancer = new LeastRequestLoadBalancer();
+        loadBalancer.onRequestStart(A);
+        loadBalancer.onInstanceRemoved(A);
+        assertThat(loadBalancer.outstanding(A)).isZero();
+
+        // 下线之前发出的请求结束时不会重新创建计数
+        loadBalancer.onRequestEnd(A, -1);
+        assertThat(loadBalancer.outstanding(A)).isZero();
+        loadBalancer.onRequestStart(A);
+        assertThat(loadBalancer.outstanding(A)).isEqualTo(1);
+    }
+
+    @Test
+    public void testPeakEwmaPrefersFasterInstance() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, B));
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(60_000);
+        complete(loadBalancer, A, TimeUnit.MILLISECONDS.toNanos(10));
+        complete(loadBalancer, B, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(B);
+
+        // 得分为平均延迟乘以在途请求数加一
+        for (int i = 0; i < 10; i++) {
+            loadBalancer.onRequestStart(B);
+        }
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+        for (int i = 0; i < 10; i++) {
+            loadBalancer.onRequestEnd(B, -1);
+        }
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(B);
+
+        // 一次慢响应立即抬高平均值，之后的快响应只让它逐渐回落
+        complete(loadBalancer, B, TimeUnit.MILLISECONDS.toNanos(50));
+        complete(loadBalancer, B, TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+    }
+
+    @Test
+    public void testPeakEwmaProbesNewInstanceOneRequestAtATime() {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer(60_000);
+        complete(loadBalancer, A, TimeUnit.MILLISECONDS.toNanos(1));
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, C));
+
+        // 没有样本的新实例先得到一个探测请求，返回之前不再分配
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(C);
+        loadBalancer.onRequestStart(C);
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(A);
+
+        loadBalancer.onRequestEnd(C, TimeUnit.MICROSECONDS.toNanos(100));
+        assertThat(loadBalancer.select(snapshot)).isEqualTo(C);
+    }
+
+    @Test
+    public void testConsistentHashKeepsClientsOnSameInstance() {
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            instances.add(instance(9100 + i, 1, true));
+        }
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        InstanceSnapshot snapshot = InstanceSnapshot.of(instances);
+        Map<String, ServiceInstance> assigned = new HashMap<>();
+        for (int i = 0; i < SAMPLES * 10; i++) {
+            String clientId = "client-" + i;
+            ServiceInstance instance = loadBalancer.select(snapshot, message(clientId));
+            assertThat(loadBalancer.select(InstanceSnapshot.of(instances), message(clientId)))
+                    .isEqualTo(instance);
+            assigned.put(clientId, instance);
+        }
+        assertThat(assigned.values()).containsAll(instances);
+
+        // 摘掉一个实例，只有原来落在它上面的 clientId 换实例
+        ServiceInstance removed = instances.remove(2);
+        InstanceSnapshot shrunk = InstanceSnapshot.of(instances);
+        int kept = 0;
+        int others = 0;
+        for (Map.Entry<String, ServiceInstance> entry : assigned.entrySet()) {
+            ServiceInstance instance = loadBalancer.select(shrunk, message(entry.getKey()));
+            assertThat(instance).isNotEqualTo(removed);
+            if (!entry.getValue()
+                    .equals(removed)) {
+                others++;
+                if (instance.equals(entry.getValue())) {
+                    kept++;
+                }
+            }
+        }
+        assertThat(kept / (double) others).isGreaterThan(0.9);
+    }
+
+    @Test
+    public void testConsistentHashOverflowsWhenInstanceOverloaded() {
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(A, B, C));
+        ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer();
+        GatewayMessage message = message("hot-client");
+        ServiceInstance home = loadBalancer.select(snapshot, message);
+
+        // 共 4 个在途请求，原实例占 2 个，上限为 ceil(1.25 * (4 + 1) / 3) = 3
+        loadBalancer.onRequestStart(A);
+        loadBalancer.onRequestStart(B);
+        loadBalancer.onRequestStart(C);
+        loadBalancer.onRequestStart(home);
+        assertThat(loadBalancer.select(snapshot, message)).isEqualTo(home);
+
+        for (int i = 0; i < 5; i++) {
+            loadBalancer.onRequestStart(home);
+        }
+        ServiceInstance overflow = loadBalancer.select(snapshot, message);
+        assertThat(overflow).isNotEqualTo(home);
+        assertThat(loadBalancer.select(snapshot, message)).isEqualTo(overflow);
+
+        for (int i = 0; i < 6; i++) {
+            loadBalancer.onRequestEnd(home, -1);
+        }
+        assertThat(loadBalancer.select(snapshot, message)).isEqualTo(home);
+    }
+
+    @Test
+    public void testSmoothWeightedRoundRobinInterleaves() {
+        ServiceInstance a = instance(9201, 5, true);
+        ServiceInstance b = instance(9202, 1, true);
+        ServiceInstance c = instance(9203, 1, true);
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(a, b, c));
+        SmoothWeightedLoadBalancer loadBalancer = new SmoothWeightedLoadBalancer(0);
+
+        // nginx 的经典例子：权重 5:1:1，高权重实例的请求穿插在其他实例之间
+        List<ServiceInstance> expected = List.of(a, a, b, a, c, a, a);
+        for (int round = 0; round < 3; round++) {
+            for (ServiceInstance instance : expected) {
+                assertThat(loadBalancer.select(snapshot)).isEqualTo(instance);
+            }
+        }
+
+        // 小数权重按比例分配
+        ServiceInstance half = instance(9204, 0.5, true);
+        ServiceInstance oneAndHalf = instance(9205, 1.5, true);
+        InstanceSnapshot fractional = InstanceSnapshot.of(List.of(half, oneAndHalf));
+        Map<ServiceInstance, Integer> counts = new HashMap<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            counts.merge(loadBalancer.select(fractional), 1, Integer::sum);
+        }
+        assertThat(counts.get(half)).isEqualTo(SAMPLES / 4);
+    }
+
+    @Test
+    public void testSmoothWeightedPicksUpWeightChange() {
+        ServiceInstance a = instance(9211, 1, true);
+        ServiceInstance b = instance(9212, 1, true);
+        SmoothWeightedLoadBalancer loadBalancer = new SmoothWeightedLoadBalancer(0);
+        loadBalancer.select(InstanceSnapshot.of(List.of(a, b)));
+
+        // 注册中心推送了新的权重，实例本身仍然相等
+        ServiceInstance heavier = instance(9211, 3, true);
+        assertThat(heavier).isEqualTo(a);
+        InstanceSnapshot reweighted = InstanceSnapshot.of(List.of(heavier, b));
+        Map<ServiceInstance, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            counts.merge(loadBalancer.select(reweighted), 1, Integer::sum);
+        }
+        assertThat(counts).containsEntry(heavier, 3)
+                .containsEntry(b, 1);
+    }
+
+    @Test
+    public void testSlowStartRampsUpNewInstance() {
+        long now = System.currentTimeMillis();
+        ServiceInstance old = registered(9301, now - TimeUnit.HOURS.toMillis(1));
+        ServiceInstance started = registered(9302, now);
+        SmoothWeightedLoadBalancer loadBalancer = new SmoothWeightedLoadBalancer(60_000);
+        InstanceSnapshot snapshot = InstanceSnapshot.of(List.of(old, started));
+
+        assertThat(loadBalancer.effectiveWeight(old)).isEqualTo(1);
+        assertThat(loadBalancer.effectiveWeight(started)).isLessThan(0.2);
+
+        // 刚启动的实例只分到约 0.1 / 1.1 的请求
+        int picked = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (loadBalancer.select(snapshot)
+                    .equals(started)) {
+                picked++;
+            }
+        }
+        assertThat(picked).isBetween(1, 20);
+    }
+
+    private static ServiceInstance registered(int port, long timestamp) {
+        return new ServiceInstance("127.0.0.1",
+                port,
+                1,
+                Map.of(GatewayConstant.TIMESTAMP, Long.toString(timestamp)),
+                true,
+                true);
+    }
+
+    private static GatewayMessage message(String clientId) {
+        GatewayMessage message = new GatewayMessage();
+        message.setClientId(clientId);
+        return message;
+    }
+
+    private static void complete(LoadBalancer loadBalancer, ServiceInstance instance, long rtt) {
+        loadBalancer.onRequestStart(instance);
+        loadBalancer.onRequestEnd(instance, rtt);
+    }
+
+    private static ServiceInstance instance(int port, double weight, boolean healthy) {
+        return new ServiceInstance("127.0.0.1", port, weight, Map.of(), healthy, true);
+    }
+}
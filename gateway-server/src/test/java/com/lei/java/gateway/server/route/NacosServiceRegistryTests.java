@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.EventListener;
+import com.alibaba.nacos.api.naming.listener.NamingEvent;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.lei.java.gateway.common.config.nacos.NacosConfig;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.ConnectionManager;
+import com.lei.java.gateway.server.route.nacos.NacosServiceRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * Nacos 服务注册中心测试，不需要 Nacos 服务端
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class NacosServiceRegistryTests {
+
+    private static final String BIZ_TYPE = "order.query";
+    private static final String OTHER_BIZ_TYPE = "order.create";
+    private static final ServiceInstance FIRST = new ServiceInstance("127.0.0.1", 9001);
+    private static final ServiceInstance SECOND = new ServiceInstance("127.0.0.1", 9002);
+
+    private final NamingService namingService = mock(NamingService.class);
+    private final ConnectionManager connectionManager = mock(ConnectionManager.class);
+    private NacosServiceRegistry registry;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        when(namingService.getServerStatus()).thenReturn("UP");
+        when(namingService.getAllInstances(any(), nullable(String.class))).thenReturn(List.of());
+        when(connectionManager.warmUp(any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        registry = new NacosServiceRegistry(namingService,
+                new NacosConfig("127.0.0.1:8848"),
+                connectionManager);
+    }
+
+    @Test
+    public void testMembershipChangesWarmUpAndRemoveInstances() throws Exception {
+        EventListener listener = subscribe(BIZ_TYPE);
+
+        listener.onEvent(event(BIZ_TYPE, FIRST, SECOND));
+        verify(connectionManager).warmUp(FIRST);
+        verify(connectionManager).warmUp(SECOND);
+
+        // 已知的实例不重复预热，离开的实例关闭连接
+        listener.onEvent(event(BIZ_TYPE, FIRST));
+        verify(connectionManager, times(1)).warmUp(FIRST);
+        verify(connectionManager).removeInstance(SECOND);
+        verify(connectionManager, never()).removeInstance(FIRST);
+    }
+
+    @Test
+    public void testInstanceSharedByAnotherBizTypeKept() throws Exception {
+        EventListener listener = subscribe(BIZ_TYPE);
+        EventListener otherListener = subscribe(OTHER_BIZ_TYPE);
+        listener.onEvent(event(BIZ_TYPE, FIRST));
+        otherListener.onEvent(event(OTHER_BIZ_TYPE, FIRST));
+
+        listener.onEvent(event(BIZ_TYPE));
+        verify(connectionManager, never()).removeInstance(FIRST);
+
+        otherListener.onEvent(event(OTHER_BIZ_TYPE));
+        verify(connectionManager).removeInstance(FIRST);
+    }
+
+    @Test
+    public void testServicesServedFromLastPush() throws Exception {
+        Instance queried = new Instance();
+        queried.setIp(FIRST.getHost());
+        queried.setPort(FIRST.getPort());
+        when(namingService.getAllInstances(eq(BIZ_TYPE), nullable(String.class)))
+                .thenReturn(List.of(queried));
+
+        // 同一份实例列表每次返回同一个对象，实例快照不需要重建
+        List<ServiceInstance> services = registry.getServices(BIZ_TYPE);
+        assertThat(services).containsExactly(FIRST);
+        assertThat(registry.getServices(BIZ_TYPE)).isSameAs(services);
+        verify(namingService, times(1)).getAllInstances(eq(BIZ_TYPE), nullable(String.class));
+
+        EventListener listener = subscribe(BIZ_TYPE);
+        listener.onEvent(event(BIZ_TYPE, FIRST, SECOND));
+        assertThat(registry.getServices(BIZ_TYPE)).containsExactly(FIRST, SECOND)
+                .isNotSameAs(services);
+    }
+
+    private EventListener subscribe(String bizType) throws Exception {
+        registry.getServices(bizType);
+        // 同一个业务类型只订阅一次
+        registry.getServices(bizType);
+        ArgumentCaptor<EventListener> captor = ArgumentCaptor.forClass(EventListener.class);
+        verify(namingService).subscribe(eq(bizType), nullable(String.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private static NamingEvent event(String bizType, ServiceInstance... instances) {
+        List<Instance> nacosInstances = new ArrayList<>();
+        for (ServiceInstance serviceInstance : instances) {
+            Instance instance = new Instance();
+            instance.setIp(serviceInstance.getHost());
+            instance.setPort(serviceInstance.getPort());
+            instance.setWeight(serviceInstance.getWeight());
+            instance.setMetadata(serviceInstance.getMetadata());
+            nacosInstances.add(instance);
+        }
+        return new NamingEvent(bizType, nacosInstances);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.common.upstream.GatewayUpstreamHandler;
+import com.lei.java.gateway.server.route.connection.Connection;
+import com.lei.java.gateway.server.route.connection.ConnectionClosedException;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+import com.lei.java.gateway.server.route.connection.NativeConnection;
+import com.lei.java.gateway.server.route.connection.UpstreamProtocol;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * <p>
+ * 原生协议上游连接测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class NativeConnectionTests {
+
+    private static final String SLOW_BODY = "slow";
+    private static final String FAIL_BODY = "fail";
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private DefaultConnectionManager connectionManager;
+    private ServiceInstance instance;
+
+    @BeforeEach
+    public void setUp() {
+        group = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+        // 上游：原样返回请求体，请求体为 slow 时延迟 2s 返回，为 fail 时处理失败
+        serverChannel = new ServerBootstrap().group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(GatewayUpstreamHandler.initializer(request -> {
+                    String body = new String(request.getBody(), StandardCharsets.UTF_8);
+                    if (FAIL_BODY.equals(body)) {
+                        return CompletableFuture.failedFuture(
+                                new IllegalStateException("upstream failure"));
+                    }
+                    GatewayMessage response = new GatewayMessage();
+                    response.setBody(request.getBody());
+                    response.getExtensions()
+                            .put("echo-client", request.getClientId());
+                    return SLOW_BODY.equals(body)
+                            ? CompletableFuture.supplyAsync(() -> response,
+                                    CompletableFuture.delayedExecutor(2, TimeUnit.SECONDS))
+                            : CompletableFuture.completedFuture(response);
+                }))
+                .bind("127.0.0.1", 0)
+                .syncUninterruptibly()
+                .channel();
+        int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        instance = new ServiceInstance("127.0.0.1",
+                port,
+                Map.of(UpstreamProtocol.METADATA_KEY, UpstreamProtocol.NATIVE.getValue()));
+        connectionManager = new DefaultConnectionManager();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionManager.close();
+        serverChannel.close()
+                .syncUninterruptibly();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                .syncUninterruptibly();
+    }
+
+    @Test
+    public void testConcurrentRequestsMatchedByRequestId() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+        assertThat(connection).isInstanceOf(NativeConnection.class);
+
+        // 慢请求不阻塞后面的请求
+        AtomicLong slowCompletedAt = new AtomicLong();
+        AtomicLong lastFastCompletedAt = new AtomicLong();
+        CompletableFuture<GatewayMessage> slow = connection.send(request(1L, SLOW_BODY))
+                .whenComplete((_, _) -> slowCompletedAt.set(System.nanoTime()));
+        List<CompletableFuture<GatewayMessage>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // 不同客户端的 requestId 可能相同，写出时替换为连接内的编号
+            responses.add(connection.send(request(1L, "body-" + i))
+                    .whenComplete((_, _) -> lastFastCompletedAt
+                            .accumulateAndGet(System.nanoTime(), Math::max)));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            GatewayMessage response = responses.get(i)
+                    .get(3, TimeUnit.SECONDS);
+            assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                    .isEqualTo("body-" + i);
+            // 响应的 requestId 还原为客户端的
+            assertThat(response.getRequestId()).isEqualTo(1L);
+            assertThat(response.getExtensions()).containsEntry("echo-client", "client-1");
+        }
+        assertThat(new String(slow.get(3, TimeUnit.SECONDS)
+                .getBody(), StandardCharsets.UTF_8)).isEqualTo(SLOW_BODY);
+        assertThat(slowCompletedAt.get()).isGreaterThan(lastFastCompletedAt.get());
+    }
+
+    @Test
+    public void testUpstreamFailureReturnedAsError() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+
+        GatewayMessage response = connection.send(request(7L, FAIL_BODY))
+                .get(3, TimeUnit.SECONDS);
+        assertThat(response.getMsgType()).isEqualTo(GatewayMessage.MESSAGE_TYPE_ERROR);
+        assertThat(response.getRequestId()).isEqualTo(7L);
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8))
+                .isEqualTo("upstream failure");
+    }
+
+    @Test
+    public void testPendingRequestsFailWhenConnectionClosed() throws Exception {
+        Connection connection = connectionManager.getConnection(instance)
+                .get(3, TimeUnit.SECONDS);
+
+        CompletableFuture<GatewayMessage> slow = connection.send(request(1L, SLOW_BODY));
+        // 等请求写出
+        connection.send(request(2L, "fast"))
+                .get(3, TimeUnit.SECONDS);
+        connection.close();
+
+        assertThatThrownBy(() -> slow.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ConnectionClosedException.class);
+        assertThat(connection.getPendingCount()).isZero();
+    }
+
+    private static GatewayMessage request(long requestId, String body) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType("test.native.service");
+        message.setRequestId(requestId);
+        message.setClientId("client-" + requestId);
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}
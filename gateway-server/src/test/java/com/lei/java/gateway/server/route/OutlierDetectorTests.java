@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.config.RouteConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 异常实例检测测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class OutlierDetectorTests {
+
+    private static final ServiceInstance INSTANCE = new ServiceInstance("127.0.0.1", 9001);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final RouteConfig.OutlierConfig config = new RouteConfig.OutlierConfig();
+
+    @Test
+    public void testConsecutiveFailuresEject() {
+        config.setConsecutiveFailures(3);
+        OutlierDetector detector = new OutlierDetector(config, now::get);
+
+        detector.onFailure(INSTANCE);
+        detector.onFailure(INSTANCE);
+        // 中间的成功清零连续失败次数
+        detector.onSuccess(INSTANCE);
+        detector.onFailure(INSTANCE);
+        detector.onFailure(INSTANCE);
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+
+        detector.onFailure(INSTANCE);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+    }
+
+    @Test
+    public void testFailureRateEjects() {
+        config.setConsecutiveFailures(0);
+        config.setFailureRatePercent(50);
+        config.setMinRequests(10);
+        OutlierDetector detector = new OutlierDetector(config, now::get);
+
+        for (int i = 0; i < 9; i++) {
+            record(detector, i % 2 == 0);
+            now.addAndGet(100);
+        }
+        // 请求数不足，不按失败率判断
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+
+        record(detector, false);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+    }
+
+    @Test
+    public void testOldFailuresSlideOutOfWindow() {
+        config.setConsecutiveFailures(0);
+        config.setMinRequests(4);
+        config.setWindowMillis(1_000);
+        OutlierDetector detector = new OutlierDetector(config, now::get);
+
+        detector.onFailure(INSTANCE);
+        detector.onFailure(INSTANCE);
+        now.addAndGet(2_000);
+        detector.onSuccess(INSTANCE);
+        detector.onSuccess(INSTANCE);
+        detector.onSuccess(INSTANCE);
+        detector.onFailure(INSTANCE);
+
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+    }
+
+    @Test
+    public void testEjectionBacksOffAndProbesWhenHalfOpen() {
+        config.setConsecutiveFailures(1);
+        config.setBaseEjectionMillis(1_000);
+        config.setProbeIntervalMillis(500);
+        OutlierDetector detector = new OutlierDetector(config, now::get);
+
+        detector.onFailure(INSTANCE);
+        now.addAndGet(999);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+
+        // 到期后放行一个探测请求，判断本身不占用名额，选中之后领取，探测返回之前不再放行
+        now.addAndGet(1);
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+        long probe = detector.tryProbe(INSTANCE);
+        assertThat(probe).isNotEqualTo(OutlierDetector.NOT_PROBE);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+        assertThat(detector.tryProbe(INSTANCE)).isEqualTo(OutlierDetector.NOT_PROBE);
+
+        // 探测失败，摘除时长翻倍
+        detector.onFailure(INSTANCE, probe);
+        now.addAndGet(1_999);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+        now.addAndGet(1);
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+
+        // 探测成功，恢复正常
+        detector.onSuccess(INSTANCE, detector.tryProbe(INSTANCE));
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+        assertThat(detector.tryProbe(INSTANCE)).isEqualTo(OutlierDetector.NOT_PROBE);
+    }
+
+    @Test
+    public void testOnlyProbeResultDecidesRecovery() {
+        config.setConsecutiveFailures(1);
+        config.setBaseEjectionMillis(1_000);
+        config.setProbeIntervalMillis(500);
+        OutlierDetector detector = new OutlierDetector(config, now::get);
+
+        detector.onFailure(INSTANCE);
+        now.addAndGet(1_000);
+        long probe = detector.tryProbe(INSTANCE);
+
+        // 摘除之前发出的请求在探测期间返回，不计入
+        detector.onSuccess(INSTANCE);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+
+        // 探测请求一直没有返回，下一个间隔重新放行，之前的探测结果作废
+        now.addAndGet(500);
+        long nextProbe = detector.tryProbe(INSTANCE);
+        assertThat(nextProbe).isNotEqualTo(OutlierDetector.NOT_PROBE)
+                .isNotEqualTo(probe);
+        detector.onSuccess(INSTANCE, probe);
+        assertThat(detector.isEjected(INSTANCE)).isTrue();
+
+        detector.onSuccess(INSTANCE, nextProbe);
+        assertThat(detector.isEjected(INSTANCE)).isFalse();
+    }
+
+    @Test
+    public void testResponseFailureClassification() {
+        assertThat(OutlierDetector.isFailure(response(GatewayMessage.MESSAGE_TYPE_BIZ, "503")))
+                .isTrue();
+        assertThat(OutlierDetector.isFailure(response(GatewayMessage.MESSAGE_TYPE_BIZ, "404")))
+                .isFalse();
+        assertThat(OutlierDetector.isFailure(response(GatewayMessage.MESSAGE_TYPE_BIZ, null)))
+                .isFalse();
+        assertThat(OutlierDetector.isFailure(response(GatewayMessage.MESSAGE_TYPE_ERROR, null)))
+                .isTrue();
+    }
+
+    private static void record(OutlierDetector detector, boolean success) {
+        if (success) {
+            detector.onSuccess(INSTANCE);
+        } else {
+            detector.onFailure(INSTANCE);
+        }
+    }
+
+    private static GatewayMessage response(byte msgType, String status) {
+        GatewayMessage response = new GatewayMessage();
+        response.setMsgType(msgType);
+        if (status != null) {
+            response.getExtensions()
+                    .put("http_status", status);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * HTTP/1.1 流式请求的连接复用测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class StreamConnectionReuseTests {
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private DefaultConnectionManager connectionManager;
+    private ServiceInstance instance;
+
+    @BeforeEach
+    public void setUp() {
+        group = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+        // 上游：原样返回请求体，记录接受的连接数
+        serverChannel = new ServerBootstrap().group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        accepted.incrementAndGet();
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(65536))
+                                .addLast(new SimpleChannelInboundHandler<FullHttpRequest>() {
+                                    @Override
+                                    protected void channelRead0(
+                                            ChannelHandlerContext ctx,
+                                            FullHttpRequest request) {
+                                        ByteBuf body = request.content()
+                                                .retainedDuplicate();
+                                        DefaultFullHttpResponse response =
+                                                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                                                        HttpResponseStatus.OK,
+                                                        body);
+                                        response.headers()
+                                                .set(HttpHeaderNames.CONTENT_LENGTH,
+                                                        body.readableBytes());
+                                        ctx.writeAndFlush(response);
+                                    }
+                                });
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .syncUninterruptibly()
+                .channel();
+        int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        instance = new ServiceInstance("127.0.0.1", port);
+        connectionManager = new DefaultConnectionManager();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionManager.close();
+        serverChannel.close()
+                .syncUninterruptibly();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+                .syncUninterruptibly();
+    }
+
+    @Test
+    public void testCompletedStreamConnectionReused() throws Exception {
+        assertThat(stream("first")).isEqualTo("first");
+        assertThat(stream("second")).isEqualTo("second");
+        assertThat(stream("third")).isEqualTo("third");
+
+        // 响应结束后连接放回空闲连接，后面的流式请求不再新建连接
+        assertThat(accepted).hasValue(1);
+    }
+
+    private String stream(String body) throws Exception {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setRequestId(1L);
+        message.setClientId("client-1");
+        message.setBizType("test.stream");
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        connectionManager.stream(instance, message, new ResponseStream() {
+            private final ByteBuf received = Unpooled.buffer();
+            private Subscription subscription;
+
+            @Override
+            public void onResponse(GatewayMessage response) {
+                result.completeExceptionally(new IllegalStateException("not streamed"));
+            }
+
+            @Override
+            public void onHead(GatewayMessage head, Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request();
+            }
+
+            @Override
+            public void onChunk(ByteBuf chunk) {
+                received.writeBytes(chunk);
+                chunk.release();
+                subscription.request();
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(received.toString(StandardCharsets.UTF_8));
+                received.release();
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result.get(3, TimeUnit.SECONDS);
+    }
+}
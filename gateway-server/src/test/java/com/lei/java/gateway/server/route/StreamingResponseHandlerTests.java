@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.ConnectionClosedException;
+import com.lei.java.gateway.server.route.connection.StreamingResponseHandler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 流式响应处理器测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class StreamingResponseHandlerTests {
+
+    private final RecordingStream stream = new RecordingStream();
+    private final List<Channel> released = new ArrayList<>();
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    public void setUp() {
+        // 不加 HTTP 编解码器，直接写入 HttpResponse 和 HttpContent
+        channel = new EmbeddedChannel(new StreamingResponseHandler(request(),
+                stream,
+                new ServiceInstance("127.0.0.1", 8080),
+                Set.of("Content-Type"),
+                System.nanoTime(),
+                released::add));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        stream.chunks.forEach(ByteBuf::release);
+    }
+
+    @Test
+    public void testChunksDeliveredAsTheyArrive() {
+        DefaultHttpResponse head =
+                new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        head.headers()
+                .set("Content-Type", "text/plain")
+                .set("X-Internal", "secret");
+        channel.writeInbound(head);
+
+        assertThat(stream.head.getRequestId()).isEqualTo(7L);
+        assertThat(stream.head.getExtensions()).containsEntry("http_status", "200")
+                .containsEntry("Content-Type", "text/plain")
+                .doesNotContainKey("X-Internal");
+        assertThat(stream.head.getContent()).isNull();
+
+        channel.writeInbound(content("hello "));
+        assertThat(stream.chunks).hasSize(1);
+        assertThat(stream.completed).isFalse();
+
+        channel.writeInbound(new DefaultLastHttpContent(
+                Unpooled.copiedBuffer("world", StandardCharsets.UTF_8)));
+        assertThat(stream.chunks).extracting(chunk -> chunk.toString(StandardCharsets.UTF_8))
+                .containsExactly("hello ", "world");
+        assertThat(stream.completed).isTrue();
+        assertThat(stream.error).isNull();
+        // 响应结束后处理器移除，连接交还复用
+        assertThat(released).containsExactly(channel);
+        assertThat(channel.pipeline()
+                .get(StreamingResponseHandler.class)).isNull();
+        assertThat(channel.isOpen()).isTrue();
+
+        // 已经交还的连接不再受这个响应的取消影响
+        stream.subscription.cancel();
+        channel.runPendingTasks();
+        assertThat(channel.isOpen()).isTrue();
+    }
+
+    @Test
+    public void testConnectionClosedWhenUpstreamDisallowsKeepAlive() {
+        DefaultHttpResponse head =
+                new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        head.headers()
+                .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        channel.writeInbound(head);
+        channel.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+
+        assertThat(stream.completed).isTrue();
+        assertThat(released).isEmpty();
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    public void testEmptyLastContentCompletesWithoutChunk() {
+        channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.NO_CONTENT));
+        channel.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+
+        assertThat(stream.head.getExtensions()).containsEntry("http_status", "204");
+        assertThat(stream.chunks).isEmpty();
+        assertThat(stream.completed).isTrue();
+    }
+
+    @Test
+    public void testConnectionClosedMidResponseFails() {
+        channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK));
+        channel.writeInbound(content("partial"));
+
+        channel.close();
+
+        assertThat(stream.chunks).hasSize(1);
+        assertThat(stream.completed).isFalse();
+        assertThat(stream.error).isInstanceOf(ConnectionClosedException.class);
+    }
+
+    @Test
+    public void testCancelClosesWithoutError() {
+        channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK));
+
+        stream.subscription.cancel();
+        channel.runPendingTasks();
+
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(stream.error).isNull();
+        assertThat(stream.completed).isFalse();
+    }
+
+    private static DefaultHttpContent content(String text) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    }
+
+    private static GatewayMessage request() {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType("report.export");
+        message.setRequestId(7L);
+        message.setClientId("client-7");
+        return message;
+    }
+
+    private static final class RecordingStream implements ResponseStream {
+        private final List<ByteBuf> chunks = new ArrayList<>();
+        private GatewayMessage head;
+        private Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onResponse(GatewayMessage response) {
+            throw new AssertionError("streamed response expected");
+        }
+
+        @Override
+        public void onHead(GatewayMessage head, Subscription subscription) {
+            this.head = head;
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onChunk(ByteBuf chunk) {
+            chunks.add(chunk);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            error = cause;
+        }
+    }
+}
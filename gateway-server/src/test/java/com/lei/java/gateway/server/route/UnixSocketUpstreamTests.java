@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioServerDomainSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.common.route.ServiceInstance;
+import com.lei.java.gateway.server.route.connection.DefaultConnectionManager;
+import com.lei.java.gateway.server.route.connection.UpstreamTransport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * Unix domain socket 上游测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class UnixSocketUpstreamTests {
+
+    private static final String BIZ_TYPE = "test.http.service";
+
+    private final EventLoopGroup group =
+            new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+    private Path socket;
+    private DefaultConnectionManager connectionManager;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        socket = Files.createTempDirectory("gateway-uds")
+                .resolve("upstream.sock");
+        new ServerBootstrap().group(group)
+                .channel(NioServerDomainSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(65535))
+                                .addLast(new HttpRouteServiceTests.EchoHttpServerHandler());
+                    }
+                })
+                .bind(UnixDomainSocketAddress.of(socket))
+                .syncUninterruptibly();
+        connectionManager = new DefaultConnectionManager();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connectionManager.close();
+        group.shutdownGracefully()
+                .syncUninterruptibly();
+        Files.deleteIfExists(socket);
+    }
+
+    @Test
+    public void testRequestSentOverUnixDomainSocket() throws Exception {
+        // host 和 port 只用于标识实例，连接走元数据中的 socket 路径
+        ServiceInstance instance = new ServiceInstance("localhost",
+                0,
+                Map.of(UpstreamTransport.METADATA_KEY, socket.toString()));
+        assertThat(UpstreamTransport.of(instance)).isEqualTo(UpstreamTransport.UNIX);
+
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setRequestId(1L);
+        message.setClientId("uds-client");
+        message.setBizType(BIZ_TYPE);
+        message.setBody("{\"sidecar\":true}".getBytes(StandardCharsets.UTF_8));
+
+        GatewayMessage response = connectionManager.getConnection(instance)
+                .thenCompose(connection -> connection.send(message))
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.getExtensions()
+                .get("http_status")).isEqualTo("200");
+        assertThat(response.getBody()).isEqualTo(message.getBody());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.route.connection.UpstreamCompression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 上游压缩测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class UpstreamCompressionTests {
+
+    private static final String TEXT = "{\"items\":[" + "\"gateway\",".repeat(200) + "\"end\"]}";
+
+    @Test
+    public void testAcceptEncodingAdvertisedUnlessClientNegotiated() {
+        UpstreamCompression compression = new UpstreamCompression(true, 0);
+
+        FullHttpRequest request = compression.apply(request("{}"));
+        assertThat(request.headers()
+                .get(HttpHeaderNames.ACCEPT_ENCODING)).isEqualTo("gzip, deflate");
+        request.release();
+
+        // 客户端自己协商的编码原样发给上游
+        FullHttpRequest negotiated = request("{}");
+        negotiated.headers()
+                .set(HttpHeaderNames.ACCEPT_ENCODING, "br");
+        assertThat(compression.apply(negotiated)
+                .headers()
+                .get(HttpHeaderNames.ACCEPT_ENCODING)).isEqualTo("br");
+        negotiated.release();
+    }
+
+    @Test
+    public void testLargeRequestBodyCompressed() throws IOException {
+        UpstreamCompression compression = new UpstreamCompression(false, 1024);
+
+        FullHttpRequest small = compression.apply(request("{}"));
+        assertThat(small.headers()
+                .contains(HttpHeaderNames.CONTENT_ENCODING)).isFalse();
+        assertThat(small.headers()
+                .contains(HttpHeaderNames.ACCEPT_ENCODING)).isFalse();
+        small.release();
+
+        FullHttpRequest large = compression.apply(request(TEXT));
+        assertThat(large.headers()
+                .get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(large.headers()
+                .getInt(HttpHeaderNames.CONTENT_LENGTH)).isEqualTo(large.content()
+                        .readableBytes())
+                .isLessThan(TEXT.length());
+        assertThat(gunzip(new ByteBufInputStream(large.content()))).isEqualTo(TEXT);
+        large.release();
+    }
+
+    @Test
+    public void testResponseDecompressedUnlessClientAccepts() throws IOException {
+        UpstreamCompression compression = new UpstreamCompression(true, 0);
+
+        EmbeddedChannel channel = new EmbeddedChannel(compression.newDecompressor(_ -> false),
+                new HttpObjectAggregator(1024 * 1024));
+        channel.writeInbound(gzipResponse());
+        FullHttpResponse decompressed = channel.readInbound();
+        assertThat(decompressed.content()
+                .toString(StandardCharsets.UTF_8)).isEqualTo(TEXT);
+        assertThat(decompressed.headers()
+                .contains(HttpHeaderNames.CONTENT_ENCODING)).isFalse();
+        decompressed.release();
+        channel.finishAndReleaseAll();
+
+        // 客户端接受 gzip，压缩的响应体原样转发
+        EmbeddedChannel passThrough = new EmbeddedChannel(
+                compression.newDecompressor("gzip"::equals),
+                new HttpObjectAggregator(1024 * 1024));
+        passThrough.writeInbound(gzipResponse());
+        FullHttpResponse compressed = passThrough.readInbound();
+        assertThat(compressed.headers()
+                .get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gunzip(new ByteBufInputStream(compressed.content()))).isEqualTo(TEXT);
+        compressed.release();
+        passThrough.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testClientAcceptsEncoding() {
+        GatewayMessage message = new GatewayMessage();
+        assertThat(UpstreamCompression.clientAccepts(message, "gzip")).isFalse();
+
+        message.getExtensions()
+                .put("accept-encoding", "br;q=1.0, GZIP;q=0.5");
+        assertThat(UpstreamCompression.clientAccepts(message, "gzip")).isTrue();
+        assertThat(UpstreamCompression.clientAccepts(message, "deflate")).isFalse();
+    }
+
+    private static FullHttpRequest request(String body) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                HttpMethod.POST,
+                "/test",
+                Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    }
+
+    private static FullHttpResponse gzipResponse() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(TEXT.getBytes(StandardCharsets.UTF_8));
+        }
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(bytes.toByteArray()));
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_ENCODING, "gzip")
+                .set(HttpHeaderNames.CONTENT_LENGTH, bytes.size());
+        return response;
+    }
+
+    private static String gunzip(InputStream compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(compressed)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
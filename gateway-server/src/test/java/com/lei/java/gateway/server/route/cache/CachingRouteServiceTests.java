@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2025 The gateway Project
+ * https://github.com/taeyang0126/gateway
+ *
+ * Licensed under the MIT License.
+ * You may obtain a copy of the License at
+ *
+ *     https://opensource.org/licenses/MIT
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lei.java.gateway.server.route.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lei.java.gateway.common.protocol.GatewayMessage;
+import com.lei.java.gateway.server.config.RouteConfig;
+import com.lei.java.gateway.server.route.RouteService;
+import com.lei.java.gateway.server.route.ServiceRegistry;
+import com.lei.java.gateway.server.route.connection.ConnectionManager;
+import com.lei.java.gateway.server.route.connection.HttpProtocolConverter;
+import com.lei.java.gateway.server.route.connection.UpstreamCompression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * 响应缓存测试
+ * </p>
+ *
+ * @author 伍磊
+ */
+public class CachingRouteServiceTests {
+
+    private static final String BIZ_TYPE = "config.get";
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final RouteConfig routeConfig = new RouteConfig();
+    // 上游响应的 Cache-Control，为 null 时不带这个 header
+    private String cacheControl;
+
+    @BeforeEach
+    public void setUp() {
+        RouteConfig.BizRouteConfig bizConfig = new RouteConfig.BizRouteConfig();
+        bizConfig.setCacheTtlMillis(10_000L);
+        routeConfig.getBiz()
+                .put(BIZ_TYPE, bizConfig);
+    }
+
+    @Test
+    public void testCachedResponseServedWithoutUpstream() throws Exception {
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        GatewayMessage first = routeService.route(request(BIZ_TYPE, "a", 1L))
+                .get(1, TimeUnit.SECONDS);
+        GatewayMessage second = routeService.route(request(BIZ_TYPE, "a", 2L))
+                .get(1, TimeUnit.SECONDS);
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(second.getRequestId()).isEqualTo(2L);
+        assertThat(second.getBody()).isEqualTo(first.getBody());
+        assertThat(routeService.getResponseCache()
+                .stats()
+                .hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDifferentBodyOrBizTypeNotShared() throws Exception {
+        routeConfig.getBiz()
+                .put("catalog.get", routeConfig.getBiz()
+                        .get(BIZ_TYPE));
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        routeService.route(request(BIZ_TYPE, "a", 1L))
+                .get(1, TimeUnit.SECONDS);
+        routeService.route(request(BIZ_TYPE, "b", 2L))
+                .get(1, TimeUnit.SECONDS);
+        routeService.route(request("catalog.get", "a", 3L))
+                .get(1, TimeUnit.SECONDS);
+
+        assertThat(upstreamCalls).hasValue(3);
+    }
+
+    @Test
+    public void testResponseNotSharedAcrossAcceptEncoding() throws Exception {
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        GatewayMessage gzipRequest = request(BIZ_TYPE, "a", 1L);
+        gzipRequest.getExtensions()
+                .put(HttpHeaderNames.ACCEPT_ENCODING.toString(), "gzip");
+        GatewayMessage compressed = routeService.route(gzipRequest)
+                .get(1, TimeUnit.SECONDS);
+        assertThat(compressed.getExtensions())
+                .containsEntry(HttpHeaderNames.CONTENT_ENCODING.toString(), "gzip");
+
+        // 不接受压缩的客户端不能拿到缓存的压缩响应
+        GatewayMessage plain = routeService.route(request(BIZ_TYPE, "a", 2L))
+                .get(1, TimeUnit.SECONDS);
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(plain.getExtensions())
+                .doesNotContainKey(HttpHeaderNames.CONTENT_ENCODING.toString());
+        assertThat(plain.getBody()).isEqualTo("a".getBytes(StandardCharsets.UTF_8));
+
+        // 声明的写法不同但编码相同时共用缓存
+        GatewayMessage sameEncoding = request(BIZ_TYPE, "a", 3L);
+        sameEncoding.getExtensions()
+                .put("accept-encoding", " GZIP");
+        GatewayMessage cached = routeService.route(sameEncoding)
+                .get(1, TimeUnit.SECONDS);
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(cached.getExtensions())
+                .containsEntry(HttpHeaderNames.CONTENT_ENCODING.toString(), "gzip");
+    }
+
+    @Test
+    public void testUncachedBizTypePassesThrough() throws Exception {
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        routeService.route(request("order.create", "a", 1L))
+                .get(1, TimeUnit.SECONDS);
+        routeService.route(request("order.create", "a", 2L))
+                .get(1, TimeUnit.SECONDS);
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(routeService.getResponseCache()
+                .estimatedSize()).isZero();
+    }
+
+    @Test
+    public void testUpstreamCacheControlHonored() throws Exception {
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        cacheControl = "no-store";
+        routeService.route(request(BIZ_TYPE, "a", 1L))
+                .get(1, TimeUnit.SECONDS);
+        routeService.route(request(BIZ_TYPE, "a", 2L))
+                .get(1, TimeUnit.SECONDS);
+        assertThat(upstreamCalls).hasValue(2);
+
+        // 上游的缓存时间优先于配置的默认缓存时间
+        cacheControl = "public, max-age=60, s-maxage=0";
+        GatewayMessage response = routeService.route(request(BIZ_TYPE, "b", 3L))
+                .get(1, TimeUnit.SECONDS);
+        routeService.route(request(BIZ_TYPE, "b", 4L))
+                .get(1, TimeUnit.SECONDS);
+        assertThat(upstreamCalls).hasValue(4);
+        // 换算出的缓存时间只在网关内部使用，不会转发给客户端
+        assertThat(response.getCacheTtlMillis()).isZero();
+        assertThat(response.getExtensions()).doesNotContainKey("x-cache-ttl-ms");
+    }
+
+    @Test
+    public void testEntryExpiresAfterTtl() throws Exception {
+        routeConfig.getBiz()
+                .get(BIZ_TYPE)
+                .setCacheTtlMillis(50L);
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        routeService.route(request(BIZ_TYPE, "a", 1L))
+                .get(1, TimeUnit.SECONDS);
+        TimeUnit.MILLISECONDS.sleep(100);
+        routeService.route(request(BIZ_TYPE, "a", 2L))
+                .get(1, TimeUnit.SECONDS);
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    public void testMemoryBoundedInBytes() throws Exception {
+        routeConfig.setResponseCacheMaxBytes(64 * 1024);
+        CachingRouteService routeService = new CachingRouteService(upstream(), routeConfig);
+
+        for (int i = 0; i < 1000; i++) {
+            routeService.route(request(BIZ_TYPE, "request-" + i, i))
+                    .get(1, TimeUnit.SECONDS);
+        }
+        ResponseCache responseCache = routeService.getResponseCache();
+        responseCache.cleanUp();
+
+        assertThat(responseCache.weightedSize()).isPositive()
+                .isLessThanOrEqualTo(64 * 1024);
+        assertThat(responseCache.stats()
+                .evictionCount()).isPositive();
+    }
+
+    @Test
+    public void testCacheControlParsing() {
+        assertThat(HttpProtocolConverter.cacheTtlMillis("max-age=30")).isEqualTo(30_000);
+        assertThat(HttpProtocolConverter.cacheTtlMillis("max-age=30, s-maxage=5")).isEqualTo(5_000);
+        assertThat(HttpProtocolConverter.cacheTtlMillis("public, max-age=30, private")).isZero();
+        assertThat(HttpProtocolConverter.cacheTtlMillis("No-Cache")).isZero();
+        assertThat(HttpProtocolConverter.cacheTtlMillis("public")).isEqualTo(-1);
+    }
+
+    /**
+     * 模拟上游：把请求体原样返回，客户端接受 gzip 时响应带上 Content-Encoding（响应体不真正压缩），
+     * 响应经过 HttpProtocolConverter 转换
+     */
+    private RouteService upstream() {
+        return new RouteService() {
+            @Override
+            public CompletableFuture<GatewayMessage> route(GatewayMessage message) {
+                upstreamCalls.incrementAndGet();
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                        HttpResponseStatus.OK,
+                        Unpooled.wrappedBuffer(message.getBody()));
+                if (cacheControl != null) {
+                    response.headers()
+                            .set(HttpHeaderNames.CACHE_CONTROL, cacheControl);
+                }
+                if (UpstreamCompression.clientAccepts(message, "gzip")) {
+                    response.headers()
+                            .set(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+                }
+                try {
+                    return CompletableFuture.completedFuture(
+                            HttpProtocolConverter.toGatewayMessage(response, message));
+                } finally {
+                    response.release();
+                }
+            }
+
+            @Override
+            public ServiceRegistry getServiceRegistry() {
+                return null;
+            }
+
+            @Override
+            public ConnectionManager getConnectionManager() {
+                return null;
+            }
+        };
+    }
+
+    private static GatewayMessage request(String bizType, String body, long requestId) {
+        GatewayMessage message = new GatewayMessage();
+        message.setMsgType(GatewayMessage.MESSAGE_TYPE_BIZ);
+        message.setBizType(bizType);
+        message.setRequestId(requestId);
+        message.setClientId("client-1");
+        message.setBody(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}